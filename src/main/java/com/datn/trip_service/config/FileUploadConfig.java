@@ -1,23 +1,48 @@
 package com.datn.trip_service.config;
 
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
+import org.springframework.http.CacheControl;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
-import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.regex.Pattern;
 
+/**
+ * Caching policy for uploads under /uploads/** (served by UploadServingController). Stored names never change
+ * content (SHA-256 names, legacy random UUIDs), so responses are cacheable forever: Cache-Control immutable
+ * plus a strong ETag. URLs carry only the flat file name; FileStorageService.loadFile finds the file in the
+ * directory tree or, before it is migrated, in the flat upload directory.
+ */
 @Configuration
 public class FileUploadConfig implements WebMvcConfigurer {
 
-    @Value("${file.upload-dir:uploads}")
-    private String uploadDir;
+    private static final Pattern CONTENT_HASH_NAME = Pattern.compile("^([0-9a-f]{64})(_[a-z]+)?\\.[A-Za-z0-9]+$");
+
+    @Autowired
+    private UploadMetricsInterceptor uploadMetricsInterceptor;
 
     @Override
-    public void addResourceHandlers(ResourceHandlerRegistry registry) {
-        String uploadPath = Paths.get(uploadDir).toAbsolutePath().normalize().toUri().toString();
-        
-        registry.addResourceHandler("/uploads/**")
-                .addResourceLocations(uploadPath);
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(uploadMetricsInterceptor).addPathPatterns("/uploads/**");
+    }
+
+    public static CacheControl immutableCacheControl(long maxAgeDays) {
+        return CacheControl.maxAge(Duration.ofDays(maxAgeDays)).cachePublic().immutable();
+    }
+
+    /**
+     * Content hash for content-addressed names (variants included, their suffix keeps them distinct),
+     * otherwise name, size and modification time of the legacy file
+     */
+    public static String strongEtag(String fileName, long contentLength, long lastModified) {
+        var matcher = CONTENT_HASH_NAME.matcher(fileName);
+        if (matcher.matches()) {
+            return matcher.group(1) + (matcher.group(2) != null ? matcher.group(2) : "");
+        }
+        return Integer.toHexString(fileName.hashCode())
+                + "-" + Long.toHexString(contentLength)
+                + "-" + Long.toHexString(lastModified);
     }
 }
@@ -0,0 +1,38 @@
+package com.datn.trip_service.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Shared pool for storing the files of multi-file uploads. Storing is mostly disk I/O (copy, hash, fsync),
+ * so the pool is larger than the core count; each request is further capped by file.upload.max-concurrency-per-request.
+ * When the queue is full the uploading request stores the file itself.
+ */
+@Configuration
+public class FileUploadExecutorConfig {
+
+    public static final String UPLOAD_EXECUTOR = "fileUploadExecutor";
+
+    @Value("${file.upload.pool-size:8}")
+    private int poolSize;
+
+    @Value("${file.upload.queue-capacity:200}")
+    private int queueCapacity;
+
+    @Bean(name = UPLOAD_EXECUTOR)
+    public ThreadPoolTaskExecutor fileUploadExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("file-upload-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,41 @@
+package com.datn.trip_service.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Bounded executor that runs the continuations of async Firestore reads (conversion, merging, hydration).
+ * When the queue is full the submitting thread runs the callback itself, which throttles callers
+ * instead of dropping work.
+ */
+@Configuration
+public class FirestoreAsyncConfig {
+
+    public static final String CALLBACK_EXECUTOR = "firestoreCallbackExecutor";
+
+    @Value("${firestore.async.core-pool-size:4}")
+    private int corePoolSize;
+
+    @Value("${firestore.async.max-pool-size:16}")
+    private int maxPoolSize;
+
+    @Value("${firestore.async.queue-capacity:500}")
+    private int queueCapacity;
+
+    @Bean(name = CALLBACK_EXECUTOR)
+    public ThreadPoolTaskExecutor firestoreCallbackExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("firestore-cb-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.initialize();
+        return executor;
+    }
+}
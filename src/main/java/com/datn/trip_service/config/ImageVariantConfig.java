@@ -0,0 +1,39 @@
+package com.datn.trip_service.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Bounded worker pool for resizing uploaded images. Resizing is CPU bound, so the pool defaults to
+ * one thread per core; when the queue is full the uploading request resizes its own image.
+ */
+@Configuration
+public class ImageVariantConfig {
+
+    public static final String VARIANT_EXECUTOR = "imageVariantExecutor";
+
+    // 0 = number of available processors
+    @Value("${image.variants.pool-size:0}")
+    private int poolSize;
+
+    @Value("${image.variants.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Bean(name = VARIANT_EXECUTOR)
+    public ThreadPoolTaskExecutor imageVariantExecutor() {
+        int threads = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("image-variant-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,110 @@
+package com.datn.trip_service.config;
+
+import com.datn.trip_service.service.FileStorageService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.nio.file.Files;
+
+/**
+ * Bandwidth metrics for /uploads/**: bytes actually sent (uploads.bytes.served), responses by outcome
+ * (uploads.responses, outcome=full|partial|not_modified) and the size of files a 304 did not have to send
+ * (uploads.bytes.saved).
+ */
+@Component
+public class UploadMetricsInterceptor implements HandlerInterceptor {
+
+    private static final String PREFIX = "/uploads/";
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    private Counter bytesServed;
+    private Counter bytesSaved;
+    private Counter fullResponses;
+    private Counter partialResponses;
+    private Counter notModifiedResponses;
+
+    @PostConstruct
+    public void init() {
+        if (meterRegistry == null) {
+            return;
+        }
+        bytesServed = Counter.builder("uploads.bytes.served")
+                .description("Bytes of uploaded files sent to clients")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        bytesSaved = Counter.builder("uploads.bytes.saved")
+                .description("Bytes not sent because the client copy was still valid (304)")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        fullResponses = responses("full");
+        partialResponses = responses("partial");
+        notModifiedResponses = responses("not_modified");
+    }
+
+    private Counter responses(String outcome) {
+        return Counter.builder("uploads.responses")
+                .description("Responses for uploaded files by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (meterRegistry == null || !"GET".equals(request.getMethod())) {
+            return;
+        }
+        int status = response.getStatus();
+        if (status == HttpStatus.NOT_MODIFIED.value()) {
+            notModifiedResponses.increment();
+            bytesSaved.increment(fileSize(request.getRequestURI()));
+        } else if (status == HttpStatus.OK.value()) {
+            fullResponses.increment();
+            bytesServed.increment(fileSize(request.getRequestURI()));
+        } else if (status == HttpStatus.PARTIAL_CONTENT.value()) {
+            partialResponses.increment();
+            bytesServed.increment(rangeLength(response.getHeader("Content-Range")));
+        }
+    }
+
+    // "bytes 0-1023/52311" -> 1024; multipart range responses carry no single Content-Range and count as 0
+    static long rangeLength(String contentRange) {
+        if (contentRange == null || !contentRange.startsWith("bytes ")) {
+            return 0;
+        }
+        try {
+            String range = contentRange.substring(6, contentRange.indexOf('/'));
+            int dash = range.indexOf('-');
+            return Long.parseLong(range.substring(dash + 1)) - Long.parseLong(range.substring(0, dash)) + 1;
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    private long fileSize(String requestUri) {
+        int start = requestUri.indexOf(PREFIX);
+        if (start < 0) {
+            return 0;
+        }
+        String fileName = requestUri.substring(start + PREFIX.length());
+        if (fileName.contains("/") || fileName.contains("..")) {
+            return 0;
+        }
+        try {
+            return Files.size(fileStorageService.loadFile(fileName));
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+}
@@ -2,13 +2,14 @@ package com.datn.trip_service.controller;
 
 import com.datn.trip_service.dto.FileUploadResponse;
 import com.datn.trip_service.service.FileStorageService;
+import com.datn.trip_service.service.ImageVariantService;
+import com.datn.trip_service.service.UploadBatchService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.util.ArrayList;
 import java.util.List;
 
 @RestController
@@ -19,17 +20,25 @@ public class FileUploadController {
     @Autowired
     private FileStorageService fileStorageService;
 
+    @Autowired
+    private ImageVariantService imageVariantService;
+
+    @Autowired
+    private UploadBatchService uploadBatchService;
+
     @PostMapping("/image")
     public ResponseEntity<FileUploadResponse> uploadImage(@RequestParam("file") MultipartFile file) {
         try {
             String fileName = fileStorageService.storeFile(file);
             String fileUrl = "/uploads/" + fileName;
+            imageVariantService.generateAsync(fileName);
             
             FileUploadResponse response = new FileUploadResponse(
                 true, 
                 "File uploaded successfully", 
                 fileName,
-                fileUrl
+                fileUrl,
+                imageVariantService.variantUrls(fileName)
             );
             return ResponseEntity.ok(response);
         } catch (Exception e) {
@@ -37,6 +46,7 @@ public class FileUploadController {
                 false, 
                 "Failed to upload file: " + e.getMessage(), 
                 null,
+                null,
                 null
             );
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
@@ -46,29 +56,8 @@ public class FileUploadController {
     @PostMapping("/images")
     public ResponseEntity<List<FileUploadResponse>> uploadMultipleImages(@RequestParam("files") MultipartFile[] files) {
         try {
-            List<FileUploadResponse> responses = new ArrayList<>();
-            
-            for (MultipartFile file : files) {
-                try {
-                    String fileName = fileStorageService.storeFile(file);
-                    String fileUrl = "/uploads/" + fileName;
-                    
-                    responses.add(new FileUploadResponse(
-                        true, 
-                        "File uploaded successfully", 
-                        fileName,
-                        fileUrl
-                    ));
-                } catch (Exception e) {
-                    responses.add(new FileUploadResponse(
-                        false, 
-                        "Failed to upload file: " + e.getMessage(), 
-                        null,
-                        null
-                    ));
-                }
-            }
-            
+            // Stored in parallel, one entry per file in request order; failed files are reported in their entry
+            List<FileUploadResponse> responses = uploadBatchService.storeFiles(files);
             return ResponseEntity.ok(responses);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
@@ -83,6 +72,7 @@ public class FileUploadController {
                 true, 
                 "File deleted successfully", 
                 fileName,
+                null,
                 null
             );
             return ResponseEntity.ok(response);
@@ -91,6 +81,7 @@ public class FileUploadController {
                 false, 
                 "Failed to delete file: " + e.getMessage(), 
                 null,
+                null,
                 null
             );
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
@@ -11,6 +11,7 @@ import org.springframework.web.bind.annotation.*;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/notifications")
@@ -25,15 +26,14 @@ public class NotificationController {
 
 
     @GetMapping("/user/{userId}")
-    public ResponseEntity<?> getUserNotifications(@PathVariable String userId) {
-        try {
-            List<Notification> notifications = notificationRepository.getNotificationsByUserId(userId);
-            return ResponseEntity.ok(notifications);
-        } catch (Exception e) {
-            Map<String, String> error = new HashMap<>();
-            error.put("error", "Failed to get notifications: " + e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
-        }
+    public CompletableFuture<ResponseEntity<?>> getUserNotifications(@PathVariable String userId) {
+        return notificationRepository.getNotificationsByUserIdAsync(userId)
+                .<ResponseEntity<?>>thenApply(ResponseEntity::ok)
+                .exceptionally(e -> {
+                    Map<String, String> error = new HashMap<>();
+                    error.put("error", "Failed to get notifications: " + e.getMessage());
+                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+                });
     }
 
     @PutMapping("/{notificationId}/read")
@@ -65,17 +65,18 @@ public class NotificationController {
     }
 
     @GetMapping("/user/{userId}/unread-count")
-    public ResponseEntity<?> getUnreadCount(@PathVariable String userId) {
-        try {
-            int count = notificationRepository.getUnreadCount(userId);
-            Map<String, Integer> response = new HashMap<>();
-            response.put("count", count);
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            Map<String, String> error = new HashMap<>();
-            error.put("error", "Failed to get unread count: " + e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
-        }
+    public CompletableFuture<ResponseEntity<?>> getUnreadCount(@PathVariable String userId) {
+        return notificationRepository.getUnreadCountAsync(userId)
+                .<ResponseEntity<?>>thenApply(count -> {
+                    Map<String, Integer> response = new HashMap<>();
+                    response.put("count", count);
+                    return ResponseEntity.ok(response);
+                })
+                .exceptionally(e -> {
+                    Map<String, String> error = new HashMap<>();
+                    error.put("error", "Failed to get unread count: " + e.getMessage());
+                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+                });
     }
 
     @PostMapping("/device/token")
@@ -2,13 +2,19 @@ package com.datn.trip_service.controller;
 
 import com.datn.trip_service.dto.*;
 import com.datn.trip_service.model.Plan;
+import com.datn.trip_service.model.PlanComment;
+import com.datn.trip_service.repository.ConcurrentUpdateException;
+import com.datn.trip_service.service.InvalidPlanBatchException;
 import com.datn.trip_service.service.PlanService;
+import com.datn.trip_service.service.TripService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/trips/{tripId}/plans")
@@ -17,6 +23,9 @@ public class PlanController {
 
     @Autowired
     private PlanService planService;
+    
+    @Autowired
+    private TripService tripService;
 
     
     @PostMapping("/flight")
@@ -103,6 +112,46 @@ public class PlanController {
         }
     }
 
+    /**
+     * Usage: POST /api/trips/{tripId}/plans/batch with a JSON array of at most 500 plan bodies, each with
+     * its "type" (e.g. "FLIGHT", "LODGING", "TOUR"). Returns 201 with per-item results when every plan was
+     * written, 400 with the item errors (nothing written) if any item is invalid, 400 with the batch error
+     * if the array is missing or too long, 403 if the user is not a member of the trip, and 500 with
+     * per-item results if some plans could not be stored.
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<PlanBatchResponse> createPlans(
+            @PathVariable String tripId,
+            @RequestHeader("X-User-Id") String userId,
+            @RequestBody List<Map<String, Object>> items) {
+        if (items == null || items.size() > PlanService.MAX_BATCH_SIZE) {
+            String error = items == null
+                    ? "Request body must be a JSON array of plans"
+                    : "At most " + PlanService.MAX_BATCH_SIZE + " plans per batch, got " + items.size();
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(PlanBatchResponse.builder()
+                    .created(0)
+                    .failed(items == null ? 0 : items.size())
+                    .results(new ArrayList<>())
+                    .error(error)
+                    .build());
+        }
+        try {
+            planService.verifyMemberAccess(tripId, userId);
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(null);
+        }
+        try {
+            PlanBatchResponse response = planService.createPlans(tripId, items);
+            // Every item was valid, so any failure is a storage error
+            HttpStatus status = response.getFailed() == 0 ? HttpStatus.CREATED : HttpStatus.INTERNAL_SERVER_ERROR;
+            return new ResponseEntity<>(response, status);
+        } catch (InvalidPlanBatchException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getResponse());
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
+        }
+    }
+
     @GetMapping
     public ResponseEntity<List<Plan>> getPlansByTripId(@PathVariable String tripId) {
         List<Plan> plans = planService.getPlansByTripId(tripId);
@@ -125,6 +174,8 @@ public class PlanController {
             request.setTripId(tripId);
             Plan updatedPlan = planService.updatePlanWithAuth(planId, request, userId);
             return ResponseEntity.ok(updatedPlan);
+        } catch (ConcurrentUpdateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(null);
         } catch (RuntimeException e) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body(null);
         }
@@ -150,4 +201,144 @@ public class PlanController {
         planService.deletePhotoFromPlan(planId, photoFileName);
         return ResponseEntity.noContent().build();
     }
+    
+    /**
+     * Usage: GET /api/trips/{tripId}/plans/{planId}/comments?limit=20&cursor=<nextCursor of the previous page>
+     */
+    @GetMapping("/{planId}/comments")
+    public ResponseEntity<CommentPage> getComments(
+            @PathVariable String tripId,
+            @PathVariable String planId,
+            @RequestHeader(value = "X-User-Id", required = false) String userId,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(required = false) String cursor) {
+        HttpStatus denied = engagementAccessDenied(tripId, planId, userId);
+        if (denied != null) {
+            return ResponseEntity.status(denied).body(null);
+        }
+        try {
+            return ResponseEntity.ok(planService.getComments(planId, limit, cursor));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+        }
+    }
+    
+    @PostMapping("/{planId}/comments")
+    public ResponseEntity<PlanComment> addComment(
+            @PathVariable String tripId,
+            @PathVariable String planId,
+            @RequestHeader("X-User-Id") String userId,
+            @RequestBody Map<String, String> request) {
+        HttpStatus denied = engagementAccessDenied(tripId, planId, userId);
+        if (denied != null) {
+            return ResponseEntity.status(denied).body(null);
+        }
+        try {
+            PlanComment comment = planService.addComment(planId, userId, request.get("content"), request.get("parentId"));
+            return new ResponseEntity<>(comment, HttpStatus.CREATED);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+        }
+    }
+    
+    @DeleteMapping("/{planId}/comments/{commentId}")
+    public ResponseEntity<Void> deleteComment(
+            @PathVariable String tripId,
+            @PathVariable String planId,
+            @PathVariable String commentId,
+            @RequestHeader("X-User-Id") String userId) {
+        HttpStatus denied = engagementAccessDenied(tripId, planId, userId);
+        if (denied != null) {
+            return ResponseEntity.status(denied).build();
+        }
+        try {
+            planService.deleteComment(planId, commentId, userId);
+            return ResponseEntity.noContent().build();
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+    }
+    
+    /**
+     * Idempotent like toggle: body {"liked": true|false} sets the caller's like state
+     * Usage: PUT /api/trips/{tripId}/plans/{planId}/likes
+     */
+    @PutMapping("/{planId}/likes")
+    public ResponseEntity<Map<String, Object>> setLiked(
+            @PathVariable String tripId,
+            @PathVariable String planId,
+            @RequestHeader("X-User-Id") String userId,
+            @RequestBody Map<String, Boolean> request) {
+        Boolean liked = request.get("liked");
+        if (liked == null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+        }
+        return setLiked(tripId, planId, userId, liked);
+    }
+    
+    @GetMapping("/{planId}/likes/me")
+    public ResponseEntity<Map<String, Object>> getMyLike(
+            @PathVariable String tripId,
+            @PathVariable String planId,
+            @RequestHeader("X-User-Id") String userId) {
+        HttpStatus denied = engagementAccessDenied(tripId, planId, userId);
+        if (denied != null) {
+            return ResponseEntity.status(denied).body(null);
+        }
+        try {
+            return ResponseEntity.ok(Map.of("liked", planService.isLikedBy(planId, userId)));
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
+        }
+    }
+    
+    @PostMapping("/{planId}/likes")
+    public ResponseEntity<Map<String, Object>> likePlan(
+            @PathVariable String tripId,
+            @PathVariable String planId,
+            @RequestHeader("X-User-Id") String userId) {
+        return setLiked(tripId, planId, userId, true);
+    }
+    
+    @DeleteMapping("/{planId}/likes")
+    public ResponseEntity<Map<String, Object>> unlikePlan(
+            @PathVariable String tripId,
+            @PathVariable String planId,
+            @RequestHeader("X-User-Id") String userId) {
+        return setLiked(tripId, planId, userId, false);
+    }
+    
+    private ResponseEntity<Map<String, Object>> setLiked(String tripId, String planId, String userId, boolean liked) {
+        HttpStatus denied = engagementAccessDenied(tripId, planId, userId);
+        if (denied != null) {
+            return ResponseEntity.status(denied).body(null);
+        }
+        try {
+            long likeCount = planService.setLiked(planId, userId, liked);
+            return ResponseEntity.ok(Map.of("liked", liked, "likeCount", likeCount));
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+        }
+    }
+    
+    /**
+     * Comments and likes of a plan are open to whoever can view its trip: 404 when the plan is not in
+     * the trip of the path (or either does not exist), 403 when the user may not view the trip,
+     * null when the request may go ahead.
+     */
+    private HttpStatus engagementAccessDenied(String tripId, String planId, String userId) {
+        if (!tripId.equals(planService.findTripIdOfPlan(planId))) {
+            return HttpStatus.NOT_FOUND;
+        }
+        try {
+            return tripService.canViewTrip(tripId, userId) ? null : HttpStatus.FORBIDDEN;
+        } catch (RuntimeException e) {
+            // Trip not found
+            return HttpStatus.NOT_FOUND;
+        }
+    }
 }
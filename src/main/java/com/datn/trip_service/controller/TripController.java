@@ -2,9 +2,14 @@ package com.datn.trip_service.controller;
 
 import com.datn.trip_service.dto.AdventureResponse;
 import com.datn.trip_service.dto.CreateTripRequest;
+import com.datn.trip_service.dto.MemberListResponse;
+import com.datn.trip_service.dto.TripPurgeStatus;
 import com.datn.trip_service.dto.TripResponse;
+import com.datn.trip_service.dto.TripSummary;
 import com.datn.trip_service.model.Trip;
 import com.datn.trip_service.model.User;
+import com.datn.trip_service.repository.ConcurrentUpdateException;
+import com.datn.trip_service.service.TripAccessEvaluator;
 import com.datn.trip_service.service.TripService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -13,12 +18,16 @@ import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @RestController
 @RequestMapping("/api/trips")
 @CrossOrigin(origins = "*")
 public class TripController {
 
+    private static final String VIEW_SUMMARY = "summary";
+
     @Autowired
     private TripService tripService;
 
@@ -35,15 +44,15 @@ public class TripController {
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<TripResponse> getTripById(@PathVariable String id) {
-        try {
-            Trip trip = tripService.getTripById(id);
-            TripResponse response = new TripResponse(true, "Trip retrieved successfully", trip);
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            TripResponse response = new TripResponse(false, e.getMessage(), null);
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
-        }
+    public CompletableFuture<ResponseEntity<TripResponse>> getTripById(@PathVariable String id) {
+        // The request thread is released while Firestore reads are in flight
+        return tripService.getTripByIdAsync(id)
+                .thenApply(trip -> ResponseEntity.ok(new TripResponse(true, "Trip retrieved successfully", trip)))
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    TripResponse response = new TripResponse(false, cause.getMessage(), null);
+                    return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+                });
     }
     
     /**
@@ -54,30 +63,49 @@ public class TripController {
      * Usage: GET /api/trips/{id}/with-plans
      */
     @GetMapping("/{id}/with-plans")
-    public ResponseEntity<TripResponse> getTripWithFullPlans(@PathVariable String id) {
-        try {
-            Trip trip = tripService.getTripWithFullPlans(id);
-            TripResponse response = new TripResponse(true, "Trip with plans retrieved successfully", trip);
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            TripResponse response = new TripResponse(false, e.getMessage(), null);
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
-        }
+    public CompletableFuture<ResponseEntity<TripResponse>> getTripWithFullPlans(@PathVariable String id) {
+        return tripService.getTripWithFullPlansAsync(id)
+                .thenApply(trip -> ResponseEntity.ok(new TripResponse(true, "Trip with plans retrieved successfully", trip)))
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    TripResponse response = new TripResponse(false, cause.getMessage(), null);
+                    return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+                });
     }
 
+    /**
+     * Usage: GET /api/trips/user/{userId}?view=summary
+     * view=summary returns TripSummary items without plans; omit it for full trips
+     */
     @GetMapping("/user/{userId}")
-    public ResponseEntity<List<Trip>> getTripsByUserId(@PathVariable String userId) {
-        try {
-            List<Trip> trips = tripService.getTripsByUserId(userId);
-            return ResponseEntity.ok(trips);
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
+    public CompletableFuture<ResponseEntity<List<?>>> getTripsByUserId(
+            @PathVariable String userId,
+            @RequestParam(required = false) String view) {
+        if (VIEW_SUMMARY.equals(view)) {
+            try {
+                List<TripSummary> summaries = tripService.getTripSummariesByUserId(userId);
+                return CompletableFuture.completedFuture(ResponseEntity.ok(summaries));
+            } catch (Exception e) {
+                return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null));
+            }
         }
+        return tripService.getTripsByUserIdAsync(userId)
+                .<ResponseEntity<List<?>>>thenApply(ResponseEntity::ok)
+                .exceptionally(e -> ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null));
     }
 
+    /**
+     * Usage: GET /api/trips/member/{userId}?view=summary
+     */
     @GetMapping("/member/{userId}")
-    public ResponseEntity<List<Trip>> getTripsByMemberId(@PathVariable String userId) {
+    public ResponseEntity<List<?>> getTripsByMemberId(
+            @PathVariable String userId,
+            @RequestParam(required = false) String view) {
         try {
+            if (VIEW_SUMMARY.equals(view)) {
+                List<TripSummary> summaries = tripService.getTripSummariesByMemberId(userId);
+                return ResponseEntity.ok(summaries);
+            }
             List<Trip> trips = tripService.getTripsByMemberId(userId);
             return ResponseEntity.ok(trips);
         } catch (Exception e) {
@@ -91,6 +119,9 @@ public class TripController {
             Trip trip = tripService.updateTrip(id, request);
             TripResponse response = new TripResponse(true, "Trip updated successfully", trip);
             return ResponseEntity.ok(response);
+        } catch (ConcurrentUpdateException e) {
+            TripResponse response = new TripResponse(false, e.getMessage(), null);
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
         } catch (Exception e) {
             TripResponse response = new TripResponse(false, e.getMessage(), null);
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
@@ -107,28 +138,66 @@ public class TripController {
         }
     }
     
+    // Progress of the background purge started by DELETE /{id}
+    @GetMapping("/{id}/purge-status")
+    public ResponseEntity<TripPurgeStatus> getPurgeStatus(@PathVariable String id) {
+        TripPurgeStatus status = tripService.getPurgeStatus(id);
+        if (status == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        return ResponseEntity.ok(status);
+    }
+    
     // Add member to trip
     @PostMapping("/{tripId}/members")
-    public ResponseEntity<TripResponse> addMember(@PathVariable String tripId, @RequestBody User member) {
+    public ResponseEntity<MemberListResponse> addMember(@PathVariable String tripId, @RequestBody User member) {
         try {
-            Trip trip = tripService.addMember(tripId, member);
-            TripResponse response = new TripResponse(true, "Member added successfully", trip);
+            List<User> members = tripService.addMember(tripId, member);
+            MemberListResponse response = new MemberListResponse(true, "Member added successfully", members);
             return ResponseEntity.ok(response);
         } catch (Exception e) {
-            TripResponse response = new TripResponse(false, e.getMessage(), null);
+            MemberListResponse response = new MemberListResponse(false, e.getMessage(), null);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+        }
+    }
+    
+    // Add several members in one write
+    @PostMapping("/{tripId}/members/bulk")
+    public ResponseEntity<MemberListResponse> addMembers(@PathVariable String tripId, @RequestBody List<User> members) {
+        try {
+            List<User> updatedMembers = tripService.addMembers(tripId, members);
+            MemberListResponse response = new MemberListResponse(true, "Members added successfully", updatedMembers);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            MemberListResponse response = new MemberListResponse(false, e.getMessage(), null);
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
         }
     }
     
     // Remove member from trip
     @DeleteMapping("/{tripId}/members/{userId}")
-    public ResponseEntity<TripResponse> removeMember(@PathVariable String tripId, @PathVariable String userId) {
+    public ResponseEntity<MemberListResponse> removeMember(@PathVariable String tripId, @PathVariable String userId) {
         try {
-            Trip trip = tripService.removeMember(tripId, userId);
-            TripResponse response = new TripResponse(true, "Member removed successfully", trip);
+            List<User> members = tripService.removeMember(tripId, userId);
+            MemberListResponse response = new MemberListResponse(true, "Member removed successfully", members);
             return ResponseEntity.ok(response);
         } catch (Exception e) {
-            TripResponse response = new TripResponse(false, e.getMessage(), null);
+            MemberListResponse response = new MemberListResponse(false, e.getMessage(), null);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+        }
+    }
+    
+    // Remove several members in one write, body: {"userIds": [...]}
+    @PostMapping("/{tripId}/members/bulk-remove")
+    public ResponseEntity<MemberListResponse> removeMembers(
+            @PathVariable String tripId,
+            @RequestBody Map<String, List<String>> request) {
+        try {
+            List<User> members = tripService.removeMembers(tripId, request.getOrDefault("userIds", List.of()));
+            MemberListResponse response = new MemberListResponse(true, "Members removed successfully", members);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            MemberListResponse response = new MemberListResponse(false, e.getMessage(), null);
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
         }
     }
@@ -164,17 +233,15 @@ public class TripController {
         }
     }
     
-    // Check if user can view trip
+    // Check if user can view trip; follow relationships are resolved server-side, a client-sent followerIds is ignored
     @PostMapping("/{tripId}/check-access")
     public ResponseEntity<Map<String, Boolean>> checkAccess(
             @PathVariable String tripId,
             @RequestBody Map<String, Object> request) {
         try {
             String userId = (String) request.get("userId");
-            @SuppressWarnings("unchecked")
-            List<String> followerIds = (List<String>) request.get("followerIds");
             
-            boolean canView = tripService.canViewTrip(tripId, userId, followerIds);
+            boolean canView = tripService.canViewTrip(tripId, userId);
             return ResponseEntity.ok(Map.of("canView", canView));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
@@ -182,18 +249,44 @@ public class TripController {
     }
     
     /**
-     * Adventure endpoint - returns all trips with full details in 1 API call
+     * Check access to many trips in one call
+     * Body: {"userId": "...", "tripIds": ["t1", "t2"]} -> {"t1": true, "t2": false}; unknown trips are false
+     */
+    @PostMapping("/check-access")
+    public ResponseEntity<Map<String, Boolean>> checkAccessBatch(@RequestBody Map<String, Object> request) {
+        try {
+            String userId = (String) request.get("userId");
+            @SuppressWarnings("unchecked")
+            List<String> tripIds = (List<String>) request.get("tripIds");
+            if (tripIds == null || tripIds.size() > TripAccessEvaluator.MAX_BATCH_SIZE) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+            }
+            
+            return ResponseEntity.ok(tripService.canViewTrips(tripIds, userId));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+        }
+    }
+    
+    /**
+     * Adventure endpoint - returns a page of public trips with their owner details in 1 API call
      * Replaces 11 separate calls (1 discover + 10 trip/user details)
      * 
-     * Usage: GET /api/trips/adventure?userId=xxx&limit=10
+     * Usage: GET /api/trips/adventure?userId=xxx&limit=10&cursor=<nextCursor of the previous page>
+     * 
+     * Items do not include plans: trip.plans is always null. Clients load a trip's plans when it is opened,
+     * with GET /api/trips/{id}/with-plans or GET /api/trips/{tripId}/plans.
      */
     @GetMapping("/adventure")
     public ResponseEntity<AdventureResponse> getAdventureTrips(
             @RequestParam(required = false) String userId,
-            @RequestParam(defaultValue = "10") int limit) {
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(required = false) String cursor) {
         try {
-            AdventureResponse response = tripService.getAdventureTrips(userId, limit);
+            AdventureResponse response = tripService.getAdventureTrips(userId, limit, cursor);
             return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
         } catch (Exception e) {
             System.err.println("Error in getAdventureTrips endpoint: " + e.getMessage());
             e.printStackTrace();
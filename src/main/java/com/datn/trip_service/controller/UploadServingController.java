@@ -0,0 +1,98 @@
+package com.datn.trip_service.controller;
+
+import com.datn.trip_service.config.FileUploadConfig;
+import com.datn.trip_service.service.FileStorageService;
+import com.datn.trip_service.service.ImageVariantService;
+import com.datn.trip_service.service.UploadFileCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Serves uploaded files under /uploads/{fileName}. Hot files come from UploadFileCache (memory-mapped),
+ * the rest from disk. Responses carry the immutable Cache-Control and strong ETag of FileUploadConfig;
+ * Spring answers If-None-Match/If-Modified-Since with 304 and Range requests with 206 for Resource bodies.
+ *
+ * A variant that is not generated yet falls back to its original with a short max-age, so clients
+ * pick up the variant once it exists.
+ */
+@RestController
+@RequestMapping("/uploads")
+public class UploadServingController {
+
+    private static final Duration FALLBACK_MAX_AGE = Duration.ofMinutes(1);
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private UploadFileCache uploadFileCache;
+
+    @Value("${file.cache.max-age-days:365}")
+    private long maxAgeDays;
+
+    @GetMapping("/{fileName:.+}")
+    public ResponseEntity<Resource> serve(@PathVariable String fileName) {
+        if (!isServableName(fileName)) {
+            return ResponseEntity.notFound().build();
+        }
+        Resource resource = open(fileName);
+        if (resource != null) {
+            return respond(fileName, resource, FileUploadConfig.immutableCacheControl(maxAgeDays));
+        }
+        for (String original : ImageVariantService.originalCandidates(fileName)) {
+            resource = open(original);
+            if (resource != null) {
+                return respond(original, resource, CacheControl.maxAge(FALLBACK_MAX_AGE).cachePublic());
+            }
+        }
+        return ResponseEntity.notFound().build();
+    }
+
+    private Resource open(String fileName) {
+        Path path = fileStorageService.loadFile(fileName);
+        Resource cached = uploadFileCache.get(fileName, path);
+        if (cached != null) {
+            return cached;
+        }
+        // Missing, or too large to map
+        return Files.isRegularFile(path) ? new FileSystemResource(path) : null;
+    }
+
+    private ResponseEntity<Resource> respond(String fileName, Resource resource, CacheControl cacheControl) {
+        try {
+            long lastModified = resource.lastModified();
+            MediaType contentType = MediaTypeFactory.getMediaType(fileName).orElse(MediaType.APPLICATION_OCTET_STREAM);
+            // No Content-Length here: the message converter sets it for the whole file or the requested range
+            return ResponseEntity.ok()
+                    .contentType(contentType)
+                    .cacheControl(cacheControl)
+                    .eTag(FileUploadConfig.strongEtag(fileName, resource.contentLength(), lastModified))
+                    .lastModified(lastModified)
+                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                    .body(resource);
+        } catch (IOException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    // Stored names are flat; .tmp/.meta and anything with a path are never served
+    private static boolean isServableName(String fileName) {
+        return !fileName.startsWith(".") && !fileName.contains("/") && !fileName.contains("\\") && !fileName.contains("..");
+    }
+}
@@ -22,6 +22,7 @@ import java.util.List;
 @Builder
 public class AdventureResponse {
     private List<AdventureItem> items;
+    private String nextCursor; // Pass back as ?cursor= to get the next page; null when there are no more items
     
     @Data
     @NoArgsConstructor
@@ -62,7 +63,7 @@ public class AdventureResponse {
         private String coverPhoto;
         private String content;
         private String tags;
-        private List<Plan> plans;
+        private List<Plan> plans; // Not filled by the feed; loaded with the trip when it is opened
         private List<User> members;
         private List<User> sharedWithUsers;
         private LocalDateTime createdAt;
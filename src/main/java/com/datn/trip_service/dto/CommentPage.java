@@ -0,0 +1,21 @@
+package com.datn.trip_service.dto;
+
+import com.datn.trip_service.model.PlanComment;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of a plan's comment thread
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CommentPage {
+    private List<PlanComment> comments;
+    private String nextCursor; // Pass back as ?cursor= to get the next page; null when there are no more comments
+}
@@ -4,6 +4,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.Map;
+
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -12,4 +14,5 @@ public class FileUploadResponse {
     private String message;
     private String fileName;
     private String fileUrl;
+    private Map<String, String> variants; // Resized copies by name (thumb, medium, large), null for non-images
 }
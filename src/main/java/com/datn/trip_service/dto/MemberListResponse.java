@@ -0,0 +1,17 @@
+package com.datn.trip_service.dto;
+
+import com.datn.trip_service.model.User;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MemberListResponse {
+    private boolean success;
+    private String message;
+    private List<User> data;
+}
@@ -0,0 +1,34 @@
+package com.datn.trip_service.dto;
+
+import com.datn.trip_service.model.Plan;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Result of POST /api/trips/{tripId}/plans/batch, one entry per submitted plan in request order
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PlanBatchResponse {
+    private int created;
+    private int failed;
+    private List<ItemResult> results;
+    private String error; // Set when the batch as a whole was rejected (missing or too long), results is then empty
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class ItemResult {
+        private int index; // Position of the plan in the request body
+        private boolean success;
+        private Plan plan; // Created plan, null on failure
+        private String error;
+    }
+}
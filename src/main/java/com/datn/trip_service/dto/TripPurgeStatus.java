@@ -0,0 +1,26 @@
+package com.datn.trip_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Progress of the background purge that follows a trip delete
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TripPurgeStatus {
+    private String tripId;
+    private String status; // RUNNING, COMPLETED or FAILED (retried by the next sweep)
+    private long plansDeleted;
+    private long filesQueued;
+    private long filesDeleted;
+    private int pendingFiles; // Files recorded but not deleted yet
+    private String error;
+    private Long startedAt; // Epoch millis
+    private Long updatedAt;
+    private Long completedAt;
+}
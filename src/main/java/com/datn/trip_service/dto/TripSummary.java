@@ -0,0 +1,48 @@
+package com.datn.trip_service.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Lightweight read model for trip list screens (view=summary)
+ * Loaded with a Firestore field mask and never touches the plans collection
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TripSummary {
+    private String id;
+    private String userId;
+    private String title;
+
+    @JsonFormat(pattern = "yyyy-MM-dd")
+    private LocalDate startDate;
+
+    @JsonFormat(pattern = "yyyy-MM-dd")
+    private LocalDate endDate;
+
+    private String isPublic;
+    private String coverPhoto;
+    private List<MemberSummary> members;
+    private LocalDateTime createdAt;
+    private LocalDateTime sharedAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class MemberSummary {
+        private String id;
+        private String firstName;
+        private String lastName;
+        private String profilePicture;
+    }
+}
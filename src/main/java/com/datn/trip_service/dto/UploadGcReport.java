@@ -0,0 +1,34 @@
+package com.datn.trip_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Outcome of one run of the upload garbage collector
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UploadGcReport {
+    private String runId;
+    private boolean dryRun; // Orphans were only reported, nothing was deleted
+    private long references; // File references found in Firestore
+    private long filesScanned;
+    private long bytesScanned;
+    private long orphans; // Unreferenced and older than the grace period
+    private long orphanBytes;
+    private long skippedRecent; // Unreferenced but still within the grace period
+    private long reattached; // Orphans referenced again by the time they were re-checked, kept
+    private long deleted;
+    private long deletedBytes;
+    private long failed;
+    private List<String> sampleOrphans; // First orphans found, for checking a dry run
+    private String error;
+    private Long startedAt; // Epoch millis
+    private Long completedAt;
+}
@@ -1,5 +1,7 @@
 package com.datn.trip_service.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.google.cloud.Timestamp;
 import lombok.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -20,9 +22,15 @@ public class Plan {
     private String photoUrl; // Main photo (single image)
     private List<String> photos = new ArrayList<>(); // Collection of photos (multiple images) - stores filenames
     private PlanType type;
-    private List<PlanLike> likes;
-    private List<PlanComment> comments;
+    private List<PlanComment> comments; // First page of comments, oldest first
+    private String commentsCursor; // Cursor for the next comment page, null if comments holds them all
+    private long likeCount;
+    @JsonIgnore
+    private int likeShards; // Number of like counter shards, 0 if the plan has none
+    private long commentCount;
     private LocalDateTime createdAt;
+    @JsonIgnore
+    private Timestamp updateTime; // Firestore update time of the document this plan was read from
     
     // Explicit setter to ensure it works with subclasses
     public void setPhotos(List<String> photos) {
@@ -1,6 +1,8 @@
 package com.datn.trip_service.model;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.google.cloud.Timestamp;
 import lombok.*;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -32,4 +34,6 @@ public class Trip {
     private List<User> sharedWithUsers; // When isPublic="follower", share only with these users; empty = all followers
     private LocalDateTime createdAt;
     private LocalDateTime sharedAt; // Timestamp when trip was first shared
+    @JsonIgnore
+    private Timestamp updateTime; // Firestore update time of the document this trip was read from
 }
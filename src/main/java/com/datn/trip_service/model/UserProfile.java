@@ -0,0 +1,23 @@
+package com.datn.trip_service.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Compact immutable projection of a user, used for display (comment authors, trip owners)
+ */
+@Value
+@Builder
+public class UserProfile {
+
+    String id; // Firebase UID
+    String firstName;
+    String lastName;
+    String email;
+    String profilePicture;
+    String role;
+
+    public String getDisplayName() {
+        return firstName + " " + lastName;
+    }
+}
@@ -0,0 +1,14 @@
+package com.datn.trip_service.repository;
+
+/**
+ * Thrown when a document changed after it was read, so a partial update based on that read was rejected.
+ * Callers should reload and retry.
+ */
+public class ConcurrentUpdateException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ConcurrentUpdateException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,61 @@
+package com.datn.trip_service.repository;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Precondition;
+import com.google.cloud.firestore.WriteResult;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Field-level partial updates: diff two document maps and send only the changed fields,
+ * guarded by the update time the document was read at.
+ */
+final class FieldChanges {
+
+    private FieldChanges() {
+    }
+
+    /**
+     * Top-level fields that differ between before and after; fields missing from after are deleted
+     */
+    static Map<String, Object> diff(Map<String, Object> before, Map<String, Object> after) {
+        Map<String, Object> changes = new HashMap<>();
+        for (Map.Entry<String, Object> field : after.entrySet()) {
+            if (!before.containsKey(field.getKey()) || !Objects.equals(before.get(field.getKey()), field.getValue())) {
+                changes.put(field.getKey(), field.getValue());
+            }
+        }
+        for (String field : before.keySet()) {
+            if (!after.containsKey(field)) {
+                changes.put(field, FieldValue.delete());
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * update() with only the given fields. When readTime is set the write fails with
+     * ConcurrentUpdateException if the document was modified after that time.
+     * Returns the new update time of the document.
+     */
+    static Timestamp apply(DocumentReference docRef, Map<String, Object> changes, Timestamp readTime)
+            throws InterruptedException {
+        try {
+            WriteResult result = readTime != null
+                    ? docRef.update(changes, Precondition.updatedAt(readTime)).get()
+                    : docRef.update(changes).get();
+            return result.getUpdateTime();
+        } catch (ExecutionException e) {
+            if (FirestoreFutures.isFailedPrecondition(e.getCause())) {
+                throw new ConcurrentUpdateException(
+                        "Document " + docRef.getPath() + " was modified by someone else, reload and try again", e);
+            }
+            throw new RuntimeException("Failed to update " + docRef.getPath(), e);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.datn.trip_service.repository;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+/**
+ * Bridges Firestore ApiFutures to CompletableFuture without blocking a thread while the RPC is in flight
+ */
+public final class FirestoreFutures {
+
+    private FirestoreFutures() {
+    }
+
+    /**
+     * Complete a CompletableFuture from the ApiFuture; dependent stages run on the given executor
+     */
+    public static <T> CompletableFuture<T> toCompletable(ApiFuture<T> future, Executor executor) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        ApiFutures.addCallback(future, new ApiFutureCallback<T>() {
+            @Override
+            public void onSuccess(T value) {
+                result.complete(value);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }, executor);
+        return result;
+    }
+
+    /**
+     * Wait for every future and collect the results in order
+     */
+    public static <T> CompletableFuture<List<T>> allOf(List<CompletableFuture<T>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> futures.stream()
+                        .map(CompletableFuture::join)
+                        .collect(Collectors.toList()));
+    }
+
+    /**
+     * Block for the result in synchronous callers, rethrowing failures as RuntimeException with the given message
+     */
+    public static <T> T await(CompletableFuture<T> future, String message) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw new RuntimeException(message, e.getCause() != null ? e.getCause() : e);
+        }
+    }
+
+    /**
+     * Whether a failure, or anything it wraps, is a write rejected because its precondition no longer held
+     */
+    public static boolean isFailedPrecondition(Throwable error) {
+        return hasStatus(error, StatusCode.Code.FAILED_PRECONDITION);
+    }
+
+    /**
+     * Whether a failure, or anything it wraps, is an update of a document that does not exist
+     */
+    public static boolean isNotFound(Throwable error) {
+        return hasStatus(error, StatusCode.Code.NOT_FOUND);
+    }
+
+    private static boolean hasStatus(Throwable error, StatusCode.Code code) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ApiException && ((ApiException) cause).getStatusCode().getCode() == code) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,221 @@
+package com.datn.trip_service.repository;
+
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FirestoreException;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.firebase.cloud.FirestoreClient;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory view of the follows collection (followerID -> followingID), kept current by a Firestore
+ * snapshot listener that applies only the changed documents. Every change to a user's follows bumps that
+ * user's version, so callers caching follow-based decisions can tell when one went stale.
+ *
+ * Until the first snapshot arrives (or after the listener fails) isFollowing queries Firestore directly.
+ */
+@Component
+public class FollowGraph {
+
+    private static final Logger logger = LoggerFactory.getLogger(FollowGraph.class);
+
+    private static final String COLLECTION_NAME = "follows";
+    private static final String FOLLOWER_FIELD = "followerID";
+    private static final String FOLLOWING_FIELD = "followingID";
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${follow.graph.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${follow.graph.retry-delay-seconds:30}")
+    private long retryDelaySeconds = 30;
+
+    // Document ID -> edge, so a modified or removed follow can be taken out of the old pair's count
+    private final Map<String, Edge> edges = new ConcurrentHashMap<>();
+    // followerID -> followingID -> number of follow documents for the pair (duplicates exist)
+    private final Map<String, Map<String, Integer>> following = new ConcurrentHashMap<>();
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService retryExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "follow-graph-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile boolean ready;
+    private volatile long lastSyncMillis;
+    private ListenerRegistration registration;
+
+    @PostConstruct
+    public void registerMetrics() {
+        if (meterRegistry == null) {
+            return;
+        }
+        Gauge.builder("follows.graph.size", edges, Map::size)
+                .description("Number of follow relationships held by the in-memory follow graph")
+                .register(meterRegistry);
+        Gauge.builder("follows.graph.staleness", this, FollowGraph::stalenessSeconds)
+                .description("Seconds since the follow graph last received a snapshot from Firestore")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (!enabled || registration != null) {
+            return;
+        }
+        try {
+            registration = FirestoreClient.getFirestore()
+                    .collection(COLLECTION_NAME)
+                    .select(FOLLOWER_FIELD, FOLLOWING_FIELD)
+                    .addSnapshotListener(this::onEvent);
+            logger.info("Follow graph listening on '{}'", COLLECTION_NAME);
+        } catch (Exception e) {
+            logger.error("Failed to start follow graph listener, retrying in {}s", retryDelaySeconds, e);
+            retryExecutor.schedule(this::start, retryDelaySeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (registration != null) {
+            registration.remove();
+            registration = null;
+        }
+        retryExecutor.shutdownNow();
+    }
+
+    private void onEvent(QuerySnapshot value, FirestoreException error) {
+        if (error != null) {
+            logger.error("Follow graph listener failed, falling back to Firestore queries", error);
+            ready = false;
+            synchronized (this) {
+                registration = null;
+                // The new listener replays every document; follows removed meanwhile must not survive
+                reset();
+            }
+            retryExecutor.schedule(this::start, retryDelaySeconds, TimeUnit.SECONDS);
+            return;
+        }
+        if (value == null) {
+            return;
+        }
+
+        for (DocumentChange change : value.getDocumentChanges()) {
+            DocumentSnapshot document = change.getDocument();
+            if (change.getType() == DocumentChange.Type.REMOVED) {
+                remove(document.getId());
+            } else {
+                put(document.getId(), document.getString(FOLLOWER_FIELD), document.getString(FOLLOWING_FIELD));
+            }
+        }
+        lastSyncMillis = System.currentTimeMillis();
+        ready = true;
+    }
+
+    // Package-private mutators so the graph can be exercised without a Firestore listener
+    synchronized void put(String documentId, String followerId, String followingId) {
+        remove(documentId);
+        if (followerId == null || followingId == null) {
+            return;
+        }
+        edges.put(documentId, new Edge(followerId, followingId));
+        following.computeIfAbsent(followerId, id -> new ConcurrentHashMap<>()).merge(followingId, 1, Integer::sum);
+        versions.merge(followerId, 1L, Long::sum);
+    }
+
+    synchronized void remove(String documentId) {
+        Edge edge = edges.remove(documentId);
+        if (edge == null) {
+            return;
+        }
+        Map<String, Integer> followed = following.get(edge.followerId);
+        if (followed != null) {
+            // Gone with the pair's last document
+            followed.computeIfPresent(edge.followingId, (id, count) -> count > 1 ? count - 1 : null);
+        }
+        versions.merge(edge.followerId, 1L, Long::sum);
+    }
+
+    // Bumps the version of every follower so no decision cached against the old graph stays valid
+    synchronized void reset() {
+        for (Edge edge : edges.values()) {
+            versions.merge(edge.followerId, 1L, Long::sum);
+        }
+        edges.clear();
+        following.clear();
+    }
+
+    void markReady() {
+        lastSyncMillis = System.currentTimeMillis();
+        ready = true;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Changes seen so far to the follows of followerId; -1 while the graph is not in sync, meaning
+     * answers cannot be cached
+     */
+    public long version(String followerId) {
+        return ready ? versions.getOrDefault(followerId, 0L) : -1L;
+    }
+
+    public boolean isFollowing(String followerId, String followingId) {
+        if (followerId == null || followingId == null) {
+            return false;
+        }
+        if (ready) {
+            Map<String, Integer> followed = following.get(followerId);
+            return followed != null && followed.containsKey(followingId);
+        }
+        try {
+            return !FirestoreClient.getFirestore()
+                    .collection(COLLECTION_NAME)
+                    .whereEqualTo(FOLLOWER_FIELD, followerId)
+                    .whereEqualTo(FOLLOWING_FIELD, followingId)
+                    .limit(1)
+                    .get()
+                    .get()
+                    .isEmpty();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to check follow relationship", e);
+        }
+    }
+
+    public double stalenessSeconds() {
+        long last = lastSyncMillis;
+        return last == 0 ? -1 : (System.currentTimeMillis() - last) / 1000.0;
+    }
+
+    private static final class Edge {
+        private final String followerId;
+        private final String followingId;
+
+        private Edge(String followerId, String followingId) {
+            this.followerId = followerId;
+            this.followingId = followingId;
+        }
+    }
+}
@@ -1,22 +1,36 @@
 package com.datn.trip_service.repository;
 
+import com.datn.trip_service.config.FirestoreAsyncConfig;
 import com.datn.trip_service.model.Notification;
 import com.google.api.core.ApiFuture;
 import com.google.cloud.firestore.*;
 import com.google.firebase.cloud.FirestoreClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Repository;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 
 @Repository
 public class NotificationRepository {
 
     private static final String COLLECTION_NOTIFICATIONS = "notifications";
     private static final String COLLECTION_USER_DEVICE = "user_device";
+    // A WriteBatch holds at most 500 operations
+    private static final int BATCH_LIMIT = 500;
+    private static final int GET_ALL_CHUNK_SIZE = 100;
+
+    @Autowired
+    @Qualifier(FirestoreAsyncConfig.CALLBACK_EXECUTOR)
+    private Executor callbackExecutor;
 
     private Firestore getFirestore() {
         return FirestoreClient.getFirestore();
@@ -25,6 +39,32 @@ public class NotificationRepository {
     public void saveNotification(Notification notification) throws ExecutionException, InterruptedException {
         Firestore firestore = getFirestore();
 
+        Map<String, Object> notificationData = convertNotificationToMap(notification);
+
+        ApiFuture<WriteResult> future = firestore.collection(COLLECTION_NOTIFICATIONS)
+                .document(notification.getId())
+                .set(notificationData);
+
+        future.get(); // Wait for completion
+        System.out.println(" Saved notification to Firestore: " + notification.getId());
+    }
+
+    // Save many notifications with chunked WriteBatches instead of one write per notification
+    public void saveNotifications(List<Notification> notifications) throws ExecutionException, InterruptedException {
+        Firestore firestore = getFirestore();
+
+        for (int i = 0; i < notifications.size(); i += BATCH_LIMIT) {
+            WriteBatch batch = firestore.batch();
+            for (Notification notification : notifications.subList(i, Math.min(i + BATCH_LIMIT, notifications.size()))) {
+                batch.set(firestore.collection(COLLECTION_NOTIFICATIONS).document(notification.getId()),
+                        convertNotificationToMap(notification));
+            }
+            batch.commit().get();
+        }
+        System.out.println(" Saved " + notifications.size() + " notification(s) to Firestore");
+    }
+
+    private Map<String, Object> convertNotificationToMap(Notification notification) {
         Map<String, Object> notificationData = new HashMap<>();
         notificationData.put("id", notification.getId());
         notificationData.put("userId", notification.getUserId());
@@ -40,16 +80,14 @@ public class NotificationRepository {
         if (notification.getTripTitle() != null) {
             notificationData.put("tripTitle", notification.getTripTitle());
         }
-
-        ApiFuture<WriteResult> future = firestore.collection(COLLECTION_NOTIFICATIONS)
-                .document(notification.getId())
-                .set(notificationData);
-
-        future.get(); // Wait for completion
-        System.out.println(" Saved notification to Firestore: " + notification.getId());
+        return notificationData;
     }
 
     public List<Notification> getNotificationsByUserId(String userId) throws ExecutionException, InterruptedException {
+        return getNotificationsByUserIdAsync(userId).get();
+    }
+
+    public CompletableFuture<List<Notification>> getNotificationsByUserIdAsync(String userId) {
         Firestore firestore = getFirestore();
 
         ApiFuture<QuerySnapshot> future = firestore.collection(COLLECTION_NOTIFICATIONS)
@@ -57,25 +95,26 @@ public class NotificationRepository {
                 .orderBy("timestamp", Query.Direction.DESCENDING)
                 .get();
 
-        QuerySnapshot querySnapshot = future.get();
-        List<Notification> notifications = new ArrayList<>();
-
-        for (DocumentSnapshot document : querySnapshot.getDocuments()) {
-            Notification notification = new Notification();
-            notification.setId(document.getString("id"));
-            notification.setUserId(document.getString("userId"));
-            notification.setTitle(document.getString("title"));
-            notification.setMessage(document.getString("message"));
-            notification.setType(document.getString("type"));
-            notification.setTimestamp(document.getLong("timestamp"));
-            notification.setIsRead(document.getBoolean("isRead"));
-            notification.setTripId(document.getString("tripId"));
-            notification.setTripTitle(document.getString("tripTitle"));
-            
-            notifications.add(notification);
-        }
+        return FirestoreFutures.toCompletable(future, callbackExecutor).thenApply(querySnapshot -> {
+            List<Notification> notifications = new ArrayList<>();
+
+            for (DocumentSnapshot document : querySnapshot.getDocuments()) {
+                Notification notification = new Notification();
+                notification.setId(document.getString("id"));
+                notification.setUserId(document.getString("userId"));
+                notification.setTitle(document.getString("title"));
+                notification.setMessage(document.getString("message"));
+                notification.setType(document.getString("type"));
+                notification.setTimestamp(document.getLong("timestamp"));
+                notification.setIsRead(document.getBoolean("isRead"));
+                notification.setTripId(document.getString("tripId"));
+                notification.setTripTitle(document.getString("tripTitle"));
+                
+                notifications.add(notification);
+            }
 
-        return notifications;
+            return notifications;
+        });
     }
 
     public void markAsRead(String notificationId) throws ExecutionException, InterruptedException {
@@ -130,6 +169,42 @@ public class NotificationRepository {
         return null;
     }
 
+    // Load user_device documents for many users with a single getAll per chunk
+    public Map<String, Map<String, Object>> getUserDevices(Collection<String> userIds) throws ExecutionException, InterruptedException {
+        Firestore firestore = getFirestore();
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(userIds));
+        Map<String, Map<String, Object>> devices = new HashMap<>();
+
+        for (int i = 0; i < ids.size(); i += GET_ALL_CHUNK_SIZE) {
+            DocumentReference[] refs = ids.subList(i, Math.min(i + GET_ALL_CHUNK_SIZE, ids.size())).stream()
+                    .map(id -> firestore.collection(COLLECTION_USER_DEVICE).document(id))
+                    .toArray(DocumentReference[]::new);
+            for (DocumentSnapshot document : firestore.getAll(refs).get()) {
+                if (document.exists()) {
+                    devices.put(document.getId(), document.getData());
+                }
+            }
+        }
+        return devices;
+    }
+
+    // Create default notification settings for many users with chunked WriteBatches
+    public void enableNotificationsForUsers(Collection<String> userIds) throws ExecutionException, InterruptedException {
+        Firestore firestore = getFirestore();
+        List<String> ids = new ArrayList<>(userIds);
+
+        for (int i = 0; i < ids.size(); i += BATCH_LIMIT) {
+            WriteBatch batch = firestore.batch();
+            for (String userId : ids.subList(i, Math.min(i + BATCH_LIMIT, ids.size()))) {
+                Map<String, Object> updates = new HashMap<>();
+                updates.put("notificationsEnabled", true);
+                updates.put("lastUpdated", System.currentTimeMillis());
+                batch.set(firestore.collection(COLLECTION_USER_DEVICE).document(userId), updates, SetOptions.merge());
+            }
+            batch.commit().get();
+        }
+    }
+
     public void updateNotificationSettings(String userId, boolean enabled) throws ExecutionException, InterruptedException {
         Firestore firestore = getFirestore();
 
@@ -147,6 +222,10 @@ public class NotificationRepository {
     }
 
     public int getUnreadCount(String userId) throws ExecutionException, InterruptedException {
+        return getUnreadCountAsync(userId).get();
+    }
+
+    public CompletableFuture<Integer> getUnreadCountAsync(String userId) {
         Firestore firestore = getFirestore();
 
         ApiFuture<QuerySnapshot> future = firestore.collection(COLLECTION_NOTIFICATIONS)
@@ -154,8 +233,7 @@ public class NotificationRepository {
                 .whereEqualTo("isRead", false)
                 .get();
 
-        QuerySnapshot querySnapshot = future.get();
-        return querySnapshot.size();
+        return FirestoreFutures.toCompletable(future, callbackExecutor).thenApply(QuerySnapshot::size);
     }
 
     public List<String> getUsersWithNotificationsEnabled() throws ExecutionException, InterruptedException {
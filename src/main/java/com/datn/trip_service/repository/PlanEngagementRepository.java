@@ -0,0 +1,502 @@
+package com.datn.trip_service.repository;
+
+import com.datn.trip_service.config.FirestoreAsyncConfig;
+import com.datn.trip_service.dto.CommentPage;
+import com.datn.trip_service.model.PlanComment;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.SetOptions;
+import com.google.cloud.firestore.Transaction;
+import com.google.firebase.cloud.FirestoreClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Likes and comments of plans, stored as subcollections of the plan document:
+ * plans/{planId}/likes/{userId} and plans/{planId}/comments/{commentId}.
+ * The plan document carries commentCount, changed with FieldValue.increment in the same transaction
+ * as the comment write. Likes are counted by PlanLikeCounter shards on top of the plan's base likeCount.
+ *
+ * Plans written before this layout still embed 'likes'/'comments' arrays. Such a plan is moved to
+ * the subcollections the first time it is liked or commented on, or by PlanEngagementMigrationJob.
+ * The move copies the arrays in chunks, one transaction each, that stay within Firestore's 500-write
+ * limit; the plan records how many entries were copied so far, and only the last chunk sets the counts
+ * and removes the arrays.
+ */
+@Repository
+public class PlanEngagementRepository {
+
+    private static final String PLANS_COLLECTION = "plans";
+    private static final String LIKES_COLLECTION = "likes";
+    private static final String COMMENTS_COLLECTION = "comments";
+    private static final String LEGACY_LIKES_FIELD = "likes";
+    private static final String LEGACY_COMMENTS_FIELD = "comments";
+    public static final String LIKE_COUNT_FIELD = "likeCount";
+    public static final String COMMENT_COUNT_FIELD = "commentCount";
+    public static final int DEFAULT_COMMENT_PAGE_SIZE = 20;
+    private static final int MAX_COMMENT_PAGE_SIZE = 100;
+    // Legacy entries already copied to the subcollections, set on the plan while it is being migrated
+    private static final String MIGRATED_ENTRIES_FIELD = "legacyEngagementCopied";
+    // Entries copied per transaction; with the plan update that is Firestore's 500-write limit
+    private static final int MIGRATION_CHUNK_SIZE = 499;
+
+    @Autowired
+    private TripCache tripCache;
+
+    @Autowired
+    private PlanLikeCounter likeCounter;
+
+    @Autowired
+    @Qualifier(FirestoreAsyncConfig.CALLBACK_EXECUTOR)
+    private Executor callbackExecutor;
+
+    private Firestore getFirestore() {
+        return FirestoreClient.getFirestore();
+    }
+
+    private DocumentReference planRef(String planId) {
+        return getFirestore().collection(PLANS_COLLECTION).document(planId);
+    }
+
+    // Counts stored on the plan document (for likes: the base before shards); unmigrated plans count their arrays
+    public static long readLikeCount(DocumentSnapshot planDoc) {
+        Long count = planDoc.getLong(LIKE_COUNT_FIELD);
+        if (count != null) {
+            return count;
+        }
+        Object legacyLikes = planDoc.get(LEGACY_LIKES_FIELD);
+        return legacyLikes instanceof List ? ((List<?>) legacyLikes).size() : 0L;
+    }
+
+    public static long readCommentCount(DocumentSnapshot planDoc) {
+        Long count = planDoc.getLong(COMMENT_COUNT_FIELD);
+        if (count != null) {
+            return count;
+        }
+        Object legacyComments = planDoc.get(LEGACY_COMMENTS_FIELD);
+        return legacyComments instanceof List ? ((List<?>) legacyComments).size() : 0L;
+    }
+
+    public static boolean hasLegacyEngagement(DocumentSnapshot planDoc) {
+        return planDoc.contains(LEGACY_LIKES_FIELD) || planDoc.contains(LEGACY_COMMENTS_FIELD);
+    }
+
+    /**
+     * Add a comment; returns it with its generated id and createdAt
+     */
+    public PlanComment addComment(String planId, PlanComment comment) {
+        comment.setPlanId(planId);
+        comment.setId(generateCommentId());
+        comment.setCreatedAt(Timestamp.now());
+
+        DocumentReference planRef = planRef(planId);
+        DocumentReference commentRef = planRef.collection(COMMENTS_COLLECTION).document(String.valueOf(comment.getId()));
+
+        String tripId = null;
+        try {
+            tripId = runOnMigratedPlan(planId, transaction -> {
+                DocumentSnapshot planDoc = readMigratedPlan(transaction, planRef);
+                transaction.create(commentRef, convertCommentToMap(comment));
+                transaction.update(planRef, COMMENT_COUNT_FIELD, FieldValue.increment(1));
+                return planDoc.getString("tripId");
+            });
+            return comment;
+        } catch (InterruptedException | ExecutionException e) {
+            throw unwrap(e, "Failed to add comment");
+        } finally {
+            tripCache.invalidate(tripId);
+        }
+    }
+
+    /**
+     * Delete a comment written by userId. Deleting a comment that no longer exists is a no-op.
+     */
+    public void deleteComment(String planId, String commentId, String userId) {
+        DocumentReference planRef = planRef(planId);
+        DocumentReference commentRef = planRef.collection(COMMENTS_COLLECTION).document(commentId);
+
+        String tripId = null;
+        try {
+            tripId = runOnMigratedPlan(planId, transaction -> {
+                DocumentSnapshot planDoc = readMigratedPlan(transaction, planRef);
+                DocumentSnapshot commentDoc = transaction.get(commentRef).get();
+                if (!commentDoc.exists()) {
+                    return planDoc.getString("tripId");
+                }
+                if (!userId.equals(commentDoc.getString("userId"))) {
+                    throw new RuntimeException("User is not authorized to delete this comment");
+                }
+                transaction.delete(commentRef);
+                transaction.update(planRef, COMMENT_COUNT_FIELD, FieldValue.increment(-1));
+                return planDoc.getString("tripId");
+            });
+        } catch (InterruptedException | ExecutionException e) {
+            throw unwrap(e, "Failed to delete comment");
+        } finally {
+            tripCache.invalidate(tripId);
+        }
+    }
+
+    /**
+     * Like or unlike a plan. Idempotent per user: the like document is keyed by userId, and a counter
+     * shard only moves when the like state actually changes. The plan document itself is written only
+     * when it is migrated or gets its first shard, so concurrent likes do not contend on it.
+     * Returns the like count after the change.
+     */
+    public long setLiked(String planId, String userId, boolean liked) {
+        DocumentReference planRef = planRef(planId);
+        DocumentReference likeRef = planRef.collection(LIKES_COLLECTION).document(userId);
+
+        String[] tripId = new String[1];
+        // Base count, shard count and shard delta as committed, so the new count needs no second read of the plan
+        long[] baseCount = new long[1];
+        int[] shardCount = new int[1];
+        long[] shardDelta = new long[1];
+        boolean committed = false;
+        likeCounter.beginWrite(planId);
+        try {
+            runOnMigratedPlan(planId, transaction -> {
+                DocumentSnapshot current = readMigratedPlan(transaction, planRef);
+                tripId[0] = current.getString("tripId");
+                baseCount[0] = readLikeCount(current);
+                shardCount[0] = PlanLikeCounter.readShardCount(current);
+                shardDelta[0] = 0;
+
+                boolean currentlyLiked = transaction.get(likeRef).get().exists();
+                if (liked != currentlyLiked) {
+                    if (liked) {
+                        transaction.set(likeRef, convertLikeToMap(planId, userId, Timestamp.now()));
+                    } else {
+                        transaction.delete(likeRef);
+                    }
+                    int shards = likeCounter.shardCountFor(current);
+                    if (PlanLikeCounter.readShardCount(current) == 0) {
+                        transaction.update(planRef, PlanLikeCounter.SHARD_COUNT_FIELD, shards);
+                    }
+                    transaction.set(likeCounter.randomShard(planRef, shards),
+                            PlanLikeCounter.increment(liked ? 1 : -1), SetOptions.merge());
+                    shardCount[0] = shards;
+                    shardDelta[0] = liked ? 1 : -1;
+                }
+                return null;
+            });
+            committed = true;
+        } catch (InterruptedException | ExecutionException e) {
+            throw unwrap(e, "Failed to update like");
+        } finally {
+            likeCounter.endWrite(planId, committed, shardDelta[0]);
+            tripCache.invalidate(tripId[0]);
+        }
+        return baseCount[0] + likeCounter.shardSum(planId, shardCount[0]);
+    }
+
+    public boolean isLikedBy(String planId, String userId) {
+        try {
+            return planRef(planId).collection(LIKES_COLLECTION).document(userId).get().get().exists();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to read like", e);
+        }
+    }
+
+    /**
+     * One page of a plan's comments, oldest first. Plans still on the legacy layout are migrated first.
+     */
+    public CommentPage findComments(String planId, int limit, String cursor) {
+        try {
+            DocumentSnapshot planDoc = planRef(planId).get().get();
+            if (!planDoc.exists()) {
+                throw new RuntimeException("Plan not found with id: " + planId);
+            }
+            if (hasLegacyEngagement(planDoc)) {
+                migrateLegacyPlan(planId);
+            }
+            return FirestoreFutures.await(findCommentPageAsync(planId, limit, cursor), "Failed to load comments");
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to load comments", e);
+        }
+    }
+
+    public CompletableFuture<CommentPage> findCommentPageAsync(String planId, int limit, String cursor) {
+        int pageSize = Math.min(Math.max(limit, 1), MAX_COMMENT_PAGE_SIZE);
+        Query query = planRef(planId).collection(COMMENTS_COLLECTION)
+                .orderBy("createdAt")
+                .orderBy(FieldPath.documentId())
+                .limit(pageSize);
+        if (cursor != null && !cursor.isEmpty()) {
+            Object[] position = decodeCursor(cursor);
+            query = query.startAfter(position[0], position[1]);
+        }
+
+        return FirestoreFutures.toCompletable(query.get(), callbackExecutor)
+                .thenApply(page -> toCommentPage(planId, page, pageSize));
+    }
+
+    /**
+     * Move one plan's embedded arrays into the subcollections, one chunk per transaction.
+     * Safe to run more than once and concurrently: each chunk continues from the count recorded on the plan.
+     */
+    public void migrateLegacyPlan(String planId) {
+        Firestore firestore = getFirestore();
+        DocumentReference planRef = planRef(planId);
+        String[] tripId = new String[1];
+        try {
+            boolean finished;
+            do {
+                finished = firestore.runTransaction(transaction -> {
+                    DocumentSnapshot planDoc = transaction.get(planRef).get();
+                    if (!planDoc.exists() || !hasLegacyEngagement(planDoc)) {
+                        return true;
+                    }
+                    tripId[0] = planDoc.getString("tripId");
+                    return migrateLegacyChunk(transaction, planDoc);
+                }).get();
+            } while (!finished);
+        } catch (InterruptedException | ExecutionException e) {
+            throw unwrap(e, "Failed to migrate plan engagement");
+        } finally {
+            tripCache.invalidate(tripId[0]);
+        }
+    }
+
+    /**
+     * Copy the next MIGRATION_CHUNK_SIZE legacy entries of planDoc (likes first, then comments) and record
+     * how far the copy got. The chunk that copies the last entries instead sets the absolute counts and
+     * removes the arrays. Returns whether the plan is fully migrated.
+     */
+    private boolean migrateLegacyChunk(Transaction transaction, DocumentSnapshot planDoc) {
+        DocumentReference planRef = planDoc.getReference();
+        List<String> likeUserIds = findLegacyLikeUserIds(planDoc);
+        List<Map<String, Object>> legacyComments = findLegacyComments(planDoc);
+        int total = likeUserIds.size() + legacyComments.size();
+        Long copied = planDoc.getLong(MIGRATED_ENTRIES_FIELD);
+        int from = copied != null ? copied.intValue() : 0;
+        int to = Math.min(from + MIGRATION_CHUNK_SIZE, total);
+
+        for (int i = from; i < to; i++) {
+            if (i < likeUserIds.size()) {
+                String userId = likeUserIds.get(i);
+                transaction.set(planRef.collection(LIKES_COLLECTION).document(userId),
+                        convertLikeToMap(planDoc.getId(), userId, Timestamp.MIN_VALUE));
+                continue;
+            }
+            int index = i - likeUserIds.size();
+            Map<String, Object> legacyComment = legacyComments.get(index);
+            PlanComment comment = convertMapToComment(legacyComment);
+            comment.setPlanId(planDoc.getId());
+            if (comment.getCreatedAt() == null) {
+                // Comments without a timestamp sort first
+                comment.setCreatedAt(Timestamp.MIN_VALUE);
+            }
+            // Comments without an id get one derived from their position, so copying again overwrites them
+            String commentId = legacyComment.get("id") instanceof Number
+                    ? String.valueOf(((Number) legacyComment.get("id")).longValue())
+                    : "legacy-" + index;
+            transaction.set(planRef.collection(COMMENTS_COLLECTION).document(commentId), convertCommentToMap(comment));
+        }
+
+        Map<String, Object> planUpdates = new HashMap<>();
+        if (to < total) {
+            planUpdates.put(MIGRATED_ENTRIES_FIELD, (long) to);
+            transaction.update(planRef, planUpdates);
+            return false;
+        }
+        planUpdates.put(LEGACY_LIKES_FIELD, FieldValue.delete());
+        planUpdates.put(LEGACY_COMMENTS_FIELD, FieldValue.delete());
+        planUpdates.put(MIGRATED_ENTRIES_FIELD, FieldValue.delete());
+        planUpdates.put(LIKE_COUNT_FIELD, (long) likeUserIds.size());
+        planUpdates.put(COMMENT_COUNT_FIELD, (long) legacyComments.size());
+        transaction.update(planRef, planUpdates);
+        return true;
+    }
+
+    /**
+     * Run a like or comment transaction that reads its plan with readMigratedPlan. If the plan still embeds
+     * its arrays, it is migrated first and the transaction runs again.
+     */
+    private <T> T runOnMigratedPlan(String planId, Transaction.Function<T> function)
+            throws InterruptedException, ExecutionException {
+        Firestore firestore = getFirestore();
+        try {
+            return firestore.runTransaction(function).get();
+        } catch (ExecutionException e) {
+            if (!(e.getCause() instanceof LegacyPlanException)) {
+                throw e;
+            }
+        }
+        migrateLegacyPlan(planId);
+        return firestore.runTransaction(function).get();
+    }
+
+    private static DocumentSnapshot readMigratedPlan(Transaction transaction, DocumentReference planRef)
+            throws InterruptedException, ExecutionException {
+        DocumentSnapshot planDoc = transaction.get(planRef).get();
+        if (!planDoc.exists()) {
+            throw new RuntimeException("Plan not found with id: " + planRef.getId());
+        }
+        if (hasLegacyEngagement(planDoc)) {
+            throw new LegacyPlanException(planRef.getId());
+        }
+        return planDoc;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> findLegacyLikeUserIds(DocumentSnapshot planDoc) {
+        List<String> userIds = new ArrayList<>();
+        Object likesObj = planDoc.get(LEGACY_LIKES_FIELD);
+        if (likesObj instanceof List) {
+            for (Object likeObj : (List<Object>) likesObj) {
+                if (likeObj instanceof Map) {
+                    Object userId = ((Map<String, Object>) likeObj).get("userId");
+                    if (userId instanceof String && !userIds.contains(userId)) {
+                        userIds.add((String) userId);
+                    }
+                }
+            }
+        }
+        return userIds;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> findLegacyComments(DocumentSnapshot planDoc) {
+        List<Map<String, Object>> comments = new ArrayList<>();
+        Object commentsObj = planDoc.get(LEGACY_COMMENTS_FIELD);
+        if (commentsObj instanceof List) {
+            for (Object commentObj : (List<Object>) commentsObj) {
+                if (commentObj instanceof Map) {
+                    comments.add((Map<String, Object>) commentObj);
+                }
+            }
+        }
+        return comments;
+    }
+
+    /**
+     * Comments embedded in a plan document that was not migrated yet
+     */
+    public static List<PlanComment> readLegacyComments(DocumentSnapshot planDoc) {
+        List<PlanComment> comments = new ArrayList<>();
+        for (Map<String, Object> legacyComment : findLegacyComments(planDoc)) {
+            PlanComment comment = convertMapToComment(legacyComment);
+            comment.setPlanId(planDoc.getId());
+            comments.add(comment);
+        }
+        return comments;
+    }
+
+    private CommentPage toCommentPage(String planId, QuerySnapshot page, int pageSize) {
+        List<PlanComment> comments = new ArrayList<>();
+        for (DocumentSnapshot document : page.getDocuments()) {
+            PlanComment comment = convertMapToComment(document.getData());
+            comment.setPlanId(planId);
+            comments.add(comment);
+        }
+
+        String nextCursor = null;
+        if (page.size() == pageSize) {
+            DocumentSnapshot last = page.getDocuments().get(page.size() - 1);
+            nextCursor = encodeCursor(last.getTimestamp("createdAt"), last.getId());
+        }
+        return CommentPage.builder()
+                .comments(comments)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    private static Map<String, Object> convertLikeToMap(String planId, String userId, Timestamp createdAt) {
+        Map<String, Object> likeMap = new HashMap<>();
+        likeMap.put("planId", planId);
+        likeMap.put("userId", userId);
+        likeMap.put("createdAt", createdAt);
+        return likeMap;
+    }
+
+    private static Map<String, Object> convertCommentToMap(PlanComment comment) {
+        Map<String, Object> commentMap = new HashMap<>();
+        commentMap.put("id", comment.getId());
+        commentMap.put("planId", comment.getPlanId());
+        commentMap.put("userId", comment.getUserId());
+        commentMap.put("parentId", comment.getParentId());
+        commentMap.put("content", comment.getContent());
+        commentMap.put("createdAt", comment.getCreatedAt());
+        return commentMap;
+    }
+
+    private static PlanComment convertMapToComment(Map<String, Object> commentMap) {
+        PlanComment comment = new PlanComment();
+        if (commentMap.get("id") instanceof Number) {
+            comment.setId(((Number) commentMap.get("id")).longValue());
+        }
+        comment.setPlanId((String) commentMap.get("planId"));
+        comment.setUserId((String) commentMap.get("userId"));
+        comment.setParentId((String) commentMap.get("parentId"));
+        comment.setContent((String) commentMap.get("content"));
+        Object createdAtObj = commentMap.get("createdAt");
+        if (createdAtObj instanceof Timestamp) {
+            comment.setCreatedAt((Timestamp) createdAtObj);
+        } else if (createdAtObj instanceof Number) {
+            // Legacy comments may hold milliseconds
+            long millis = ((Number) createdAtObj).longValue();
+            comment.setCreatedAt(Timestamp.ofTimeMicroseconds(millis * 1000));
+        }
+        return comment;
+    }
+
+    // Time-ordered numeric id; the comment is created with transaction.create so a collision fails loudly
+    private static long generateCommentId() {
+        return System.currentTimeMillis() * 1000 + ThreadLocalRandom.current().nextInt(1000);
+    }
+
+    // Opaque cursor: base64url("<seconds>.<nanos>:<commentDocId>") of the last comment on the page
+    private static String encodeCursor(Timestamp createdAt, String commentId) {
+        Timestamp position = createdAt != null ? createdAt : Timestamp.MIN_VALUE;
+        String raw = position.getSeconds() + "." + position.getNanos() + ":" + commentId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Object[] decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            String[] time = raw.substring(0, separator).split("\\.");
+            Timestamp createdAt = Timestamp.ofTimeSecondsAndNanos(Long.parseLong(time[0]), Integer.parseInt(time[1]));
+            return new Object[]{createdAt, raw.substring(separator + 1)};
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid comment cursor", e);
+        }
+    }
+
+    private static RuntimeException unwrap(Exception e, String message) {
+        Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new RuntimeException(message, cause);
+    }
+
+    // A plan that still has to be migrated before a like or comment transaction can run on it
+    private static final class LegacyPlanException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private LegacyPlanException(String planId) {
+            super("Plan engagement is not migrated yet: " + planId);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.datn.trip_service.repository;
+
+import com.datn.trip_service.config.FirestoreAsyncConfig;
+import com.datn.trip_service.model.Plan;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import com.google.firebase.cloud.FirestoreClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Distributed like counter: each like/unlike increments one randomly chosen document in
+ * plans/{planId}/like_shards, so a popular plan spreads its writes over N documents instead of one.
+ * A plan's like count is its base likeCount field (likes migrated from the embedded array) plus
+ * the sum of its shards. Shard sums are cached for plan.like-shards.cache-ttl-seconds after they were
+ * read; a like written through this instance adjusts the cached sum in place without extending it.
+ * A read that overlaps such a write may or may not contain it, so its sum is returned but not cached.
+ *
+ * The plan document records how many shards it uses (likeShards), written once with its first
+ * sharded like; plans without it have no shards to read.
+ */
+@Component
+public class PlanLikeCounter {
+
+    public static final String SHARDS_COLLECTION = "like_shards";
+    public static final String SHARD_COUNT_FIELD = "likeShards";
+    private static final String SHARD_VALUE_FIELD = "count";
+    private static final int GET_ALL_CHUNK_SIZE = 100;
+    private static final int LOCK_STRIPES = 64;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    @Qualifier(FirestoreAsyncConfig.CALLBACK_EXECUTOR)
+    private Executor callbackExecutor;
+
+    @Value("${plan.like-shards.count:10}")
+    private int shardCount;
+
+    @Value("${plan.like-shards.cache-ttl-seconds:5}")
+    private long cacheTtlSeconds;
+
+    @Value("${plan.like-shards.cache-maximum-size:10000}")
+    private long cacheMaximumSize;
+
+    private Cache<String, ShardSum> shardSums;
+
+    // Per lock stripe: like writes in flight, and how many have ended so reads can tell if one overlapped them
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final int[] writesInFlight = new int[LOCK_STRIPES];
+    private final long[] writesEnded = new long[LOCK_STRIPES];
+
+    public PlanLikeCounter() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        long ttlNanos = Duration.ofSeconds(cacheTtlSeconds).toNanos();
+        shardSums = Caffeine.newBuilder()
+                .maximumSize(cacheMaximumSize)
+                .expireAfter(new Expiry<String, ShardSum>() {
+                    // Sums expire a fixed time after they were read from the shards, however often they are adjusted
+                    @Override
+                    public long expireAfterCreate(String planId, ShardSum sum, long currentTime) {
+                        return Math.max(0, ttlNanos - (currentTime - sum.readNanos));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String planId, ShardSum sum, long currentTime, long currentDuration) {
+                        return expireAfterCreate(planId, sum, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String planId, ShardSum sum, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+
+        if (meterRegistry != null) {
+            CaffeineCacheMetrics.monitor(meterRegistry, shardSums, "planLikeShards");
+        }
+    }
+
+    public static int readShardCount(DocumentSnapshot planDoc) {
+        Long shards = planDoc.getLong(SHARD_COUNT_FIELD);
+        return shards != null ? shards.intValue() : 0;
+    }
+
+    // Shard count for a plan's next like: the plan's own if it already has shards, else the configured default
+    public int shardCountFor(DocumentSnapshot planDoc) {
+        int existing = readShardCount(planDoc);
+        return existing > 0 ? existing : Math.max(shardCount, 1);
+    }
+
+    public DocumentReference randomShard(DocumentReference planRef, int shards) {
+        return planRef.collection(SHARDS_COLLECTION).document(String.valueOf(ThreadLocalRandom.current().nextInt(shards)));
+    }
+
+    public static Map<String, Object> increment(long delta) {
+        Map<String, Object> shard = new HashMap<>();
+        shard.put(SHARD_VALUE_FIELD, FieldValue.increment(delta));
+        return shard;
+    }
+
+    public void invalidate(String planId) {
+        if (planId != null) {
+            shardSums.invalidate(planId);
+        }
+    }
+
+    // Call before a like write on the plan's shards, and endWrite once it has committed or failed
+    public void beginWrite(String planId) {
+        int stripe = stripeFor(planId);
+        synchronized (locks[stripe]) {
+            writesInFlight[stripe]++;
+        }
+    }
+
+    /**
+     * A cached sum was stored while no write was in flight, so it cannot contain this one: a committed
+     * delta is added in place. A write that may or may not have committed drops the sum instead.
+     */
+    public void endWrite(String planId, boolean committed, long delta) {
+        int stripe = stripeFor(planId);
+        synchronized (locks[stripe]) {
+            if (!committed) {
+                shardSums.invalidate(planId);
+            } else if (delta != 0) {
+                shardSums.asMap().computeIfPresent(planId, (id, cached) -> new ShardSum(cached.sum + delta, cached.readNanos));
+            }
+            writesInFlight[stripe]--;
+            writesEnded[stripe]++;
+        }
+    }
+
+    // Cached shard sum of a plan, read from the shards on a miss
+    public long shardSum(String planId, int shards) {
+        if (shards <= 0) {
+            return 0;
+        }
+        ShardSum cached = shardSums.getIfPresent(planId);
+        if (cached != null) {
+            return cached.sum;
+        }
+
+        Plan plan = new Plan();
+        plan.setId(planId);
+        plan.setLikeShards(shards);
+        addShardCountsAsync(List.of(plan)).join();
+        return plan.getLikeCount();
+    }
+
+    /**
+     * Add the shard sums to likeCount of every plan that has shards.
+     * Uncached plans are read with chunked getAll calls that are all issued before any is awaited.
+     */
+    public CompletableFuture<Void> addShardCountsAsync(List<? extends Plan> plans) {
+        Firestore firestore = FirestoreClient.getFirestore();
+        Map<String, Plan> uncached = new HashMap<>();
+        Map<String, Long> endedBeforeRead = new HashMap<>();
+        List<DocumentReference> shardRefs = new ArrayList<>();
+
+        for (Plan plan : plans) {
+            if (plan.getLikeShards() <= 0) {
+                continue;
+            }
+            ShardSum cached = shardSums.getIfPresent(plan.getId());
+            if (cached != null) {
+                plan.setLikeCount(plan.getLikeCount() + cached.sum);
+                continue;
+            }
+            uncached.put(plan.getId(), plan);
+            endedBeforeRead.put(plan.getId(), writesEnded(plan.getId()));
+            DocumentReference planRef = firestore.collection("plans").document(plan.getId());
+            for (int shard = 0; shard < plan.getLikeShards(); shard++) {
+                shardRefs.add(planRef.collection(SHARDS_COLLECTION).document(String.valueOf(shard)));
+            }
+        }
+        if (shardRefs.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        List<CompletableFuture<List<DocumentSnapshot>>> futures = new ArrayList<>();
+        for (int i = 0; i < shardRefs.size(); i += GET_ALL_CHUNK_SIZE) {
+            DocumentReference[] chunk = shardRefs.subList(i, Math.min(i + GET_ALL_CHUNK_SIZE, shardRefs.size()))
+                    .toArray(new DocumentReference[0]);
+            futures.add(FirestoreFutures.toCompletable(firestore.getAll(chunk), callbackExecutor));
+        }
+
+        return FirestoreFutures.allOf(futures).thenAccept(chunks -> {
+            Map<String, Long> sums = new HashMap<>();
+            uncached.keySet().forEach(planId -> sums.put(planId, 0L));
+            for (List<DocumentSnapshot> shards : chunks) {
+                for (DocumentSnapshot shard : shards) {
+                    Long value = shard.exists() ? shard.getLong(SHARD_VALUE_FIELD) : null;
+                    if (value != null) {
+                        // like_shards/{n} -> plans/{planId}
+                        sums.merge(shard.getReference().getParent().getParent().getId(), value, Long::sum);
+                    }
+                }
+            }
+            sums.forEach((planId, sum) -> {
+                cacheUnlessWritten(planId, sum, endedBeforeRead.get(planId));
+                Plan plan = uncached.get(planId);
+                plan.setLikeCount(plan.getLikeCount() + sum);
+            });
+        }).exceptionally(e -> {
+            // Counts fall back to the base value rather than failing the whole read
+            System.err.println("Failed to read like shards: " + e.getMessage());
+            return null;
+        });
+    }
+
+    // Caches a sum only if no write on its stripe ended since the read was issued or is still in flight
+    private void cacheUnlessWritten(String planId, long sum, long endedBeforeRead) {
+        int stripe = stripeFor(planId);
+        synchronized (locks[stripe]) {
+            if (writesInFlight[stripe] == 0 && writesEnded[stripe] == endedBeforeRead) {
+                shardSums.put(planId, new ShardSum(sum, System.nanoTime()));
+            }
+        }
+    }
+
+    private long writesEnded(String planId) {
+        int stripe = stripeFor(planId);
+        synchronized (locks[stripe]) {
+            return writesEnded[stripe];
+        }
+    }
+
+    private static int stripeFor(String planId) {
+        return Math.floorMod(planId.hashCode(), LOCK_STRIPES);
+    }
+
+    private static final class ShardSum {
+        private final long sum;
+        // When this sum was read from the shards; adjustments keep it
+        private final long readNanos;
+
+        private ShardSum(long sum, long readNanos) {
+            this.sum = sum;
+            this.readNanos = readNanos;
+        }
+    }
+}
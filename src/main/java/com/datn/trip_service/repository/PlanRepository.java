@@ -1,32 +1,51 @@
 package com.datn.trip_service.repository;
 
+import com.datn.trip_service.config.FirestoreAsyncConfig;
 import com.datn.trip_service.model.Plan;
 import com.datn.trip_service.model.PlanType;
-import com.datn.trip_service.model.PlanLike;
-import com.datn.trip_service.model.PlanComment;
 import com.datn.trip_service.model.plan.ActivityPlan;
 import com.datn.trip_service.model.plan.BoatPlan;
 import com.datn.trip_service.model.plan.CarRentalPlan;
 import com.datn.trip_service.model.plan.FlightPlan;
 import com.datn.trip_service.model.plan.LodgingPlan;
 import com.datn.trip_service.model.plan.RestaurantPlan;
+import com.google.api.core.ApiFuture;
 import com.google.cloud.Timestamp;
 import com.google.cloud.firestore.*;
 import com.google.firebase.cloud.FirestoreClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 @Repository
 public class PlanRepository {
     
     private static final String COLLECTION_NAME = "plans";
+    private static final int BATCH_LIMIT = 500; // Firestore maximum writes per batch
     private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
     
+    @Autowired
+    private TripCache tripCache;
+    
+    @Autowired
+    private PlanEngagementRepository engagementRepository;
+    
+    @Autowired
+    private PlanLikeCounter likeCounter;
+    
+    @Autowired
+    @Qualifier(FirestoreAsyncConfig.CALLBACK_EXECUTOR)
+    private Executor callbackExecutor;
+    
     private Firestore getFirestore() {
         return FirestoreClient.getFirestore();
     }
@@ -67,37 +86,121 @@ public class PlanRepository {
             // Convert Plan to Map
             Map<String, Object> planData = convertPlanToMap(plan);
 
-            docRef.set(planData, SetOptions.merge()).get();
+            WriteResult result = docRef.set(planData, SetOptions.merge()).get();
+            plan.setUpdateTime(result.getUpdateTime());
             return plan;
         } catch (InterruptedException | ExecutionException e) {
             throw new RuntimeException("Failed to save plan", e);
+        } finally {
+            // Cached trips embed their plans
+            tripCache.invalidate(plan.getTripId());
         }
     }
     
-    public Optional<Plan> findById(String id) {
+    /**
+     * Create plans with chunked WriteBatches (at most BATCH_LIMIT writes each), committed concurrently.
+     * Returns one entry per plan: null when it was written, otherwise the error of its batch.
+     */
+    public List<String> saveAll(List<Plan> plans) {
+        Firestore firestore = getFirestore();
+        List<ApiFuture<List<WriteResult>>> commits = new ArrayList<>();
+        for (int from = 0; from < plans.size(); from += BATCH_LIMIT) {
+            WriteBatch batch = firestore.batch();
+            for (Plan plan : plans.subList(from, Math.min(from + BATCH_LIMIT, plans.size()))) {
+                DocumentReference docRef = firestore.collection(COLLECTION_NAME).document();
+                plan.setId(docRef.getId());
+                if (plan.getCreatedAt() == null) {
+                    plan.setCreatedAt(LocalDateTime.now());
+                }
+                batch.set(docRef, convertPlanToMap(plan));
+            }
+            commits.add(batch.commit());
+        }
+        
+        List<String> errors = new ArrayList<>();
         try {
-            Firestore firestore = getFirestore();
-            DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(id);
-            DocumentSnapshot document = docRef.get().get();
-            
-            if (document.exists()) {
-                Plan plan = convertDocumentToPlan(document);
-                return Optional.ofNullable(plan);
+            for (int chunk = 0; chunk < commits.size(); chunk++) {
+                String error = null;
+                try {
+                    commits.get(chunk).get();
+                } catch (ExecutionException e) {
+                    error = "Failed to save plan: " + e.getCause().getMessage();
+                }
+                int chunkSize = Math.min(BATCH_LIMIT, plans.size() - chunk * BATCH_LIMIT);
+                for (int i = 0; i < chunkSize; i++) {
+                    errors.add(error);
+                }
             }
-            return Optional.empty();
-        } catch (InterruptedException | ExecutionException e) {
-            throw new RuntimeException("Failed to find plan", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while saving plans", e);
+        } finally {
+            plans.stream().map(Plan::getTripId).distinct().forEach(tripCache::invalidate);
         }
+        return errors;
     }
     
-    public List<Plan> findByTripId(String tripId) {
+    /**
+     * Apply changes to a plan that was read from Firestore and write only the fields that changed.
+     * The write is rejected with ConcurrentUpdateException if the plan was modified since it was read.
+     */
+    public Plan update(Plan plan, Consumer<Plan> changes) {
+        Map<String, Object> before = convertPlanToMap(plan);
+        changes.accept(plan);
+        Map<String, Object> fieldChanges = FieldChanges.diff(before, convertPlanToMap(plan));
+        if (fieldChanges.isEmpty()) {
+            return plan;
+        }
+        
         try {
-            Firestore firestore = getFirestore();
-            QuerySnapshot querySnapshot = firestore.collection(COLLECTION_NAME)
-                    .whereEqualTo("tripId", tripId)
-                    .get()
-                    .get();
-            
+            DocumentReference docRef = getFirestore().collection(COLLECTION_NAME).document(plan.getId());
+            plan.setUpdateTime(FieldChanges.apply(docRef, fieldChanges, plan.getUpdateTime()));
+            return plan;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Failed to update plan", e);
+        } finally {
+            tripCache.invalidate(plan.getTripId());
+        }
+    }
+    
+    public Optional<Plan> findById(String id) {
+        return FirestoreFutures.await(findByIdAsync(id), "Failed to find plan");
+    }
+    
+    public CompletableFuture<Optional<Plan>> findByIdAsync(String id) {
+        DocumentReference docRef = getFirestore().collection(COLLECTION_NAME).document(id);
+        
+        return FirestoreFutures.toCompletable(docRef.get(), callbackExecutor)
+                .thenApply(document -> document.exists()
+                        ? Optional.ofNullable(convertDocumentToPlan(document))
+                        : Optional.<Plan>empty())
+                .thenCompose(plan -> plan.isPresent()
+                        ? attachEngagementAsync(List.of(plan.get())).thenApply(ignored -> plan)
+                        : CompletableFuture.completedFuture(plan));
+    }
+    
+    // Trip a plan belongs to, reading only that field; empty when the plan does not exist
+    public Optional<String> findTripId(String id) {
+        Firestore firestore = getFirestore();
+        DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(id);
+        ApiFuture<List<DocumentSnapshot>> future = firestore.getAll(new DocumentReference[]{docRef}, FieldMask.of("tripId"));
+        return FirestoreFutures.await(FirestoreFutures.toCompletable(future, callbackExecutor)
+                .thenApply(documents -> documents.get(0).exists()
+                        ? Optional.ofNullable(documents.get(0).getString("tripId"))
+                        : Optional.<String>empty()), "Failed to find plan");
+    }
+    
+    public List<Plan> findByTripId(String tripId) {
+        return FirestoreFutures.await(findByTripIdAsync(tripId), "Failed to find plans by tripId");
+    }
+    
+    public CompletableFuture<List<Plan>> findByTripIdAsync(String tripId) {
+        ApiFuture<QuerySnapshot> future = getFirestore().collection(COLLECTION_NAME)
+                .whereEqualTo("tripId", tripId)
+                .get();
+        
+        return FirestoreFutures.toCompletable(future, callbackExecutor).thenApply(querySnapshot -> {
             List<Plan> plans = new ArrayList<>();
             for (DocumentSnapshot document : querySnapshot.getDocuments()) {
                 Plan plan = convertDocumentToPlan(document);
@@ -115,15 +218,53 @@ public class PlanRepository {
             });
             
             return plans;
-        } catch (InterruptedException | ExecutionException e) {
-            throw new RuntimeException("Failed to find plans by tripId", e);
+        }).thenCompose(this::attachEngagementAsync);
+    }
+    
+    // Like shard sums and first comment pages are independent, so they are loaded side by side
+    private CompletableFuture<List<Plan>> attachEngagementAsync(List<Plan> plans) {
+        return CompletableFuture.allOf(likeCounter.addShardCountsAsync(plans), attachFirstCommentPagesAsync(plans))
+                .thenApply(ignored -> plans);
+    }
+    
+    // Plans on the subcollection layout get their first comment page; all pages are requested together
+    private CompletableFuture<List<Plan>> attachFirstCommentPagesAsync(List<Plan> plans) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Plan plan : plans) {
+            if (plan.getComments() != null) {
+                continue;
+            }
+            if (plan.getCommentCount() == 0) {
+                plan.setComments(new ArrayList<>());
+                continue;
+            }
+            futures.add(engagementRepository.findCommentPageAsync(plan.getId(), PlanEngagementRepository.DEFAULT_COMMENT_PAGE_SIZE, null)
+                    .thenAccept(page -> {
+                        plan.setComments(page.getComments());
+                        plan.setCommentsCursor(page.getNextCursor());
+                    })
+                    .exceptionally(e -> {
+                        System.err.println("Failed to load comments for plan " + plan.getId() + ": " + e.getMessage());
+                        plan.setComments(new ArrayList<>());
+                        return null;
+                    }));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> plans);
+    }
+    
+    public void delete(Plan plan) {
+        try {
+            deleteById(plan.getId());
+        } finally {
+            tripCache.invalidate(plan.getTripId());
         }
     }
     
     public void deleteById(String id) {
         try {
             Firestore firestore = getFirestore();
-            firestore.collection(COLLECTION_NAME).document(id).delete().get();
+            // Removes the likes/comments subcollections together with the plan
+            firestore.recursiveDelete(firestore.collection(COLLECTION_NAME).document(id)).get();
         } catch (InterruptedException | ExecutionException e) {
             throw new RuntimeException("Failed to delete plan", e);
         }
@@ -146,7 +287,8 @@ public class PlanRepository {
         
         // Add photos list - ensure it's not null
         if (plan.getPhotos() != null && !plan.getPhotos().isEmpty()) {
-            map.put("photos", plan.getPhotos());
+            // Copied so update() can diff against a list that is changed in place
+            map.put("photos", new ArrayList<>(plan.getPhotos()));
         } else {
             map.put("photos", new ArrayList<String>());
         }
@@ -157,54 +299,7 @@ public class PlanRepository {
             map.put("createdAt", plan.getCreatedAt().format(formatter));
         }
 
-        if (plan.getLikes() != null && !plan.getLikes().isEmpty()) {
-            List<Map<String, Object>> likesList = new ArrayList<>();
-            for (PlanLike like : plan.getLikes()) {
-                Map<String, Object> likeMap = new HashMap<>();
-                if (like.getId() != null) {
-                    likeMap.put("id", like.getId());
-                }
-                if (like.getPlanId() != null) {
-                    likeMap.put("planId", like.getPlanId());
-                }
-                if (like.getUserId() != null) {
-                    likeMap.put("userId", like.getUserId());
-                }
-                if (like.getCreatedAt() != null) {
-                    likeMap.put("createdAt", like.getCreatedAt());
-                }
-                likesList.add(likeMap);
-            }
-            map.put("likes", likesList);
-        }
-        
-        if (plan.getComments() != null && !plan.getComments().isEmpty()) {
-            List<Map<String, Object>> commentsList = new ArrayList<>();
-            for (PlanComment comment : plan.getComments()) {
-                Map<String, Object> commentMap = new HashMap<>();
-                if (comment.getId() != null) {
-                    commentMap.put("id", comment.getId());
-                }
-                if (comment.getPlanId() != null) {
-                    commentMap.put("planId", comment.getPlanId());
-                }
-                if (comment.getUserId() != null) {
-                    commentMap.put("userId", comment.getUserId());
-                }
-
-                if (comment.getParentId() != null) {
-                    commentMap.put("parentId", comment.getParentId());
-                }
-                if (comment.getContent() != null) {
-                    commentMap.put("content", comment.getContent());
-                }
-                if (comment.getCreatedAt() != null) {
-                    commentMap.put("createdAt", comment.getCreatedAt());
-                }
-                commentsList.add(commentMap);
-            }
-            map.put("comments", commentsList);
-        }
+        // likes/comments are not part of the plan document any more, see PlanEngagementRepository
         
         // Add specific fields based on plan type
         if (plan instanceof FlightPlan) {
@@ -343,64 +438,14 @@ public class PlanRepository {
         plan.setType(planType);
         
         plan.setCreatedAt(parseLocalDateTime(document.get("createdAt")));
+        plan.setUpdateTime(document.getUpdateTime());
         
-        // Load likes and comments from Firestore to preserve them
-        Object likesObj = document.get("likes");
-        if (likesObj instanceof List) {
-            @SuppressWarnings("unchecked")
-            List<Map<String, Object>> likesList = (List<Map<String, Object>>) likesObj;
-            List<PlanLike> likes = new ArrayList<>();
-            for (Map<String, Object> likeMap : likesList) {
-                PlanLike like = new PlanLike();
-                if (likeMap.get("id") != null) {
-                    like.setId(((Number) likeMap.get("id")).longValue());
-                }
-                // planId is String
-                like.setPlanId((String) likeMap.get("planId"));
-                like.setUserId((String) likeMap.get("userId"));
-                // createdAt is Timestamp
-                Object createdAtObj = likeMap.get("createdAt");
-                if (createdAtObj instanceof Timestamp) {
-                    like.setCreatedAt((Timestamp) createdAtObj);
-                } else if (createdAtObj instanceof Number) {
-                    // Convert from milliseconds to Timestamp
-                    long millis = ((Number) createdAtObj).longValue();
-                    like.setCreatedAt(Timestamp.ofTimeMicroseconds(millis * 1000));
-                }
-                likes.add(like);
-            }
-            plan.setLikes(likes);
-        }
-        
-        Object commentsObj = document.get("comments");
-        if (commentsObj instanceof List) {
-            @SuppressWarnings("unchecked")
-            List<Map<String, Object>> commentsList = (List<Map<String, Object>>) commentsObj;
-            List<PlanComment> comments = new ArrayList<>();
-            for (Map<String, Object> commentMap : commentsList) {
-                PlanComment comment = new PlanComment();
-                if (commentMap.get("id") != null) {
-                    comment.setId(((Number) commentMap.get("id")).longValue());
-                }
-                // planId, parentId are String
-                comment.setPlanId((String) commentMap.get("planId"));
-                comment.setUserId((String) commentMap.get("userId"));
-                comment.setUserName((String) commentMap.get("userName"));
-                comment.setUserAvatar((String) commentMap.get("userAvatar"));
-                comment.setParentId((String) commentMap.get("parentId"));
-                comment.setContent((String) commentMap.get("content"));
-                // createdAt is Timestamp
-                Object createdAtObj = commentMap.get("createdAt");
-                if (createdAtObj instanceof Timestamp) {
-                    comment.setCreatedAt((Timestamp) createdAtObj);
-                } else if (createdAtObj instanceof Number) {
-                    // Convert from milliseconds to Timestamp
-                    long millis = ((Number) createdAtObj).longValue();
-                    comment.setCreatedAt(Timestamp.ofTimeMicroseconds(millis * 1000));
-                }
-                comments.add(comment);
-            }
-            plan.setComments(comments);
+        plan.setLikeCount(PlanEngagementRepository.readLikeCount(document));
+        plan.setLikeShards(PlanLikeCounter.readShardCount(document));
+        plan.setCommentCount(PlanEngagementRepository.readCommentCount(document));
+        if (PlanEngagementRepository.hasLegacyEngagement(document)) {
+            // Not migrated yet: the embedded comments are all there is
+            plan.setComments(PlanEngagementRepository.readLegacyComments(document));
         }
         
         return plan;
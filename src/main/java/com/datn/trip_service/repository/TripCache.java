@@ -0,0 +1,111 @@
+package com.datn.trip_service.repository;
+
+import com.datn.trip_service.model.Trip;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Bounded read-through cache in front of TripRepository.findById.
+ * Found trips live for trip.cache.ttl-seconds, missing IDs are cached as empty for the shorter
+ * trip.cache.negative-ttl-seconds. Callers always get their own copy, so mutating a returned
+ * trip never leaks into the cache. Hit/miss/eviction metrics are published as cache.* with cache=trips.
+ */
+@Component
+public class TripCache {
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${trip.cache.maximum-size:1000}")
+    private long maximumSize;
+
+    @Value("${trip.cache.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    @Value("${trip.cache.negative-ttl-seconds:5}")
+    private long negativeTtlSeconds;
+
+    private Cache<String, Optional<Trip>> cache;
+
+    @PostConstruct
+    public void init() {
+        long ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        long negativeTtlNanos = TimeUnit.SECONDS.toNanos(negativeTtlSeconds);
+
+        cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<String, Optional<Trip>>() {
+                    @Override
+                    public long expireAfterCreate(String key, Optional<Trip> value, long currentTime) {
+                        return value.isPresent() ? ttlNanos : negativeTtlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Optional<Trip> value, long currentTime, long currentDuration) {
+                        return value.isPresent() ? ttlNanos : negativeTtlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Optional<Trip> value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+
+        if (meterRegistry != null) {
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, "trips");
+        }
+    }
+
+    public Optional<Trip> get(String id, Function<String, Optional<Trip>> loader) {
+        return cache.get(id, loader).map(TripCache::copy);
+    }
+
+    /**
+     * Cached copy, or null when the ID is not cached (an empty Optional means "known missing")
+     */
+    public Optional<Trip> getIfPresent(String id) {
+        Optional<Trip> cached = cache.getIfPresent(id);
+        return cached != null ? cached.map(TripCache::copy) : null;
+    }
+
+    public void invalidate(String id) {
+        if (id != null) {
+            cache.invalidate(id);
+        }
+    }
+
+    // Shallow copy with fresh lists; element objects are shared but never mutated in place
+    private static Trip copy(Trip trip) {
+        return new Trip(
+                trip.getId(),
+                trip.getUserId(),
+                trip.getTitle(),
+                trip.getStartDate(),
+                trip.getEndDate(),
+                trip.getIsPublic(),
+                trip.getCoverPhoto(),
+                trip.getContent(),
+                trip.getTags(),
+                trip.getPlans() != null ? new ArrayList<>(trip.getPlans()) : null,
+                trip.getMembers() != null ? new ArrayList<>(trip.getMembers()) : null,
+                trip.getSharedWithUsers() != null ? new ArrayList<>(trip.getSharedWithUsers()) : null,
+                trip.getCreatedAt(),
+                trip.getSharedAt(),
+                trip.getUpdateTime()
+        );
+    }
+}
@@ -0,0 +1,335 @@
+package com.datn.trip_service.repository;
+
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FirestoreException;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.firebase.cloud.FirestoreClient;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory interval index over trip startDate/endDate, kept current by a Firestore snapshot listener
+ * that applies only the changed documents. Trips are held as epoch-day intervals in sets sorted by start
+ * day, overall and per owner, so "active on D" is a range scan over [D - longest trip, D], "starting after D"
+ * is a tail view, and a listener event costs O(log n) per changed trip rather than a re-sort.
+ *
+ * Callers must check isReady() and fall back to Firestore queries until the first snapshot arrives.
+ * Disable with trip.date-index.enabled=false.
+ */
+@Component
+public class TripDateIndex implements HealthIndicator {
+
+    private static final Logger logger = LoggerFactory.getLogger(TripDateIndex.class);
+
+    private static final String COLLECTION_NAME = "trips";
+    // Only the fields the index needs are streamed to the listener
+    private static final String[] INDEX_FIELDS = {"userId", "startDate", "endDate", "deleted"};
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${trip.date-index.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${trip.date-index.retry-delay-seconds:30}")
+    private long retryDelaySeconds = 30;
+
+    // Trip ID -> indexed entry, so a modified or removed trip can be taken out of the sorted sets
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Trips all = new Trips();
+    private final Map<String, Trips> byUser = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService retryExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "trip-date-index-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile boolean ready;
+    private volatile long lastSyncMillis;
+    private ListenerRegistration registration;
+
+    @PostConstruct
+    public void registerMetrics() {
+        if (meterRegistry == null) {
+            return;
+        }
+        Gauge.builder("trips.date_index.size", this, TripDateIndex::size)
+                .description("Number of trips held by the in-memory date index")
+                .register(meterRegistry);
+        Gauge.builder("trips.date_index.staleness", this, TripDateIndex::stalenessSeconds)
+                .description("Seconds since the date index last received a snapshot from Firestore")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (!enabled || registration != null) {
+            return;
+        }
+        try {
+            registration = FirestoreClient.getFirestore()
+                    .collection(COLLECTION_NAME)
+                    .select(INDEX_FIELDS)
+                    .addSnapshotListener(this::onEvent);
+            logger.info("Trip date index listening on '{}'", COLLECTION_NAME);
+        } catch (Exception e) {
+            logger.error("Failed to start trip date index listener, retrying in {}s", retryDelaySeconds, e);
+            retryExecutor.schedule(this::start, retryDelaySeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (registration != null) {
+            registration.remove();
+            registration = null;
+        }
+        retryExecutor.shutdownNow();
+    }
+
+    private void onEvent(QuerySnapshot value, FirestoreException error) {
+        if (error != null) {
+            logger.error("Trip date index listener failed, falling back to Firestore scans", error);
+            ready = false;
+            synchronized (this) {
+                registration = null;
+                // The new listener replays every document; trips removed meanwhile must not survive
+                reset();
+            }
+            retryExecutor.schedule(this::start, retryDelaySeconds, TimeUnit.SECONDS);
+            return;
+        }
+        if (value == null) {
+            return;
+        }
+
+        for (DocumentChange change : value.getDocumentChanges()) {
+            DocumentSnapshot document = change.getDocument();
+            // Soft-deleted trips leave the index as if the document was gone
+            if (change.getType() == DocumentChange.Type.REMOVED || TripRepository.isDeleted(document)) {
+                remove(document.getId());
+            } else {
+                put(document.getId(), document.getString("userId"),
+                        document.getString("startDate"), document.getString("endDate"));
+            }
+        }
+        lastSyncMillis = System.currentTimeMillis();
+        ready = true;
+    }
+
+    // Package-private mutators so the index can be exercised without a Firestore listener
+    synchronized void put(String tripId, String userId, String startDate, String endDate) {
+        remove(tripId);
+        Entry entry = Entry.of(tripId, userId, startDate, endDate);
+        if (entry == null) {
+            return;
+        }
+        entries.put(tripId, entry);
+        all.add(entry);
+        if (userId != null) {
+            byUser.computeIfAbsent(userId, id -> new Trips()).add(entry);
+        }
+    }
+
+    synchronized void remove(String tripId) {
+        Entry entry = entries.remove(tripId);
+        if (entry == null) {
+            return;
+        }
+        all.remove(entry);
+        if (entry.userId != null) {
+            Trips owned = byUser.get(entry.userId);
+            if (owned != null) {
+                owned.remove(entry);
+                if (owned.isEmpty()) {
+                    byUser.remove(entry.userId);
+                }
+            }
+        }
+    }
+
+    synchronized void reset() {
+        entries.clear();
+        all.clear();
+        byUser.clear();
+    }
+
+    void markReady() {
+        lastSyncMillis = System.currentTimeMillis();
+        ready = true;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public double stalenessSeconds() {
+        long last = lastSyncMillis;
+        return last == 0 ? -1 : (System.currentTimeMillis() - last) / 1000.0;
+    }
+
+    // Trip IDs with startDate <= day <= endDate
+    public List<String> findActiveTripIds(LocalDate day) {
+        return all.activeOn(day.toEpochDay());
+    }
+
+    public List<String> findActiveTripIdsForUser(String userId, LocalDate day) {
+        Trips owned = byUser.get(userId);
+        return owned != null ? owned.activeOn(day.toEpochDay()) : List.of();
+    }
+
+    // Trip IDs with startDate > day, nearest first
+    public List<String> findTripIdsStartingAfter(LocalDate day) {
+        return all.startingAfter(day.toEpochDay());
+    }
+
+    public List<String> findTripIdsStartingAfterForUser(String userId, LocalDate day) {
+        Trips owned = byUser.get(userId);
+        return owned != null ? owned.startingAfter(day.toEpochDay()) : List.of();
+    }
+
+    /**
+     * Owner -> ID of their nearest trip starting after day, for owners without a trip active on day
+     * (the daily reminder run)
+     */
+    public Map<String, String> findNextTripIdByOwner(LocalDate day) {
+        long epochDay = day.toEpochDay();
+        Map<String, String> nextTripIds = new HashMap<>();
+        byUser.forEach((userId, owned) -> {
+            if (userId.isEmpty() || !owned.activeOn(epochDay).isEmpty()) {
+                return;
+            }
+            Entry next = owned.byStart.ceiling(Entry.probe(epochDay + 1));
+            if (next != null) {
+                nextTripIds.put(userId, next.tripId);
+            }
+        });
+        return nextTripIds;
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder builder = ready ? Health.up() : Health.unknown();
+        return builder
+                .withDetail("size", size())
+                .withDetail("stalenessSeconds", stalenessSeconds())
+                .build();
+    }
+
+    private static final class Entry {
+        private final String tripId;
+        private final String userId;
+        private final long startDay;
+        private final long endDay;
+
+        private static final Comparator<Entry> BY_START =
+                Comparator.comparingLong((Entry entry) -> entry.startDay).thenComparing(entry -> entry.tripId);
+
+        private Entry(String tripId, String userId, long startDay, long endDay) {
+            this.tripId = tripId;
+            this.userId = userId;
+            this.startDay = startDay;
+            this.endDay = endDay;
+        }
+
+        private static Entry of(String tripId, String userId, String startDate, String endDate) {
+            if (startDate == null) {
+                return null;
+            }
+            try {
+                long startDay = LocalDate.parse(startDate).toEpochDay();
+                // Without an end date a trip can still be upcoming but is never active
+                long endDay = endDate != null ? LocalDate.parse(endDate).toEpochDay() : startDay - 1;
+                return new Entry(tripId, userId, startDay, endDay);
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        // Sorts before every trip starting on startDay (no trip ID is empty)
+        private static Entry probe(long startDay) {
+            return new Entry("", null, startDay, startDay);
+        }
+    }
+
+    // Entries sorted by start day, all trips or one owner's. Changed under the index lock, read without it.
+    private static final class Trips {
+        private final ConcurrentSkipListSet<Entry> byStart = new ConcurrentSkipListSet<>(Entry.BY_START);
+        // Duration in days -> number of entries with it, so the longest trip is known after removals
+        private final TreeMap<Long, Integer> durations = new TreeMap<>();
+        private volatile long maxDuration;
+
+        private void add(Entry entry) {
+            // Widen the scan window before the entry becomes visible
+            durations.merge(entry.endDay - entry.startDay, 1, Integer::sum);
+            maxDuration = durations.lastKey();
+            byStart.add(entry);
+        }
+
+        private void remove(Entry entry) {
+            byStart.remove(entry);
+            durations.computeIfPresent(entry.endDay - entry.startDay, (duration, count) -> count > 1 ? count - 1 : null);
+            maxDuration = durations.isEmpty() ? 0 : durations.lastKey();
+        }
+
+        private void clear() {
+            byStart.clear();
+            durations.clear();
+            maxDuration = 0;
+        }
+
+        private boolean isEmpty() {
+            return byStart.isEmpty();
+        }
+
+        private List<String> activeOn(long day) {
+            // Only trips starting within the longest trip duration before 'day' can still be running
+            List<String> tripIds = new ArrayList<>();
+            for (Entry entry : byStart.subSet(Entry.probe(day - maxDuration), true, Entry.probe(day + 1), false)) {
+                if (entry.endDay >= day) {
+                    tripIds.add(entry.tripId);
+                }
+            }
+            return tripIds;
+        }
+
+        private List<String> startingAfter(long day) {
+            List<String> tripIds = new ArrayList<>();
+            for (Entry entry : byStart.tailSet(Entry.probe(day + 1))) {
+                tripIds.add(entry.tripId);
+            }
+            return tripIds;
+        }
+    }
+}
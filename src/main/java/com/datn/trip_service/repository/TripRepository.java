@@ -1,28 +1,79 @@
 package com.datn.trip_service.repository;
 
+import com.datn.trip_service.config.FirestoreAsyncConfig;
+import com.datn.trip_service.dto.TripSummary;
 import com.datn.trip_service.model.Plan;
 import com.datn.trip_service.model.PlanType;
 import com.datn.trip_service.model.Trip;
+import com.google.api.core.ApiFuture;
+import com.google.api.gax.rpc.ApiStreamObserver;
 import com.google.cloud.Timestamp;
 import com.google.cloud.firestore.*;
 import com.google.firebase.cloud.FirestoreClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Repository;
 import com.datn.trip_service.model.User;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 @Repository
 public class TripRepository {
 
     private static final String COLLECTION_NAME = "trips";
+    private static final String PLANS_COLLECTION_NAME = "plans";
+    // Firestore caps the number of values in a whereIn filter at 30
+    private static final int WHERE_IN_CHUNK_SIZE = 30;
+    private static final int GET_ALL_CHUNK_SIZE = 100;
+    // Set by markDeleted; deleted trips are skipped by every read until they are purged
+    private static final String DELETED_FIELD = "deleted";
+    // Fields needed by the daily notification run
+    private static final String[] SCHEDULE_FIELDS = {
+            "userId", "title", "startDate", "endDate", "coverPhoto", DELETED_FIELD
+    };
+    // Fields needed by the trip list screens (view=summary)
+    private static final String[] SUMMARY_FIELDS = {
+            "userId", "title", "startDate", "endDate", "isPublic", "coverPhoto", "members", "createdAt", "sharedAt", DELETED_FIELD
+    };
+    // Fields needed to decide who can view a trip (TripAccessEvaluator)
+    private static final String[] ACCESS_FIELDS = {
+            "userId", "isPublic", "members", "sharedWithUsers", DELETED_FIELD
+    };
+    // Checkpoint of MemberIdsBackfillJob; memberIds is only complete once it reports completed
+    private static final String MIGRATIONS_COLLECTION = "migrations";
+    private static final String MEMBER_IDS_MIGRATION = "trip_member_ids";
+    private static final long MEMBER_IDS_RECHECK_MILLIS = 60_000L;
+
+    @Autowired
+    private TripDateIndex dateIndex;
+    
+    @Autowired
+    private TripCache tripCache;
+    
+    @Autowired
+    private PlanLikeCounter likeCounter;
+    
+    @Autowired
+    @Qualifier(FirestoreAsyncConfig.CALLBACK_EXECUTOR)
+    private Executor callbackExecutor;
+
+    private volatile boolean memberIdsBackfilled;
+    private volatile long memberIdsCheckedAt;
 
     private Firestore getFirestore() {
         return FirestoreClient.getFirestore();
@@ -66,11 +117,39 @@ public class TripRepository {
             
             DocumentReference docRef = firestore.collection(COLLECTION_NAME)
                     .document(trip.getId());
-            docRef.set(tripData).get();
+            trip.setUpdateTime(docRef.set(tripData).get().getUpdateTime());
             
             return trip;
         } catch (InterruptedException | ExecutionException e) {
             throw new RuntimeException("Failed to save trip", e);
+        } finally {
+            tripCache.invalidate(trip.getId());
+        }
+    }
+    
+    /**
+     * Apply changes to a trip that was read from Firestore (findByIdForUpdate, not the cache) and write
+     * only the fields that changed. The write is rejected with ConcurrentUpdateException if the trip was
+     * modified since it was read.
+     */
+    public Trip update(Trip trip, Consumer<Trip> changes) {
+        Map<String, Object> before = convertTripToMap(trip);
+        changes.accept(trip);
+        Map<String, Object> fieldChanges = FieldChanges.diff(before, convertTripToMap(trip));
+        if (fieldChanges.isEmpty()) {
+            return trip;
+        }
+        
+        try {
+            DocumentReference docRef = getFirestore().collection(COLLECTION_NAME).document(trip.getId());
+            trip.setUpdateTime(FieldChanges.apply(docRef, fieldChanges, trip.getUpdateTime()));
+            return trip;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Failed to update trip", e);
+        } finally {
+            // Also drops a stale cached copy that made the precondition fail
+            tripCache.invalidate(trip.getId());
         }
     }
     
@@ -107,6 +186,9 @@ public class TripRepository {
             map.put("members", new ArrayList<>());
         }
         
+        // Denormalized member IDs so member lookups can use an array-contains query
+        map.put("memberIds", extractMemberIds(trip.getMembers()));
+        
         // Add sharedWithUsers list
         if (trip.getSharedWithUsers() != null) {
             List<Map<String, Object>> sharedUsersList = trip.getSharedWithUsers().stream()
@@ -120,6 +202,17 @@ public class TripRepository {
         return map;
     }
     
+    public static List<String> extractMemberIds(List<User> members) {
+        if (members == null) {
+            return new ArrayList<>();
+        }
+        return members.stream()
+                .map(User::getId)
+                .filter(id -> id != null && !id.isEmpty())
+                .distinct()
+                .collect(Collectors.toList());
+    }
+    
     // Helper method to convert User to Map
     private Map<String, Object> convertUserToMap(User user) {
         Map<String, Object> userMap = new HashMap<>();
@@ -134,23 +227,230 @@ public class TripRepository {
     }
 
     public Optional<Trip> findById(String id) {
+        return tripCache.get(id, this::loadById);
+    }
+    
+    /**
+     * findById straight from Firestore, for read-modify-write callers: a cached copy can be up to the cache
+     * TTL old, and its update time would fail the write precondition of update()
+     */
+    public Optional<Trip> findByIdForUpdate(String id) {
+        return loadById(id);
+    }
+    
+    /**
+     * Non-blocking findById, served from the trip cache when possible
+     */
+    public CompletableFuture<Optional<Trip>> findByIdAsync(String id) {
+        Optional<Trip> cached = tripCache.getIfPresent(id);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return loadByIdAsync(id).thenApply(loaded -> tripCache.get(id, key -> loaded));
+    }
+    
+    /**
+     * Trip document only, plans left null; for callers that load typed plans themselves
+     */
+    public CompletableFuture<Optional<Trip>> findByIdWithoutPlansAsync(String id) {
+        Optional<Trip> cached = tripCache.getIfPresent(id);
+        if (cached != null) {
+            cached.ifPresent(trip -> trip.setPlans(null));
+            return CompletableFuture.completedFuture(cached);
+        }
+        DocumentReference docRef = getFirestore().collection(COLLECTION_NAME).document(id);
+        return FirestoreFutures.toCompletable(docRef.get(), callbackExecutor)
+                .thenApply(document -> document.exists() && !isDeleted(document)
+                        ? Optional.of(convertDocumentToTripWithoutPlans(document))
+                        : Optional.<Trip>empty());
+    }
+    
+    /**
+     * Owner, visibility, members and shared users of each trip, keyed by ID. Cached trips are used as they are,
+     * the rest come from chunked getAll calls reading only ACCESS_FIELDS. Missing and deleted trips are absent.
+     * The partial trips are never put in the trip cache.
+     */
+    public Map<String, Trip> findAccessInfoByIds(Collection<String> ids) {
+        Map<String, Trip> trips = new HashMap<>();
+        List<String> uncached = new ArrayList<>();
+        for (String id : new LinkedHashSet<>(ids)) {
+            Optional<Trip> cached = tripCache.getIfPresent(id);
+            if (cached != null) {
+                cached.ifPresent(trip -> trips.put(id, trip));
+            } else {
+                uncached.add(id);
+            }
+        }
+        if (uncached.isEmpty()) {
+            return trips;
+        }
+
         try {
             Firestore firestore = getFirestore();
-            DocumentReference docRef = firestore.collection(COLLECTION_NAME)
-                    .document(id);
-            DocumentSnapshot document = docRef.get().get();
-            
-            if (document.exists()) {
-                Trip trip = convertDocumentToTrip(document);
-                return Optional.ofNullable(trip);
+            List<ApiFuture<List<DocumentSnapshot>>> futures = new ArrayList<>();
+            for (int i = 0; i < uncached.size(); i += GET_ALL_CHUNK_SIZE) {
+                DocumentReference[] refs = uncached.subList(i, Math.min(i + GET_ALL_CHUNK_SIZE, uncached.size())).stream()
+                        .map(id -> firestore.collection(COLLECTION_NAME).document(id))
+                        .toArray(DocumentReference[]::new);
+                futures.add(firestore.getAll(refs, FieldMask.of(ACCESS_FIELDS)));
             }
-            return Optional.empty();
-        } catch (InterruptedException | ExecutionException e) {
-            throw new RuntimeException("Failed to find trip", e);
+            for (ApiFuture<List<DocumentSnapshot>> future : futures) {
+                for (DocumentSnapshot document : future.get()) {
+                    if (document.exists() && !isDeleted(document)) {
+                        trips.put(document.getId(), convertDocumentToTripWithoutPlans(document));
+                    }
+                }
+            }
+            return trips;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to find trips for access check", e);
         }
     }
     
-    private Trip convertDocumentToTrip(DocumentSnapshot document) {
+    private Optional<Trip> loadById(String id) {
+        return FirestoreFutures.await(loadByIdAsync(id), "Failed to find trip");
+    }
+    
+    // The trip document and its plans are independent reads, so both are issued before either is awaited
+    private CompletableFuture<Optional<Trip>> loadByIdAsync(String id) {
+        Firestore firestore = getFirestore();
+        CompletableFuture<DocumentSnapshot> documentFuture = FirestoreFutures.toCompletable(
+                firestore.collection(COLLECTION_NAME).document(id).get(), callbackExecutor);
+        CompletableFuture<List<Plan>> plansFuture = findPlansByTripIdAsync(id);
+        
+        return documentFuture.thenCombine(plansFuture, (document, plans) -> {
+            if (!document.exists() || isDeleted(document)) {
+                return Optional.<Trip>empty();
+            }
+            Trip trip = convertDocumentToTripWithoutPlans(document);
+            trip.setPlans(plans);
+            return Optional.of(trip);
+        });
+    }
+    
+    private CompletableFuture<List<Plan>> findPlansByTripIdAsync(String tripId) {
+        ApiFuture<QuerySnapshot> future = getFirestore().collection(PLANS_COLLECTION_NAME)
+                .whereEqualTo("tripId", tripId)
+                .get();
+        
+        return FirestoreFutures.toCompletable(future, callbackExecutor)
+                .thenApply(plansSnapshot -> {
+                    List<Plan> plans = new ArrayList<>();
+                    for (DocumentSnapshot planDoc : plansSnapshot.getDocuments()) {
+                        Plan plan = convertDocumentToPlan(planDoc);
+                        if (plan != null) {
+                            plans.add(plan);
+                        }
+                    }
+                    return plans;
+                })
+                .thenCompose(plans -> likeCounter.addShardCountsAsync(plans).thenApply(ignored -> plans))
+                .exceptionally(e -> {
+                    // If loading plans fails, set empty list
+                    System.err.println("Failed to load plans for trip " + tripId + ": " + e.getMessage());
+                    return new ArrayList<>();
+                });
+    }
+    
+    /**
+     * Convert a batch of trip documents and attach their plans.
+     * Plans are loaded with chunked whereIn("tripId", ...) queries that are all issued
+     * before any of them is awaited, so N trips cost 1 + ceil(N / 30) round trips
+     * instead of 1 + N sequential ones.
+     */
+    private List<Trip> convertDocumentsToTrips(List<? extends DocumentSnapshot> documents) {
+        return FirestoreFutures.await(convertDocumentsToTripsAsync(documents), "Failed to load plans for trips");
+    }
+    
+    private CompletableFuture<List<Trip>> convertDocumentsToTripsAsync(List<? extends DocumentSnapshot> documents) {
+        List<Trip> trips = new ArrayList<>();
+        for (DocumentSnapshot document : documents) {
+            if (isDeleted(document)) {
+                continue;
+            }
+            Trip trip = convertDocumentToTripWithoutPlans(document);
+            if (trip != null) {
+                trips.add(trip);
+            }
+        }
+        
+        if (trips.isEmpty()) {
+            return CompletableFuture.completedFuture(trips);
+        }
+        
+        List<String> tripIds = trips.stream()
+                .map(Trip::getId)
+                .collect(Collectors.toList());
+        
+        return findPlansGroupedByTripIdAsync(tripIds).thenApply(plansByTripId -> {
+            for (Trip trip : trips) {
+                trip.setPlans(plansByTripId.getOrDefault(trip.getId(), new ArrayList<>()));
+            }
+            return trips;
+        });
+    }
+    
+    // Fetch trip documents by ID with chunked getAll calls, keeping request order
+    private List<DocumentSnapshot> findDocumentsByIds(List<String> ids) throws InterruptedException, ExecutionException {
+        Firestore firestore = getFirestore();
+        
+        List<ApiFuture<List<DocumentSnapshot>>> futures = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += GET_ALL_CHUNK_SIZE) {
+            DocumentReference[] refs = ids.subList(i, Math.min(i + GET_ALL_CHUNK_SIZE, ids.size())).stream()
+                    .map(id -> firestore.collection(COLLECTION_NAME).document(id))
+                    .toArray(DocumentReference[]::new);
+            futures.add(firestore.getAll(refs));
+        }
+        
+        List<DocumentSnapshot> documents = new ArrayList<>();
+        for (ApiFuture<List<DocumentSnapshot>> future : futures) {
+            for (DocumentSnapshot document : future.get()) {
+                if (document.exists()) {
+                    documents.add(document);
+                }
+            }
+        }
+        return documents;
+    }
+    
+    private CompletableFuture<Map<String, List<Plan>>> findPlansGroupedByTripIdAsync(List<String> tripIds) {
+        Firestore firestore = getFirestore();
+        
+        // Fire every chunk first so the queries run in parallel
+        List<CompletableFuture<List<QueryDocumentSnapshot>>> futures = new ArrayList<>();
+        for (int i = 0; i < tripIds.size(); i += WHERE_IN_CHUNK_SIZE) {
+            List<String> chunk = new ArrayList<>(tripIds.subList(i, Math.min(i + WHERE_IN_CHUNK_SIZE, tripIds.size())));
+            futures.add(FirestoreFutures.toCompletable(firestore.collection(PLANS_COLLECTION_NAME)
+                            .whereIn("tripId", chunk)
+                            .get(), callbackExecutor)
+                    .thenApply(QuerySnapshot::getDocuments)
+                    .exceptionally(e -> {
+                        // If loading a chunk fails, its trips keep an empty plan list
+                        System.err.println("Failed to load plans for trip chunk: " + e.getMessage());
+                        return new ArrayList<>();
+                    }));
+        }
+        
+        return FirestoreFutures.allOf(futures).thenApply(chunks -> {
+            Map<String, List<Plan>> plansByTripId = new HashMap<>();
+            for (List<QueryDocumentSnapshot> planDocs : chunks) {
+                for (DocumentSnapshot planDoc : planDocs) {
+                    Plan plan = convertDocumentToPlan(planDoc);
+                    if (plan != null) {
+                        plansByTripId.computeIfAbsent(planDoc.getString("tripId"), k -> new ArrayList<>())
+                                .add(plan);
+                    }
+                }
+            }
+            return plansByTripId;
+        }).thenCompose(plansByTripId -> {
+            List<Plan> allPlans = new ArrayList<>();
+            plansByTripId.values().forEach(allPlans::addAll);
+            return likeCounter.addShardCountsAsync(allPlans).thenApply(ignored -> plansByTripId);
+        });
+    }
+    
+    private Trip convertDocumentToTripWithoutPlans(DocumentSnapshot document) {
         Trip trip = new Trip();
         trip.setId(document.getId());
         trip.setUserId(document.getString("userId"));
@@ -174,32 +474,10 @@ public class TripRepository {
         // Parse datetime fields using helper (handles both Timestamp and String)
         trip.setCreatedAt(parseLocalDateTime(document.get("createdAt")));
         trip.setSharedAt(parseLocalDateTime(document.get("sharedAt")));
+        trip.setUpdateTime(document.getUpdateTime());
         
         // Load members list
-        try {
-            List<Map<String, Object>> membersList = (List<Map<String, Object>>) document.get("members");
-            if (membersList != null && !membersList.isEmpty()) {
-                List<User> members = new ArrayList<>();
-                for (Map<String, Object> memberMap : membersList) {
-                    User member = User.builder()
-                            .id((String) memberMap.get("id"))
-                            .firstName((String) memberMap.get("firstName"))
-                            .lastName((String) memberMap.get("lastName"))
-                            .email((String) memberMap.get("email"))
-                            .profilePicture((String) memberMap.get("profilePicture"))
-                            .role((String) memberMap.get("role"))
-                            .enabled((Boolean) memberMap.get("enabled"))
-                            .build();
-                    members.add(member);
-                }
-                trip.setMembers(members);
-            } else {
-                trip.setMembers(new ArrayList<>());
-            }
-        } catch (Exception e) {
-            System.err.println("Failed to parse members: " + e.getMessage());
-            trip.setMembers(new ArrayList<>());
-        }
+        trip.setMembers(convertDocumentToMembers(document));
         
         // Load sharedWithUsers list
         try {
@@ -227,33 +505,33 @@ public class TripRepository {
             trip.setSharedWithUsers(new ArrayList<>());
         }
         
-        // Load plans from separate collection
+        return trip;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private List<User> convertDocumentToMembers(DocumentSnapshot document) {
         try {
-            Firestore firestore = getFirestore();
-            QuerySnapshot plansSnapshot = firestore.collection("plans")
-                    .whereEqualTo("tripId", document.getId())
-                    .get()
-                    .get();
-            
-            List<Plan> plans = new ArrayList<>();
-            System.out.println("Loading plans for trip: " + document.getId() + ", found " + plansSnapshot.size() + " plans");
-            
-            for (DocumentSnapshot planDoc : plansSnapshot.getDocuments()) {
-                System.out.println("Plan doc ID: " + planDoc.getId() + ", data: " + planDoc.getData());
-                Plan plan = convertDocumentToPlan(planDoc);
-                if (plan != null) {
-                    plans.add(plan);
+            List<Map<String, Object>> membersList = (List<Map<String, Object>>) document.get("members");
+            List<User> members = new ArrayList<>();
+            if (membersList != null) {
+                for (Map<String, Object> memberMap : membersList) {
+                    User member = User.builder()
+                            .id((String) memberMap.get("id"))
+                            .firstName((String) memberMap.get("firstName"))
+                            .lastName((String) memberMap.get("lastName"))
+                            .email((String) memberMap.get("email"))
+                            .profilePicture((String) memberMap.get("profilePicture"))
+                            .role((String) memberMap.get("role"))
+                            .enabled((Boolean) memberMap.get("enabled"))
+                            .build();
+                    members.add(member);
                 }
             }
-            trip.setPlans(plans);
+            return members;
         } catch (Exception e) {
-            // If loading plans fails, set empty list
-            System.err.println("Failed to load plans for trip " + document.getId() + ": " + e.getMessage());
-            e.printStackTrace();
-            trip.setPlans(new ArrayList<>());
+            System.err.println("Failed to parse members: " + e.getMessage());
+            return new ArrayList<>();
         }
-        
-        return trip;
     }
     
     private Plan convertDocumentToPlan(DocumentSnapshot document) {
@@ -290,66 +568,274 @@ public class TripRepository {
         // Parse createdAt using helper
         plan.setCreatedAt(parseLocalDateTime(document.get("createdAt")));
         
+        plan.setLikeCount(PlanEngagementRepository.readLikeCount(document));
+        plan.setLikeShards(PlanLikeCounter.readShardCount(document));
+        plan.setCommentCount(PlanEngagementRepository.readCommentCount(document));
+        
         return plan;
     }
 
+    /**
+     * Add members in a single transaction that reads only the trip's members field and writes
+     * members/memberIds. Users already on the trip are skipped. Returns the resulting member list.
+     */
+    public List<User> addMembers(String tripId, List<User> newMembers) {
+        return updateMembers(tripId, members -> {
+            for (User member : newMembers) {
+                boolean memberExists = member.getId() == null || members.stream()
+                        .anyMatch(m -> member.getId().equals(m.getId()));
+                if (!memberExists) {
+                    members.add(member);
+                }
+            }
+            return members;
+        });
+    }
+    
+    public List<User> removeMembers(String tripId, Collection<String> userIds) {
+        return updateMembers(tripId, members -> {
+            members.removeIf(member -> userIds.contains(member.getId()));
+            return members;
+        });
+    }
+    
+    private List<User> updateMembers(String tripId, UnaryOperator<List<User>> change) {
+        Firestore firestore = getFirestore();
+        DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(tripId);
+        try {
+            return firestore.runTransaction(transaction -> {
+                DocumentSnapshot document = transaction
+                        .getAll(new DocumentReference[]{docRef}, FieldMask.of("members", DELETED_FIELD))
+                        .get()
+                        .get(0);
+                if (!document.exists() || isDeleted(document)) {
+                    throw new RuntimeException("Trip not found with id: " + tripId);
+                }
+                
+                List<User> members = change.apply(convertDocumentToMembers(document));
+                List<Map<String, Object>> membersList = members.stream()
+                        .map(this::convertUserToMap)
+                        .collect(Collectors.toList());
+                transaction.update(docRef, "members", membersList, "memberIds", extractMemberIds(members));
+                return members;
+            }).get();
+        } catch (InterruptedException | ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Failed to update trip members", e);
+        } finally {
+            tripCache.invalidate(tripId);
+        }
+    }
+
     public List<Trip> findByUserId(String userId) {
+        return FirestoreFutures.await(findByUserIdAsync(userId), "Failed to find trips by userId");
+    }
+    
+    public CompletableFuture<List<Trip>> findByUserIdAsync(String userId) {
+        ApiFuture<QuerySnapshot> future = getFirestore().collection(COLLECTION_NAME)
+                .whereEqualTo("userId", userId)
+                .get();
+        
+        return FirestoreFutures.toCompletable(future, callbackExecutor)
+                .thenCompose(querySnapshot -> convertDocumentsToTripsAsync(querySnapshot.getDocuments()));
+    }
+
+
+    public List<Trip> findTripsByMemberId(String userId) {
         try {
-            Firestore firestore = getFirestore();
-            QuerySnapshot querySnapshot = firestore.collection(COLLECTION_NAME)
-                    .whereEqualTo("userId", userId)
+            boolean indexed = isMemberIdsBackfilled();
+            QuerySnapshot querySnapshot = memberQuery(userId, indexed)
                     .get()
                     .get();
             
-            List<Trip> trips = new ArrayList<>();
+            List<DocumentSnapshot> memberDocuments = new ArrayList<>();
             for (DocumentSnapshot document : querySnapshot.getDocuments()) {
-                Trip trip = convertDocumentToTrip(document);
-                if (trip != null) {
-                    trips.add(trip);
+                // Skip if user is the creator
+                if (userId.equals(document.getString("userId"))) {
+                    continue;
+                }
+                if (indexed || hasMember(document, userId)) {
+                    memberDocuments.add(document);
                 }
             }
-            return trips;
+            return convertDocumentsToTrips(memberDocuments);
         } catch (InterruptedException | ExecutionException e) {
-            throw new RuntimeException("Failed to find trips by userId", e);
+            throw new RuntimeException("Failed to find trips by member id", e);
         }
     }
 
-
-    public List<Trip> findTripsByMemberId(String userId) {
+    /**
+     * Summary projection of a user's own trips (view=summary)
+     * Uses a field mask so content, tags and sharedWithUsers are never downloaded
+     */
+    public List<TripSummary> findSummariesByUserId(String userId) {
         try {
             Firestore firestore = getFirestore();
-            // Get all trips and filter in memory to check members array
             QuerySnapshot querySnapshot = firestore.collection(COLLECTION_NAME)
+                    .whereEqualTo("userId", userId)
+                    .select(SUMMARY_FIELDS)
                     .get()
                     .get();
             
-            List<Trip> trips = new ArrayList<>();
+            List<TripSummary> summaries = new ArrayList<>();
             for (DocumentSnapshot document : querySnapshot.getDocuments()) {
-                // Skip if user is the creator
-                String creatorId = document.getString("userId");
-                if (userId.equals(creatorId)) {
+                if (!isDeleted(document)) {
+                    summaries.add(convertDocumentToSummary(document));
+                }
+            }
+            return summaries;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to find trip summaries by userId", e);
+        }
+    }
+    
+    /**
+     * Summary projection of the trips a user is a member of (view=summary)
+     */
+    public List<TripSummary> findSummariesByMemberId(String userId) {
+        try {
+            boolean indexed = isMemberIdsBackfilled();
+            QuerySnapshot querySnapshot = memberQuery(userId, indexed)
+                    .select(SUMMARY_FIELDS)
+                    .get()
+                    .get();
+            
+            List<TripSummary> summaries = new ArrayList<>();
+            for (DocumentSnapshot document : querySnapshot.getDocuments()) {
+                if (userId.equals(document.getString("userId")) || isDeleted(document)) {
                     continue;
                 }
-                
-                // Check if user is in members list
-                List<Map<String, Object>> membersList = (List<Map<String, Object>>) document.get("members");
-                if (membersList != null) {
-                    boolean isMember = membersList.stream()
-                            .anyMatch(member -> userId.equals(member.get("id")));
-                    
-                    if (isMember) {
-                        Trip trip = convertDocumentToTrip(document);
-                        if (trip != null) {
-                            trips.add(trip);
-                        }
-                    }
+                if (indexed || hasMember(document, userId)) {
+                    summaries.add(convertDocumentToSummary(document));
                 }
             }
-            return trips;
+            return summaries;
         } catch (InterruptedException | ExecutionException e) {
-            throw new RuntimeException("Failed to find trips by member id", e);
+            throw new RuntimeException("Failed to find trip summaries by member id", e);
         }
     }
+    
+    // Trips not backfilled yet have no memberIds, so until then every trip is read and checked in memory
+    private Query memberQuery(String userId, boolean indexed) {
+        CollectionReference trips = getFirestore().collection(COLLECTION_NAME);
+        return indexed ? trips.whereArrayContains("memberIds", userId) : trips;
+    }
+    
+    private boolean hasMember(DocumentSnapshot document, String userId) {
+        Object membersObj = document.get("members");
+        if (!(membersObj instanceof List)) {
+            return false;
+        }
+        for (Object member : (List<?>) membersObj) {
+            if (member instanceof Map && userId.equals(((Map<?, ?>) member).get("id"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Whether MemberIdsBackfillJob has completed. Once it has the answer never changes; before that the
+     * checkpoint is re-read at most once a minute.
+     */
+    boolean isMemberIdsBackfilled() {
+        if (memberIdsBackfilled) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        if (now - memberIdsCheckedAt < MEMBER_IDS_RECHECK_MILLIS) {
+            return false;
+        }
+        memberIdsCheckedAt = now;
+        try {
+            DocumentSnapshot checkpoint = getFirestore().collection(MIGRATIONS_COLLECTION)
+                    .document(MEMBER_IDS_MIGRATION)
+                    .get()
+                    .get();
+            memberIdsBackfilled = checkpoint.exists() && Boolean.TRUE.equals(checkpoint.getBoolean("completed"));
+        } catch (InterruptedException | ExecutionException e) {
+            System.err.println("Failed to read memberIds backfill checkpoint: " + e.getMessage());
+        }
+        return memberIdsBackfilled;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private TripSummary convertDocumentToSummary(DocumentSnapshot document) {
+        String startDateStr = document.getString("startDate");
+        String endDateStr = document.getString("endDate");
+        
+        List<TripSummary.MemberSummary> members = new ArrayList<>();
+        try {
+            List<Map<String, Object>> membersList = (List<Map<String, Object>>) document.get("members");
+            if (membersList != null) {
+                for (Map<String, Object> memberMap : membersList) {
+                    members.add(TripSummary.MemberSummary.builder()
+                            .id((String) memberMap.get("id"))
+                            .firstName((String) memberMap.get("firstName"))
+                            .lastName((String) memberMap.get("lastName"))
+                            .profilePicture((String) memberMap.get("profilePicture"))
+                            .build());
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Failed to parse members: " + e.getMessage());
+        }
+        
+        return TripSummary.builder()
+                .id(document.getId())
+                .userId(document.getString("userId"))
+                .title(document.getString("title"))
+                .startDate(startDateStr != null ? LocalDate.parse(startDateStr) : null)
+                .endDate(endDateStr != null ? LocalDate.parse(endDateStr) : null)
+                .isPublic(document.getString("isPublic"))
+                .coverPhoto(document.getString("coverPhoto"))
+                .members(members)
+                .createdAt(parseLocalDateTime(document.get("createdAt")))
+                .sharedAt(parseLocalDateTime(document.get("sharedAt")))
+                .build();
+    }
+
+    /**
+     * Soft delete: the trip disappears from every read right away, TripPurgeService removes
+     * its plans, files and finally the document itself
+     */
+    public void markDeleted(String id) {
+        try {
+            getFirestore().collection(COLLECTION_NAME)
+                    .document(id)
+                    .update(DELETED_FIELD, true, "deletedAt", LocalDateTime.now().toString())
+                    .get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to delete trip", e);
+        } finally {
+            tripCache.invalidate(id);
+        }
+    }
+    
+    /**
+     * IDs of soft-deleted trips whose purge has not finished yet
+     */
+    public List<String> findDeletedTripIds(int limit) {
+        try {
+            return getFirestore().collection(COLLECTION_NAME)
+                    .whereEqualTo(DELETED_FIELD, true)
+                    .select(DELETED_FIELD)
+                    .limit(limit)
+                    .get()
+                    .get()
+                    .getDocuments().stream()
+                    .map(DocumentSnapshot::getId)
+                    .collect(Collectors.toList());
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to find deleted trips", e);
+        }
+    }
+    
+    public static boolean isDeleted(DocumentSnapshot document) {
+        return Boolean.TRUE.equals(document.getBoolean(DELETED_FIELD));
+    }
 
     public void delete(Trip trip) {
         deleteById(trip.getId());
@@ -364,6 +850,8 @@ public class TripRepository {
                     .get();
         } catch (InterruptedException | ExecutionException e) {
             throw new RuntimeException("Failed to delete trip", e);
+        } finally {
+            tripCache.invalidate(id);
         }
     }
 
@@ -379,13 +867,7 @@ public class TripRepository {
                     .get()
                     .get();
             
-            List<Trip> trips = new ArrayList<>();
-            for (DocumentSnapshot document : querySnapshot.getDocuments()) {
-                Trip trip = convertDocumentToTrip(document);
-                if (trip != null) {
-                    trips.add(trip);
-                }
-            }
+            List<Trip> trips = convertDocumentsToTrips(querySnapshot.getDocuments());
             
             System.out.println("Found " + trips.size() + " trip(s) starting on " + dateString);
             return trips;
@@ -400,12 +882,19 @@ public class TripRepository {
         try {
             Firestore firestore = getFirestore();
             
+            // Served from the in-memory date index once it has synced
+            if (dateIndex.isReady()) {
+                List<Trip> activeTrips = convertDocumentsToTrips(findDocumentsByIds(dateIndex.findActiveTripIds(today)));
+                System.out.println("Found " + activeTrips.size() + " active trip(s) on " + today + " (date index)");
+                return activeTrips;
+            }
+            
             // Get all trips and filter in memory (Firestore doesn't support range queries on different fields easily)
             QuerySnapshot querySnapshot = firestore.collection(COLLECTION_NAME)
                     .get()
                     .get();
             
-            List<Trip> activeTrips = new ArrayList<>();
+            List<DocumentSnapshot> activeDocuments = new ArrayList<>();
             String todayString = today.toString();
             
             for (DocumentSnapshot document : querySnapshot.getDocuments()) {
@@ -415,14 +904,12 @@ public class TripRepository {
                 if (startDateStr != null && endDateStr != null) {
                     // Check if today is between start and end date
                     if (startDateStr.compareTo(todayString) <= 0 && endDateStr.compareTo(todayString) >= 0) {
-                        Trip trip = convertDocumentToTrip(document);
-                        if (trip != null) {
-                            activeTrips.add(trip);
-                        }
+                        activeDocuments.add(document);
                     }
                 }
             }
             
+            List<Trip> activeTrips = convertDocumentsToTrips(activeDocuments);
             System.out.println("Found " + activeTrips.size() + " active trip(s) on " + todayString);
             return activeTrips;
             
@@ -435,12 +922,16 @@ public class TripRepository {
         try {
             Firestore firestore = getFirestore();
             
+            if (dateIndex.isReady()) {
+                return convertDocumentsToTrips(findDocumentsByIds(dateIndex.findActiveTripIdsForUser(userId, today)));
+            }
+            
             QuerySnapshot querySnapshot = firestore.collection(COLLECTION_NAME)
                     .whereEqualTo("userId", userId)
                     .get()
                     .get();
             
-            List<Trip> activeTrips = new ArrayList<>();
+            List<DocumentSnapshot> activeDocuments = new ArrayList<>();
             String todayString = today.toString();
             
             for (DocumentSnapshot document : querySnapshot.getDocuments()) {
@@ -449,15 +940,12 @@ public class TripRepository {
                 
                 if (startDateStr != null && endDateStr != null) {
                     if (startDateStr.compareTo(todayString) <= 0 && endDateStr.compareTo(todayString) >= 0) {
-                        Trip trip = convertDocumentToTrip(document);
-                        if (trip != null) {
-                            activeTrips.add(trip);
-                        }
+                        activeDocuments.add(document);
                     }
                 }
             }
             
-            return activeTrips;
+            return convertDocumentsToTrips(activeDocuments);
             
         } catch (InterruptedException | ExecutionException e) {
             throw new RuntimeException("Failed to find active trips for user", e);
@@ -467,6 +955,11 @@ public class TripRepository {
     public List<Trip> findUpcomingTripsForUser(String userId, LocalDate today) {
         try {
             Firestore firestore = getFirestore();
+            
+            if (dateIndex.isReady()) {
+                // Index returns IDs nearest first and getAll keeps request order
+                return convertDocumentsToTrips(findDocumentsByIds(dateIndex.findTripIdsStartingAfterForUser(userId, today)));
+            }
             String todayString = today.toString();
             
             // Get all trips for this user, then filter in memory
@@ -476,19 +969,17 @@ public class TripRepository {
                     .get()
                     .get();
             
-            List<Trip> upcomingTrips = new ArrayList<>();
+            List<DocumentSnapshot> upcomingDocuments = new ArrayList<>();
             for (DocumentSnapshot document : querySnapshot.getDocuments()) {
                 String startDateStr = document.getString("startDate");
                 
                 // Filter: startDate > today
                 if (startDateStr != null && startDateStr.compareTo(todayString) > 0) {
-                    Trip trip = convertDocumentToTrip(document);
-                    if (trip != null) {
-                        upcomingTrips.add(trip);
-                    }
+                    upcomingDocuments.add(document);
                 }
             }
             
+            List<Trip> upcomingTrips = convertDocumentsToTrips(upcomingDocuments);
             upcomingTrips.sort((t1, t2) -> t1.getStartDate().compareTo(t2.getStartDate()));
             return upcomingTrips;
             
@@ -497,6 +988,89 @@ public class TripRepository {
         }
     }
 
+    /**
+     * Nearest upcoming trip of every owner who has no trip active today, with schedule fields only.
+     * Answered from the date index plus one getAll for the chosen trips; null while the index is not ready.
+     */
+    public Map<String, Trip> findNextTripByOwner(LocalDate today) {
+        if (!dateIndex.isReady()) {
+            return null;
+        }
+        Map<String, String> nextTripIds = dateIndex.findNextTripIdByOwner(today);
+        try {
+            Firestore firestore = getFirestore();
+            List<String> ids = new ArrayList<>(nextTripIds.values());
+            List<ApiFuture<List<DocumentSnapshot>>> futures = new ArrayList<>();
+            for (int i = 0; i < ids.size(); i += GET_ALL_CHUNK_SIZE) {
+                DocumentReference[] refs = ids.subList(i, Math.min(i + GET_ALL_CHUNK_SIZE, ids.size())).stream()
+                        .map(id -> firestore.collection(COLLECTION_NAME).document(id))
+                        .toArray(DocumentReference[]::new);
+                futures.add(firestore.getAll(refs, FieldMask.of(SCHEDULE_FIELDS)));
+            }
+            Map<String, Trip> trips = new HashMap<>();
+            for (ApiFuture<List<DocumentSnapshot>> future : futures) {
+                for (DocumentSnapshot document : future.get()) {
+                    if (document.exists() && !isDeleted(document)) {
+                        trips.put(document.getId(), convertDocumentToTripWithoutPlans(document));
+                    }
+                }
+            }
+            
+            Map<String, Trip> nextTripByOwner = new HashMap<>();
+            nextTripIds.forEach((userId, tripId) -> {
+                Trip trip = trips.get(tripId);
+                if (trip != null) {
+                    nextTripByOwner.put(userId, trip);
+                }
+            });
+            return nextTripByOwner;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to find next trips", e);
+        }
+    }
+
+    /**
+     * Stream every trip once with a field mask, without loading plans or members.
+     * Each trip is handed to the consumer as it arrives; returns the number of documents read.
+     */
+    public long streamTripSchedules(Consumer<Trip> consumer) {
+        CompletableFuture<Long> completion = new CompletableFuture<>();
+        AtomicLong documentsRead = new AtomicLong();
+        
+        getFirestore().collection(COLLECTION_NAME)
+                .select(SCHEDULE_FIELDS)
+                .stream(new ApiStreamObserver<DocumentSnapshot>() {
+                    @Override
+                    public void onNext(DocumentSnapshot document) {
+                        documentsRead.incrementAndGet();
+                        if (isDeleted(document)) {
+                            return;
+                        }
+                        try {
+                            consumer.accept(convertDocumentToTripWithoutPlans(document));
+                        } catch (Exception e) {
+                            System.err.println("Failed to process trip " + document.getId() + ": " + e.getMessage());
+                        }
+                    }
+                    
+                    @Override
+                    public void onError(Throwable t) {
+                        completion.completeExceptionally(t);
+                    }
+                    
+                    @Override
+                    public void onCompleted() {
+                        completion.complete(documentsRead.get());
+                    }
+                });
+        
+        try {
+            return completion.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to stream trips", e);
+        }
+    }
+
     public List<String> getAllUserIds() {
         try {
             Firestore firestore = getFirestore();
@@ -506,6 +1080,7 @@ public class TripRepository {
                     .get();
             
             return querySnapshot.getDocuments().stream()
+                    .filter(doc -> !isDeleted(doc))
                     .map(doc -> doc.getString("userId"))
                     .filter(userId -> userId != null && !userId.isEmpty())
                     .distinct()
@@ -521,6 +1096,10 @@ public class TripRepository {
         try {
             Firestore firestore = getFirestore();
             
+            if (dateIndex.isReady()) {
+                return convertDocumentsToTrips(findDocumentsByIds(dateIndex.findTripIdsStartingAfter(today)));
+            }
+            
             String todayString = today.toString();
             
             // Query trips with startDate > today
@@ -529,13 +1108,7 @@ public class TripRepository {
                     .get()
                     .get();
             
-            List<Trip> upcomingTrips = new ArrayList<>();
-            for (DocumentSnapshot document : querySnapshot.getDocuments()) {
-                Trip trip = convertDocumentToTrip(document);
-                if (trip != null) {
-                    upcomingTrips.add(trip);
-                }
-            }
+            List<Trip> upcomingTrips = convertDocumentsToTrips(querySnapshot.getDocuments());
             
             // Sort by startDate ascending (nearest first)
             upcomingTrips.sort((t1, t2) -> t1.getStartDate().compareTo(t2.getStartDate()));
@@ -549,40 +1122,26 @@ public class TripRepository {
     }
 
     /**
-     * Get public trips for Adventure section
-     * Filters: isPublic = "public", excludes user's own trips
+     * All public trips without their plans (used to rebuild the adventure feed)
      */
-    public List<Trip> findPublicTripsForAdventure(String excludeUserId, int limit) {
+    public List<Trip> findPublicTripsWithoutPlans() {
         try {
             Firestore firestore = getFirestore();
-            
-            // Query public trips
             QuerySnapshot querySnapshot = firestore.collection(COLLECTION_NAME)
                     .whereEqualTo("isPublic", "public")
-                    .orderBy("sharedAt", Query.Direction.DESCENDING)
-                    .limit(limit)
                     .get()
                     .get();
             
             List<Trip> publicTrips = new ArrayList<>();
             for (DocumentSnapshot document : querySnapshot.getDocuments()) {
-                // Exclude user's own trips
-                String tripUserId = document.getString("userId");
-                if (excludeUserId != null && excludeUserId.equals(tripUserId)) {
+                if (isDeleted(document)) {
                     continue;
                 }
-                
-                Trip trip = convertDocumentToTrip(document);
-                if (trip != null) {
-                    publicTrips.add(trip);
-                }
+                publicTrips.add(convertDocumentToTripWithoutPlans(document));
             }
-            
-            System.out.println("Found " + publicTrips.size() + " public trip(s) for adventure");
             return publicTrips;
-            
         } catch (InterruptedException | ExecutionException e) {
-            throw new RuntimeException("Failed to find public trips for adventure", e);
+            throw new RuntimeException("Failed to find public trips", e);
         }
     }
 
@@ -0,0 +1,183 @@
+package com.datn.trip_service.scheduler;
+
+import com.datn.trip_service.repository.FirestoreFutures;
+import com.google.api.core.ApiFuture;
+import com.google.cloud.firestore.BulkWriter;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Precondition;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.SetOptions;
+import com.google.cloud.firestore.WriteResult;
+import com.google.firebase.cloud.FirestoreClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * One-off backfill that fills the denormalized memberIds array on existing trip documents.
+ * Trips are walked in document ID order in chunks, and the checkpoint is written once a chunk's
+ * trips are all updated, so a restarted run continues where it stopped.
+ *
+ * Each write only applies if the trip is unchanged since the chunk was read (Precondition.updatedAt).
+ * Otherwise it could undo a members change made in between by addMembers/removeMembers. A trip that
+ * changed is read again and updated in a transaction; the rest of the chunk is unaffected.
+ *
+ * Member lookups scan the members list until the checkpoint is completed, so the job runs on every
+ * start (a single read once it has finished). Disable with trip.backfill.member-ids.enabled=false
+ */
+@Component
+public class MemberIdsBackfillJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(MemberIdsBackfillJob.class);
+
+    private static final String TRIPS_COLLECTION = "trips";
+    private static final String MIGRATIONS_COLLECTION = "migrations";
+    private static final String CHECKPOINT_DOCUMENT = "trip_member_ids";
+    // Trips read and written per chunk, at most
+    private static final int MAX_CHUNK_SIZE = 499;
+
+    @Value("${trip.backfill.member-ids.enabled:true}")
+    private boolean enabled;
+
+    @Value("${trip.backfill.member-ids.chunk-size:400}")
+    private int chunkSize;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) {
+            return;
+        }
+        Thread worker = new Thread(this::run, "member-ids-backfill");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public void run() {
+        try {
+            Firestore firestore = FirestoreClient.getFirestore();
+            DocumentReference checkpointRef = firestore.collection(MIGRATIONS_COLLECTION).document(CHECKPOINT_DOCUMENT);
+
+            DocumentSnapshot checkpoint = checkpointRef.get().get();
+            if (checkpoint.exists() && Boolean.TRUE.equals(checkpoint.getBoolean("completed"))) {
+                logger.info("memberIds backfill already completed, skipping");
+                return;
+            }
+
+            String lastDocumentId = checkpoint.exists() ? checkpoint.getString("lastDocumentId") : null;
+            Long processedSoFar = checkpoint.exists() ? checkpoint.getLong("processed") : null;
+            long processed = processedSoFar != null ? processedSoFar : 0L;
+            int limit = Math.min(Math.max(chunkSize, 1), MAX_CHUNK_SIZE);
+
+            logger.info("Starting memberIds backfill after document {} ({} already processed)", lastDocumentId, processed);
+
+            while (true) {
+                Query query = firestore.collection(TRIPS_COLLECTION)
+                        .orderBy(FieldPath.documentId())
+                        .select("members")
+                        .limit(limit);
+                if (lastDocumentId != null) {
+                    query = query.startAfter(lastDocumentId);
+                }
+
+                QuerySnapshot chunk = query.get().get();
+                if (chunk.isEmpty()) {
+                    break;
+                }
+
+                updateChunk(firestore, chunk.getDocuments());
+
+                lastDocumentId = chunk.getDocuments().get(chunk.size() - 1).getId();
+                processed += chunk.size();
+                checkpointRef.set(checkpointData(lastDocumentId, processed, false), SetOptions.merge()).get();
+
+                logger.info("memberIds backfill: {} trip(s) processed, checkpoint at {}", processed, lastDocumentId);
+
+                if (chunk.size() < limit) {
+                    break;
+                }
+            }
+
+            checkpointRef.set(checkpointData(lastDocumentId, processed, true), SetOptions.merge()).get();
+            logger.info("memberIds backfill completed: {} trip(s) processed", processed);
+        } catch (Exception e) {
+            logger.error("memberIds backfill failed, it will resume from the last checkpoint on the next run", e);
+        }
+    }
+
+    // Writes are independent, so one trip that changed since it was read does not hold back the others
+    private void updateChunk(Firestore firestore, List<? extends DocumentSnapshot> documents) throws Exception {
+        BulkWriter writer = firestore.bulkWriter();
+        try {
+            Map<DocumentReference, ApiFuture<WriteResult>> writes = new LinkedHashMap<>();
+            for (DocumentSnapshot document : documents) {
+                writes.put(document.getReference(), writer.update(document.getReference(),
+                        Precondition.updatedAt(document.getUpdateTime()), "memberIds", extractMemberIds(document)));
+            }
+            writer.flush().get();
+
+            for (Map.Entry<DocumentReference, ApiFuture<WriteResult>> write : writes.entrySet()) {
+                try {
+                    write.getValue().get();
+                } catch (ExecutionException e) {
+                    if (!FirestoreFutures.isFailedPrecondition(e.getCause())) {
+                        throw e;
+                    }
+                    updateFromCurrent(firestore, write.getKey());
+                }
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    // The trip changed after its chunk was read: read it again and write its memberIds in one transaction
+    private void updateFromCurrent(Firestore firestore, DocumentReference tripRef) throws Exception {
+        firestore.runTransaction(transaction -> {
+            DocumentSnapshot current = transaction.get(tripRef).get();
+            if (current.exists()) {
+                transaction.update(tripRef, "memberIds", extractMemberIds(current));
+            }
+            return null;
+        }).get();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> extractMemberIds(DocumentSnapshot document) {
+        List<String> memberIds = new ArrayList<>();
+        Object membersObj = document.get("members");
+        if (membersObj instanceof List) {
+            for (Object memberObj : (List<Object>) membersObj) {
+                if (memberObj instanceof Map) {
+                    Object id = ((Map<String, Object>) memberObj).get("id");
+                    if (id instanceof String && !((String) id).isEmpty() && !memberIds.contains(id)) {
+                        memberIds.add((String) id);
+                    }
+                }
+            }
+        }
+        return memberIds;
+    }
+
+    private Map<String, Object> checkpointData(String lastDocumentId, long processed, boolean completed) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("lastDocumentId", lastDocumentId);
+        data.put("processed", processed);
+        data.put("completed", completed);
+        data.put("updatedAt", System.currentTimeMillis());
+        return data;
+    }
+}
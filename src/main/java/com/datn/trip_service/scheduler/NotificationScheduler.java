@@ -1,5 +1,6 @@
 package com.datn.trip_service.scheduler;
 
+import com.datn.trip_service.dto.NotificationRequest;
 import com.datn.trip_service.model.Trip;
 import com.datn.trip_service.repository.TripRepository;
 import com.datn.trip_service.service.NotificationService;
@@ -9,11 +10,11 @@ import org.springframework.stereotype.Component;
 
 
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
-import java.util.List;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 
 @Component
@@ -31,84 +32,86 @@ public class NotificationScheduler {
 
     @Scheduled(cron = "0 38 7 * * ?", zone = "UTC")
     public void sendDailyTripNotification() {
+        long startedAt = System.currentTimeMillis();
         try {
             LocalDate today = LocalDate.now();
 
-            List<String> allUserIds = tripRepository.getAllUserIds();
-
-            int notificationsSent = 0;
-            
-            for (String userId : allUserIds) {
-
-                List<Trip> activeTrips = tripRepository.findActiveTripsForUser(userId, today);
-                
-                if (!activeTrips.isEmpty()) {
-                    for (Trip trip : activeTrips) {
-                        System.out.println("  - Active: " + trip.getTitle() + " (" + trip.getStartDate() + " to " + trip.getEndDate() + ")");
-                    }
-                    continue;
-                }
-
-                // User has no active trips - check for upcoming trips
-                List<Trip> upcomingTrips = tripRepository.findUpcomingTripsForUser(userId, today);
-                
-                if (upcomingTrips.isEmpty()) {
-                    continue;
-                }
-                
-                // Has upcoming trip - send notification
-                Trip nextTrip = upcomingTrips.get(0);
-                System.out.println(" Sending notification for upcoming trip: " + nextTrip.getTitle() + " (starts " + nextTrip.getStartDate() + ")");
-                String response = sendUpcomingTripNotification(userId, nextTrip);
-                
-                // Only count as sent if successful
-                if (response != null) {
-                    notificationsSent++;
-                }
+            // From the date index when it is enabled and in sync: only the reminded trips are read
+            Map<String, Trip> nextTripByOwner = tripRepository.findNextTripByOwner(today);
+            long documentsRead;
+            if (nextTripByOwner != null) {
+                documentsRead = nextTripByOwner.size();
+            } else {
+                nextTripByOwner = new HashMap<>();
+                documentsRead = streamNextTripByOwner(today, nextTripByOwner);
             }
 
+            Map<String, NotificationRequest> reminders = new HashMap<>();
+            nextTripByOwner.forEach((userId, trip) -> reminders.put(userId, buildUpcomingTripNotification(trip)));
+
+            int notificationsSent = notificationService.sendNotificationsToUsers(reminders);
+
+            System.out.println("Daily trip notification run: read " + documentsRead + " trip document(s), "
+                    + reminders.size() + " reminder(s), " + notificationsSent + " sent in "
+                    + (System.currentTimeMillis() - startedAt) + " ms");
+
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
-    private String sendUpcomingTripNotification(String userId, Trip trip) {
-        try {
-            String title = "Chuyến đi sắp diễn ra!";
-            String body = String.format(
-                    "Chuyến đi '%s' của bạn sẽ bắt đầu vào ngày %s. Hãy chuẩn bị hành lý nhé!",
-                    trip.getTitle(),
-                    trip.getStartDate().format(dateFormatter)
-            );
-
-
-            // Prepare data payload
-            Map<String, String> data = new HashMap<>();
-            data.put("type", "TRIP");
-            data.put("tripId", trip.getId());
-            data.put("tripTitle", trip.getTitle());
-            data.put("startDate", trip.getStartDate().toString());
-            if (trip.getEndDate() != null) {
-                data.put("endDate", trip.getEndDate().toString());
-            }
-            if (trip.getCoverPhoto() != null) {
-                data.put("coverPhoto", trip.getCoverPhoto());
+    // Single streaming pass over all trips, grouped by owner in memory; returns the documents read
+    private long streamNextTripByOwner(LocalDate today, Map<String, Trip> nextTripByOwner) {
+        Set<String> ownersWithActiveTrip = new HashSet<>();
+
+        long documentsRead = tripRepository.streamTripSchedules(trip -> {
+            String userId = trip.getUserId();
+            if (userId == null || userId.isEmpty() || trip.getStartDate() == null) {
+                return;
             }
 
-            // Send notification to specific user
-            String response = notificationService.sendNotificationToUser(userId, title, body, data);
-            
-            if (response != null) {
-                System.out.println("  Notification sent successfully for trip: " + trip.getTitle());
-            } else {
-                System.out.println("  Failed to send notification for trip: " + trip.getTitle());
+            if (trip.getEndDate() != null
+                    && !trip.getStartDate().isAfter(today)
+                    && !trip.getEndDate().isBefore(today)) {
+                ownersWithActiveTrip.add(userId);
+            } else if (trip.getStartDate().isAfter(today)) {
+                // Keep only the nearest upcoming trip per owner
+                nextTripByOwner.merge(userId, trip,
+                        (current, candidate) -> candidate.getStartDate().isBefore(current.getStartDate()) ? candidate : current);
             }
-            
-            return response;
+        });
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
+        // Users with an active trip don't get an upcoming-trip reminder
+        nextTripByOwner.keySet().removeAll(ownersWithActiveTrip);
+        return documentsRead;
+    }
+
+    private NotificationRequest buildUpcomingTripNotification(Trip trip) {
+        String title = "Chuyến đi sắp diễn ra!";
+        String body = String.format(
+                "Chuyến đi '%s' của bạn sẽ bắt đầu vào ngày %s. Hãy chuẩn bị hành lý nhé!",
+                trip.getTitle(),
+                trip.getStartDate().format(dateFormatter)
+        );
+
+
+        // Prepare data payload
+        Map<String, String> data = new HashMap<>();
+        data.put("type", "TRIP");
+        data.put("tripId", trip.getId());
+        data.put("tripTitle", trip.getTitle());
+        data.put("startDate", trip.getStartDate().toString());
+        if (trip.getEndDate() != null) {
+            data.put("endDate", trip.getEndDate().toString());
+        }
+        if (trip.getCoverPhoto() != null) {
+            data.put("coverPhoto", trip.getCoverPhoto());
         }
+
+        return NotificationRequest.builder()
+                .title(title)
+                .body(body)
+                .data(data)
+                .build();
     }
 }
@@ -0,0 +1,126 @@
+package com.datn.trip_service.scheduler;
+
+import com.datn.trip_service.repository.PlanEngagementRepository;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.SetOptions;
+import com.google.firebase.cloud.FirestoreClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One-off migration that moves the embedded likes/comments arrays of existing plans into the
+ * likes/comments subcollections. Plans are walked in document ID order; each legacy plan is
+ * migrated by its own chunked transactions and the checkpoint is saved after every chunk, so a restarted
+ * run continues where it stopped. Plans touched by a like or comment are migrated on the spot anyway.
+ *
+ * Enable with plan.migration.engagement.enabled=true
+ */
+@Component
+public class PlanEngagementMigrationJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlanEngagementMigrationJob.class);
+
+    private static final String PLANS_COLLECTION = "plans";
+    private static final String MIGRATIONS_COLLECTION = "migrations";
+    private static final String CHECKPOINT_DOCUMENT = "plan_engagement_subcollections";
+
+    @Autowired
+    private PlanEngagementRepository engagementRepository;
+
+    @Value("${plan.migration.engagement.enabled:false}")
+    private boolean enabled;
+
+    @Value("${plan.migration.engagement.chunk-size:100}")
+    private int chunkSize;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) {
+            return;
+        }
+        Thread worker = new Thread(this::run, "plan-engagement-migration");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public void run() {
+        try {
+            Firestore firestore = FirestoreClient.getFirestore();
+            DocumentReference checkpointRef = firestore.collection(MIGRATIONS_COLLECTION).document(CHECKPOINT_DOCUMENT);
+
+            DocumentSnapshot checkpoint = checkpointRef.get().get();
+            if (checkpoint.exists() && Boolean.TRUE.equals(checkpoint.getBoolean("completed"))) {
+                logger.info("Plan engagement migration already completed, skipping");
+                return;
+            }
+
+            String lastDocumentId = checkpoint.exists() ? checkpoint.getString("lastDocumentId") : null;
+            Long processedSoFar = checkpoint.exists() ? checkpoint.getLong("processed") : null;
+            long processed = processedSoFar != null ? processedSoFar : 0L;
+            long migrated = 0;
+            int limit = Math.max(chunkSize, 1);
+
+            logger.info("Starting plan engagement migration after document {} ({} already processed)", lastDocumentId, processed);
+
+            while (true) {
+                Query query = firestore.collection(PLANS_COLLECTION)
+                        .orderBy(FieldPath.documentId())
+                        .select("likes", "comments")
+                        .limit(limit);
+                if (lastDocumentId != null) {
+                    query = query.startAfter(lastDocumentId);
+                }
+
+                QuerySnapshot chunk = query.get().get();
+                if (chunk.isEmpty()) {
+                    break;
+                }
+
+                for (DocumentSnapshot document : chunk.getDocuments()) {
+                    if (PlanEngagementRepository.hasLegacyEngagement(document)) {
+                        engagementRepository.migrateLegacyPlan(document.getId());
+                        migrated++;
+                    }
+                }
+
+                lastDocumentId = chunk.getDocuments().get(chunk.size() - 1).getId();
+                processed += chunk.size();
+                checkpointRef.set(checkpointData(lastDocumentId, processed, false), SetOptions.merge()).get();
+
+                logger.info("Plan engagement migration: {} plan(s) processed, {} migrated this run, checkpoint at {}",
+                        processed, migrated, lastDocumentId);
+
+                if (chunk.size() < limit) {
+                    break;
+                }
+            }
+
+            checkpointRef.set(checkpointData(lastDocumentId, processed, true), SetOptions.merge()).get();
+            logger.info("Plan engagement migration completed: {} plan(s) processed", processed);
+        } catch (Exception e) {
+            logger.error("Plan engagement migration failed, it will resume from the last checkpoint on the next run", e);
+        }
+    }
+
+    private Map<String, Object> checkpointData(String lastDocumentId, long processed, boolean completed) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("lastDocumentId", lastDocumentId);
+        data.put("processed", processed);
+        data.put("completed", completed);
+        data.put("updatedAt", System.currentTimeMillis());
+        return data;
+    }
+}
@@ -0,0 +1,134 @@
+package com.datn.trip_service.scheduler;
+
+import com.datn.trip_service.service.FileStorageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Online migration that moves uploads stored flat in the upload directory into the ab/cd/<name> tree
+ * (FileStorageService.moveToShard), a file at a time under the file's lock, while uploads keep being
+ * served: lookups fall back to the flat location until a file is moved. Work pauses between batches to
+ * leave disk bandwidth to requests.
+ *
+ * The checkpoint lives next to the files (.meta/shard-migration.properties) rather than in Firestore,
+ * because every instance migrates its own upload directory. Moved files leave the flat directory, so an
+ * interrupted run simply lists what is left.
+ *
+ * Disable with file.migration.sharding.enabled=false
+ */
+@Component
+public class UploadShardMigrationJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadShardMigrationJob.class);
+
+    private static final String CHECKPOINT_FILE = ".meta/shard-migration.properties";
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Value("${file.migration.sharding.enabled:true}")
+    private boolean enabled;
+
+    @Value("${file.migration.sharding.batch-size:200}")
+    private int batchSize;
+
+    @Value("${file.migration.sharding.pause-ms:200}")
+    private long pauseMs;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) {
+            return;
+        }
+        Thread worker = new Thread(this::run, "upload-shard-migration");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public void run() {
+        Path root = fileStorageService.getStorageLocation();
+        Path checkpointFile = root.resolve(CHECKPOINT_FILE);
+        try {
+            Properties checkpoint = readCheckpoint(checkpointFile);
+            if (Boolean.parseBoolean(checkpoint.getProperty("completed"))) {
+                logger.info("Upload shard migration already completed, skipping");
+                return;
+            }
+
+            long moved = Long.parseLong(checkpoint.getProperty("moved", "0"));
+            long failed = 0;
+            int inBatch = 0;
+            logger.info("Starting upload shard migration ({} file(s) already moved)", moved);
+
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(root)) {
+                for (Path path : files) {
+                    String fileName = path.getFileName().toString();
+                    if (fileName.startsWith(".") || !Files.isRegularFile(path)) {
+                        // .tmp/.meta, shard directories and in-flight temp files
+                        continue;
+                    }
+                    try {
+                        if (fileStorageService.moveToShard(fileName)) {
+                            moved++;
+                            inBatch++;
+                        }
+                    } catch (RuntimeException e) {
+                        failed++;
+                        logger.warn("Could not move {} into the directory tree: {}", fileName, e.getMessage());
+                    }
+
+                    if (inBatch >= batchSize) {
+                        writeCheckpoint(checkpointFile, moved, false);
+                        logger.info("Upload shard migration: {} file(s) moved", moved);
+                        inBatch = 0;
+                        Thread.sleep(pauseMs);
+                    }
+                }
+            }
+
+            // Files that failed stay flat (and keep resolving); the next start tries them again
+            writeCheckpoint(checkpointFile, moved, failed == 0);
+            logger.info("Upload shard migration finished: {} file(s) moved, {} failed", moved, failed);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.error("Upload shard migration failed, it will resume on the next start", e);
+        }
+    }
+
+    private static Properties readCheckpoint(Path checkpointFile) throws IOException {
+        Properties checkpoint = new Properties();
+        if (Files.exists(checkpointFile)) {
+            try (InputStream input = Files.newInputStream(checkpointFile)) {
+                checkpoint.load(input);
+            }
+        }
+        return checkpoint;
+    }
+
+    private static void writeCheckpoint(Path checkpointFile, long moved, boolean completed) throws IOException {
+        Properties checkpoint = new Properties();
+        checkpoint.setProperty("moved", Long.toString(moved));
+        checkpoint.setProperty("completed", Boolean.toString(completed));
+        checkpoint.setProperty("updatedAt", Long.toString(System.currentTimeMillis()));
+        Path tempFile = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".part");
+        try (OutputStream output = Files.newOutputStream(tempFile)) {
+            checkpoint.store(output, "Upload shard migration");
+        }
+        Files.move(tempFile, checkpointFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,384 @@
+package com.datn.trip_service.service;
+
+import com.datn.trip_service.dto.AdventureResponse;
+import com.datn.trip_service.model.Trip;
+import com.datn.trip_service.model.User;
+import com.datn.trip_service.model.UserProfile;
+import com.datn.trip_service.repository.FirestoreFutures;
+import com.datn.trip_service.repository.TripRepository;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.SetOptions;
+import com.google.cloud.firestore.WriteBatch;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.TextStyle;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+/**
+ * Materialized Adventure feed.
+ * Every public trip has one document in 'adventure_feed' holding everything the Adventure screen shows
+ * (trip fields, owner profile, formatted texts), so a feed page is a single ordered query. Plans are not
+ * part of an entry: plan writes would otherwise have to rewrite it, and clients load them with the trip.
+ * Entries are refreshed by TripService whenever a trip is saved and removed when it stops being public.
+ *
+ * The owner's name and avatar are copied into the entry when it is written, so a profile change only
+ * shows up in the feed after the owner's next trip save or a rebuild, which reads the current profiles.
+ */
+@Service
+public class AdventureFeedService {
+
+    private static final String FEED_COLLECTION = "adventure_feed";
+    private static final String MIGRATIONS_COLLECTION = "migrations";
+    private static final String REBUILD_DOCUMENT = "adventure_feed";
+    private static final String SORT_FIELD = "sortKey";
+    private static final int BATCH_LIMIT = 500;
+    private static final int MAX_PAGE_SIZE = 50;
+    // Queries one getFeed call may run to skip past the excluded user's own trips
+    private static final int MAX_PAGE_READS = 5;
+
+    @Autowired
+    private Firestore firestore;
+
+    @Autowired
+    private TripRepository tripRepository;
+
+    @Autowired
+    private UserService userService;
+
+    @Value("${trip.adventure-feed.rebuild-on-startup:true}")
+    private boolean rebuildOnStartup;
+
+    /**
+     * Upsert or remove the feed entry of a trip after it was saved
+     */
+    public void refresh(Trip trip) {
+        if (trip == null || trip.getId() == null) {
+            return;
+        }
+        try {
+            DocumentReference entryRef = firestore.collection(FEED_COLLECTION).document(trip.getId());
+            if (!isFeedEligible(trip)) {
+                entryRef.delete().get();
+                return;
+            }
+            entryRef.set(convertTripToEntry(trip, userService.getUserProfile(trip.getUserId()))).get();
+        } catch (Exception e) {
+            // The trip write already succeeded; a stale entry is fixed by the next save or a rebuild
+            System.err.println("Failed to refresh adventure feed entry for trip " + trip.getId() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replace the members of a trip's feed entry, if the trip is in the feed
+     */
+    public void updateMembers(String tripId, List<User> members) {
+        try {
+            firestore.collection(FEED_COLLECTION).document(tripId)
+                    .update("members", convertMembersToMaps(members)).get();
+        } catch (ExecutionException e) {
+            // update() fails with NOT_FOUND when the trip has no feed entry, which is expected for private trips
+            if (!FirestoreFutures.isNotFound(e.getCause())) {
+                System.err.println("Failed to update adventure feed members for trip " + tripId + ": " + e.getMessage());
+            }
+        } catch (Exception e) {
+            System.err.println("Failed to update adventure feed members for trip " + tripId + ": " + e.getMessage());
+        }
+    }
+
+    public void remove(String tripId) {
+        try {
+            firestore.collection(FEED_COLLECTION).document(tripId).delete().get();
+        } catch (Exception e) {
+            System.err.println("Failed to remove adventure feed entry for trip " + tripId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * One page of the feed, newest shared first.
+     * Trips owned by excludeUserId are skipped and reading continues past them, so a page is only short
+     * when the feed is exhausted (nextCursor is null) or a long run of excluded trips hit MAX_PAGE_READS.
+     */
+    public AdventureResponse getFeed(String excludeUserId, int limit, String cursor) {
+        int pageSize = Math.min(Math.max(limit, 1), MAX_PAGE_SIZE);
+        Cursor position = cursor != null && !cursor.isEmpty() ? decodeCursor(cursor) : null;
+
+        List<AdventureResponse.AdventureItem> items = new ArrayList<>();
+        boolean exhausted = false;
+        for (int reads = 0; reads < MAX_PAGE_READS && items.size() < pageSize && !exhausted; reads++) {
+            Query query = firestore.collection(FEED_COLLECTION)
+                    .orderBy(SORT_FIELD, Query.Direction.DESCENDING)
+                    .orderBy(FieldPath.documentId(), Query.Direction.DESCENDING)
+                    .limit(pageSize);
+            if (position != null) {
+                query = query.startAfter(position.sortKey, position.tripId);
+            }
+
+            List<QueryDocumentSnapshot> documents;
+            try {
+                documents = query.get().get().getDocuments();
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to read adventure feed", e);
+            }
+
+            int consumed = 0;
+            for (DocumentSnapshot document : documents) {
+                if (items.size() == pageSize) {
+                    break;
+                }
+                consumed++;
+                position = new Cursor(sortKeyOf(document), document.getId());
+                if (excludeUserId != null && excludeUserId.equals(document.getString("userId"))) {
+                    continue;
+                }
+                items.add(convertEntryToItem(document));
+            }
+            // A short read that was used up to its last entry is the end of the feed
+            exhausted = documents.size() < pageSize && consumed == documents.size();
+        }
+
+        // The cursor is the last entry looked at, included or skipped, so the next page starts right after it
+        String nextCursor = !exhausted && position != null ? encodeCursor(position.sortKey, position.tripId) : null;
+
+        return AdventureResponse.builder()
+                .items(items)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    /**
+     * Populate the feed from existing public trips once, so it is not empty right after deployment
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!rebuildOnStartup) {
+            return;
+        }
+        Thread worker = new Thread(() -> {
+            try {
+                DocumentReference markerRef = firestore.collection(MIGRATIONS_COLLECTION).document(REBUILD_DOCUMENT);
+                DocumentSnapshot marker = markerRef.get().get();
+                if (marker.exists() && Boolean.TRUE.equals(marker.getBoolean("completed"))) {
+                    return;
+                }
+                int written = rebuild();
+                Map<String, Object> data = new HashMap<>();
+                data.put("completed", true);
+                data.put("processed", written);
+                data.put("updatedAt", System.currentTimeMillis());
+                markerRef.set(data, SetOptions.merge()).get();
+            } catch (Exception e) {
+                System.err.println("Adventure feed rebuild failed, it will run again on the next start: " + e.getMessage());
+            }
+        }, "adventure-feed-rebuild");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Rewrite every feed entry from the public trips. Returns the number of entries written.
+     */
+    public int rebuild() throws Exception {
+        List<Trip> publicTrips = tripRepository.findPublicTripsWithoutPlans().stream()
+                .filter(this::isFeedEligible)
+                .collect(Collectors.toList());
+        Map<String, UserProfile> owners = userService.getUserProfiles(publicTrips.stream()
+                .map(Trip::getUserId)
+                .collect(Collectors.toSet()));
+
+        for (int i = 0; i < publicTrips.size(); i += BATCH_LIMIT) {
+            WriteBatch batch = firestore.batch();
+            for (Trip trip : publicTrips.subList(i, Math.min(i + BATCH_LIMIT, publicTrips.size()))) {
+                batch.set(firestore.collection(FEED_COLLECTION).document(trip.getId()),
+                        convertTripToEntry(trip, owners.get(trip.getUserId())));
+            }
+            batch.commit().get();
+        }
+
+        System.out.println("Rebuilt adventure feed with " + publicTrips.size() + " trip(s)");
+        return publicTrips.size();
+    }
+
+    private boolean isFeedEligible(Trip trip) {
+        return "public".equals(trip.getIsPublic()) && trip.getStartDate() != null && trip.getEndDate() != null;
+    }
+
+    private Map<String, Object> convertTripToEntry(Trip trip, UserProfile owner) {
+        int duration = (int) ChronoUnit.DAYS.between(trip.getStartDate(), trip.getEndDate()) + 1;
+        // Format start date text (e.g., "January 2026")
+        String startDateText = trip.getStartDate().getMonth().getDisplayName(TextStyle.FULL, Locale.ENGLISH)
+                + " " + trip.getStartDate().getYear();
+
+        LocalDateTime sortTime = trip.getSharedAt() != null ? trip.getSharedAt() : trip.getCreatedAt();
+        long sortKey = sortTime != null ? sortTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : 0L;
+
+        Map<String, Object> entry = new HashMap<>();
+        entry.put("tripId", trip.getId());
+        entry.put("userId", trip.getUserId());
+        entry.put("title", trip.getTitle());
+        entry.put("startDate", trip.getStartDate().toString());
+        entry.put("endDate", trip.getEndDate().toString());
+        entry.put("isPublic", trip.getIsPublic());
+        entry.put("coverPhoto", trip.getCoverPhoto());
+        entry.put("content", trip.getContent());
+        entry.put("tags", trip.getTags());
+        entry.put("createdAt", trip.getCreatedAt() != null ? trip.getCreatedAt().toString() : null);
+        entry.put("sharedAt", trip.getSharedAt() != null ? trip.getSharedAt().toString() : null);
+        entry.put(SORT_FIELD, sortKey);
+        entry.put("duration", duration);
+        entry.put("startDateText", startDateText);
+        entry.put("durationText", duration + " days");
+
+        entry.put("members", convertMembersToMaps(trip.getMembers()));
+
+        Map<String, Object> ownerMap = new HashMap<>();
+        ownerMap.put("id", trip.getUserId());
+        if (owner != null) {
+            ownerMap.put("firstName", owner.getFirstName());
+            ownerMap.put("lastName", owner.getLastName());
+            ownerMap.put("email", owner.getEmail());
+            ownerMap.put("profilePicture", owner.getProfilePicture());
+            ownerMap.put("role", owner.getRole());
+        }
+        entry.put("owner", ownerMap);
+        return entry;
+    }
+
+    private List<Map<String, Object>> convertMembersToMaps(List<User> memberList) {
+        List<Map<String, Object>> members = new ArrayList<>();
+        if (memberList != null) {
+            for (User member : memberList) {
+                Map<String, Object> memberMap = new HashMap<>();
+                memberMap.put("id", member.getId());
+                memberMap.put("firstName", member.getFirstName());
+                memberMap.put("lastName", member.getLastName());
+                memberMap.put("email", member.getEmail());
+                memberMap.put("profilePicture", member.getProfilePicture());
+                memberMap.put("role", member.getRole());
+                members.add(memberMap);
+            }
+        }
+        return members;
+    }
+
+    @SuppressWarnings("unchecked")
+    private AdventureResponse.AdventureItem convertEntryToItem(DocumentSnapshot document) {
+        List<User> members = new ArrayList<>();
+        Object membersObj = document.get("members");
+        if (membersObj instanceof List) {
+            for (Object memberObj : (List<Object>) membersObj) {
+                if (memberObj instanceof Map) {
+                    Map<String, Object> memberMap = (Map<String, Object>) memberObj;
+                    User member = new User();
+                    member.setId((String) memberMap.get("id"));
+                    member.setFirstName((String) memberMap.get("firstName"));
+                    member.setLastName((String) memberMap.get("lastName"));
+                    member.setEmail((String) memberMap.get("email"));
+                    member.setProfilePicture((String) memberMap.get("profilePicture"));
+                    member.setRole((String) memberMap.get("role"));
+                    members.add(member);
+                }
+            }
+        }
+
+        AdventureResponse.TripDetail tripDetail = AdventureResponse.TripDetail.builder()
+                .id(document.getId())
+                .userId(document.getString("userId"))
+                .title(document.getString("title"))
+                .startDate(LocalDate.parse(document.getString("startDate")))
+                .endDate(LocalDate.parse(document.getString("endDate")))
+                .isPublic(document.getString("isPublic"))
+                .coverPhoto(document.getString("coverPhoto"))
+                .content(document.getString("content"))
+                .tags(document.getString("tags"))
+                .members(members)
+                .sharedWithUsers(new ArrayList<>())
+                .createdAt(parseLocalDateTime(document.getString("createdAt")))
+                .sharedAt(parseLocalDateTime(document.getString("sharedAt")))
+                .build();
+
+        Map<String, Object> owner = document.get("owner") instanceof Map
+                ? (Map<String, Object>) document.get("owner")
+                : new HashMap<>();
+        AdventureResponse.UserDetail userDetail = AdventureResponse.UserDetail.builder()
+                .id((String) owner.get("id"))
+                .firstName((String) owner.get("firstName"))
+                .lastName((String) owner.get("lastName"))
+                .email((String) owner.get("email"))
+                .profilePicture((String) owner.get("profilePicture"))
+                .role((String) owner.get("role"))
+                .build();
+
+        Long duration = document.getLong("duration");
+        return AdventureResponse.AdventureItem.builder()
+                .tripId(document.getId())
+                .trip(tripDetail)
+                .user(userDetail)
+                .duration(duration != null ? duration.intValue() : 0)
+                .startDateText(document.getString("startDateText"))
+                .durationText(document.getString("durationText"))
+                .build();
+    }
+
+    private LocalDateTime parseLocalDateTime(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(value);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private long sortKeyOf(DocumentSnapshot document) {
+        Long sortKey = document.getLong(SORT_FIELD);
+        return sortKey != null ? sortKey : 0L;
+    }
+
+    // Opaque cursor: base64url("<sortKey>:<tripId>") of the last entry of the previous page
+    private String encodeCursor(long sortKey, String tripId) {
+        String raw = sortKey + ":" + tripId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Cursor decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            return new Cursor(Long.parseLong(raw.substring(0, separator)), raw.substring(separator + 1));
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid adventure feed cursor", e);
+        }
+    }
+
+    private static final class Cursor {
+        private final long sortKey;
+        private final String tripId;
+
+        private Cursor(long sortKey, String tripId) {
+            this.sortKey = sortKey;
+            this.tripId = tripId;
+        }
+    }
+}
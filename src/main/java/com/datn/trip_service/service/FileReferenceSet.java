@@ -0,0 +1,58 @@
+package com.datn.trip_service.service;
+
+import java.util.Arrays;
+
+/**
+ * Compact set of file names for the upload GC: each name is kept as a 64-bit hash in a sorted long[],
+ * 8 bytes per reference however long the name. A hash collision can only make an orphan look referenced,
+ * so the GC may keep a file it could delete but never deletes one in use.
+ */
+final class FileReferenceSet {
+
+    private long[] hashes = new long[1024];
+    private int size;
+    private boolean sealed;
+
+    void add(String fileName) {
+        if (sealed) {
+            throw new IllegalStateException("Reference set is already sealed");
+        }
+        if (size == hashes.length) {
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        hashes[size++] = hash(fileName);
+    }
+
+    // Sort once all references are in; lookups are binary searches afterwards
+    void seal() {
+        hashes = Arrays.copyOf(hashes, size);
+        Arrays.sort(hashes);
+        sealed = true;
+    }
+
+    boolean contains(String fileName) {
+        if (!sealed) {
+            throw new IllegalStateException("Reference set is not sealed yet");
+        }
+        return Arrays.binarySearch(hashes, hash(fileName)) >= 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // FNV-1a over the characters, finished with the MurmurHash3 mixer to spread the bits
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -1,29 +1,78 @@
 package com.datn.trip_service.service;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
 import java.util.UUID;
 
+/**
+ * Content-addressed upload store.
+ * An upload is streamed into a temp file while its SHA-256 is computed, then stored as
+ * <sha256><ext>, so identical photos share one blob. Every storeFile call takes a reference on
+ * the blob (kept in .meta/refs/<name>) and every deleteFile releases one; the blob is removed
+ * when the last reference goes. Files stored before this scheme (UUID names) have no reference
+ * count and are deleted directly. Resized variants (ImageVariant) go together with their original.
+ *
+ * File names stay flat (they are what URLs and Firestore documents refer to), but files are kept in a
+ * two-level directory tree taken from the name, e.g. ab/cd/abcd12...jpg, so no directory grows past a few
+ * thousand entries. Variants share their original's prefix and so its directory. Files stored flat before
+ * the tree existed keep resolving and are moved into it by UploadShardMigrationJob.
+ */
 @Service
 public class FileStorageService {
 
+    private static final String TEMP_DIR = ".tmp";
+    private static final String REFS_DIR = ".meta/refs";
+    // transferFrom may move fewer bytes than asked for, so it is called in chunks until the source ends
+    private static final long TRANSFER_CHUNK_SIZE = 1L << 20;
+    private static final int LOCK_STRIPES = 64;
+    private static final int SHARD_PREFIX_LENGTH = 4;
+
     private final Path fileStorageLocation;
+    private final Path tempLocation;
+    private final Path refsLocation;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    // Dropped mappings of deleted files; absent when the service is used outside the web context
+    @Autowired(required = false)
+    private UploadFileCache uploadFileCache;
 
     public FileStorageService(@Value("${file.upload-dir:uploads}") String uploadDir) {
         this.fileStorageLocation = Paths.get(uploadDir)
                 .toAbsolutePath()
                 .normalize();
+        this.tempLocation = fileStorageLocation.resolve(TEMP_DIR);
+        this.refsLocation = fileStorageLocation.resolve(REFS_DIR);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
 
         try {
             Files.createDirectories(this.fileStorageLocation);
+            Files.createDirectories(this.tempLocation);
+            Files.createDirectories(this.refsLocation);
+            clearTempFiles();
         } catch (Exception ex) {
             throw new RuntimeException("Could not create the directory where the uploaded files will be stored.", ex);
         }
@@ -37,42 +86,287 @@ public class FileStorageService {
 
         // Get original filename
         String originalFileName = StringUtils.cleanPath(file.getOriginalFilename());
-        
+
         // Validate filename
         if (originalFileName.contains("..")) {
             throw new RuntimeException("Sorry! Filename contains invalid path sequence " + originalFileName);
         }
 
-        // Create unique filename
+        // Keep the extension so the served Content-Type stays right
         String fileExtension = "";
         int lastDotIndex = originalFileName.lastIndexOf('.');
         if (lastDotIndex > 0) {
-            fileExtension = originalFileName.substring(lastDotIndex);
+            fileExtension = originalFileName.substring(lastDotIndex).toLowerCase(Locale.ROOT);
         }
-        
-        String uniqueFileName = UUID.randomUUID().toString() + fileExtension;
 
+        Path tempFile = tempLocation.resolve(UUID.randomUUID() + ".part");
         try {
-            // Copy file to the target location (Replacing existing file with the same name)
-            Path targetLocation = this.fileStorageLocation.resolve(uniqueFileName);
-            Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
+            String hash = writeAndHash(file, tempFile);
+            String fileName = hash + fileExtension;
+            Path targetLocation = shardedPath(fileStorageLocation, fileName);
 
-            return uniqueFileName;
+            synchronized (lockFor(fileName)) {
+                if (Files.exists(targetLocation) || Files.exists(fileStorageLocation.resolve(fileName))) {
+                    // Same content already stored, keep a single copy
+                    Files.delete(tempFile);
+                } else {
+                    Files.createDirectories(targetLocation.getParent());
+                    Files.move(tempFile, targetLocation, StandardCopyOption.ATOMIC_MOVE);
+                }
+                writeRefCount(fileName, readRefCount(fileName) + 1);
+            }
+            return fileName;
         } catch (IOException ex) {
-            throw new RuntimeException("Could not store file " + uniqueFileName + ". Please try again!", ex);
+            throw new RuntimeException("Could not store file " + originalFileName + ". Please try again!", ex);
+        } finally {
+            try {
+                Files.deleteIfExists(tempFile);
+            } catch (IOException ignored) {
+                // Cleared on the next start
+            }
         }
     }
 
+    /**
+     * Release one reference to a stored file; the file is removed with its last reference
+     */
     public void deleteFile(String fileName) {
         try {
-            Path filePath = this.fileStorageLocation.resolve(fileName).normalize();
-            Files.deleteIfExists(filePath);
+            checkFlatName(fileName);
+            synchronized (lockFor(fileName)) {
+                long references = readRefCount(fileName);
+                if (references > 1) {
+                    writeRefCount(fileName, references - 1);
+                    return;
+                }
+                removeWithVariants(fileName);
+            }
         } catch (IOException ex) {
             throw new RuntimeException("Could not delete file " + fileName + ". Please try again!", ex);
         }
     }
 
+    /**
+     * Where a file is: its place in the directory tree, or the flat legacy location while it has not been
+     * moved yet. Files that do not exist resolve to their place in the tree.
+     */
     public Path loadFile(String fileName) {
-        return this.fileStorageLocation.resolve(fileName).normalize();
+        Path sharded = shardedPath(fileStorageLocation, fileName);
+        if (Files.exists(sharded)) {
+            return sharded;
+        }
+        Path flat = this.fileStorageLocation.resolve(fileName).normalize();
+        if (Files.exists(flat)) {
+            return flat;
+        }
+        // Not stored, or moved into the tree by the migration between the two lookups
+        return sharded;
+    }
+
+    /**
+     * When the file was last stored: the later of its own modification time and that of its reference
+     * count, which is rewritten whenever an upload deduplicates onto the file. 0 when it does not exist.
+     */
+    public long lastStoredAt(String fileName) {
+        try {
+            Path file = loadFile(fileName);
+            long storedAt = Files.exists(file) ? Files.getLastModifiedTime(file).toMillis() : 0L;
+            for (Path refFile : List.of(shardedPath(refsLocation, fileName), refsLocation.resolve(fileName))) {
+                if (Files.exists(refFile)) {
+                    storedAt = Math.max(storedAt, Files.getLastModifiedTime(refFile).toMillis());
+                }
+            }
+            return storedAt;
+        } catch (IOException ex) {
+            // Unknown age is treated as just stored
+            return System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Remove a file nothing refers to, whatever its reference count, with its variants. Skipped (false)
+     * when the file was stored again at or after storedBefore, e.g. by an upload deduplicated onto it.
+     */
+    public boolean deleteUnreferenced(String fileName, long storedBefore) {
+        checkFlatName(fileName);
+        synchronized (lockFor(fileName)) {
+            if (lastStoredAt(fileName) >= storedBefore) {
+                return false;
+            }
+            try {
+                removeWithVariants(fileName);
+                return true;
+            } catch (IOException ex) {
+                throw new RuntimeException("Could not delete file " + fileName + ". Please try again!", ex);
+            }
+        }
+    }
+
+    public Path getStorageLocation() {
+        return fileStorageLocation;
+    }
+
+    /**
+     * Move a file stored flat into the directory tree, with its reference count and variants.
+     * Returns false when there was nothing to move.
+     */
+    public boolean moveToShard(String fileName) {
+        checkFlatName(fileName);
+        synchronized (lockFor(fileName)) {
+            try {
+                boolean moved = moveFlat(fileStorageLocation, fileName);
+                moveFlat(refsLocation, fileName);
+                for (ImageVariant variant : ImageVariant.values()) {
+                    moveFlat(fileStorageLocation, variant.fileName(fileName));
+                }
+                return moved;
+            } catch (IOException ex) {
+                throw new RuntimeException("Could not move file " + fileName + " into the directory tree", ex);
+            }
+        }
+    }
+
+    /**
+     * ab/cd/<name> under root, from the first four hex characters of the name (SHA-256 and UUID names
+     * both start with them) or of the name's hash for anything else
+     */
+    static Path shardedPath(Path root, String fileName) {
+        String prefix = fileName.length() >= SHARD_PREFIX_LENGTH && isHex(fileName, SHARD_PREFIX_LENGTH)
+                ? fileName.substring(0, SHARD_PREFIX_LENGTH).toLowerCase(Locale.ROOT)
+                : String.format("%08x", fileName.hashCode()).substring(0, SHARD_PREFIX_LENGTH);
+        return root.resolve(prefix.substring(0, 2)).resolve(prefix.substring(2, 4)).resolve(fileName).normalize();
+    }
+
+    /**
+     * Number of references held on a stored file, 0 for files stored without a reference count
+     */
+    public long getReferenceCount(String fileName) {
+        synchronized (lockFor(fileName)) {
+            try {
+                return readRefCount(fileName);
+            } catch (IOException ex) {
+                throw new RuntimeException("Could not read reference count of " + fileName, ex);
+            }
+        }
+    }
+
+    // Caller holds the file's lock
+    private void removeWithVariants(String fileName) throws IOException {
+        deleteEverywhere(fileStorageLocation, fileName);
+        deleteEverywhere(refsLocation, fileName);
+        invalidateCached(fileName);
+        for (ImageVariant variant : ImageVariant.values()) {
+            deleteEverywhere(fileStorageLocation, variant.fileName(fileName));
+            invalidateCached(variant.fileName(fileName));
+        }
+    }
+
+    private void invalidateCached(String fileName) {
+        if (uploadFileCache != null) {
+            uploadFileCache.invalidate(fileName);
+        }
+    }
+
+    // Stream the upload into tempFile through a FileChannel, hashing the bytes as they pass
+    private String writeAndHash(MultipartFile file, Path tempFile) throws IOException {
+        MessageDigest digest = newSha256();
+        try (InputStream input = new DigestInputStream(file.getInputStream(), digest);
+             ReadableByteChannel source = Channels.newChannel(input);
+             FileChannel target = FileChannel.open(tempFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long position = 0;
+            while (true) {
+                long transferred = target.transferFrom(source, position, TRANSFER_CHUNK_SIZE);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+            target.force(false);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private long readRefCount(String fileName) throws IOException {
+        Path refFile = shardedPath(refsLocation, fileName);
+        if (!Files.exists(refFile)) {
+            refFile = refsLocation.resolve(fileName);
+        }
+        if (!Files.exists(refFile)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(Files.readString(refFile, StandardCharsets.UTF_8).trim());
+        } catch (NumberFormatException ex) {
+            // A damaged count must not let the blob be deleted while it may still be referenced
+            return 1;
+        }
+    }
+
+    private void writeRefCount(String fileName, long references) throws IOException {
+        Path refFile = shardedPath(refsLocation, fileName);
+        Path tempFile = tempLocation.resolve(fileName + "." + UUID.randomUUID() + ".ref");
+        Files.writeString(tempFile, Long.toString(references), StandardCharsets.UTF_8);
+        Files.createDirectories(refFile.getParent());
+        Files.move(tempFile, refFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // The count now lives in the tree; a flat one left from before would shadow nothing but is stale
+        Files.deleteIfExists(refsLocation.resolve(fileName));
+    }
+
+    private void checkFlatName(String fileName) {
+        Path filePath = this.fileStorageLocation.resolve(fileName).normalize();
+        if (!filePath.getParent().equals(fileStorageLocation) || fileName.startsWith(".")) {
+            throw new RuntimeException("Sorry! Filename contains invalid path sequence " + fileName);
+        }
+    }
+
+    private static void deleteEverywhere(Path root, String fileName) throws IOException {
+        Files.deleteIfExists(shardedPath(root, fileName));
+        Files.deleteIfExists(root.resolve(fileName));
+    }
+
+    private static boolean moveFlat(Path root, String fileName) throws IOException {
+        Path flat = root.resolve(fileName);
+        if (!Files.isRegularFile(flat)) {
+            return false;
+        }
+        Path sharded = shardedPath(root, fileName);
+        Files.createDirectories(sharded.getParent());
+        if (Files.exists(sharded)) {
+            // Written again since the tree existed: same content for files, newer count for references
+            Files.delete(flat);
+        } else {
+            Files.move(flat, sharded, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return true;
+    }
+
+    private static boolean isHex(String value, int length) {
+        for (int i = 0; i < length; i++) {
+            if (Character.digit(value.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Object lockFor(String fileName) {
+        return locks[Math.floorMod(fileName.hashCode(), LOCK_STRIPES)];
+    }
+
+    // Partial uploads left behind by a crash
+    private void clearTempFiles() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(tempLocation)) {
+            for (Path path : stream) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
     }
 }
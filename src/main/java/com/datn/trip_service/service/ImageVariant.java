@@ -0,0 +1,50 @@
+package com.datn.trip_service.service;
+
+/**
+ * Resized copies generated for every uploaded image, named <original name without extension>_<suffix>.jpg
+ */
+public enum ImageVariant {
+    LARGE("large", 1280),
+    MEDIUM("medium", 640),
+    THUMB("thumb", 200);
+
+    private final String suffix;
+    private final int maxDimension;
+
+    ImageVariant(String suffix, int maxDimension) {
+        this.suffix = suffix;
+        this.maxDimension = maxDimension;
+    }
+
+    public String getSuffix() {
+        return suffix;
+    }
+
+    // Longest side in pixels; smaller images are re-encoded at their own size, never upscaled
+    public int getMaxDimension() {
+        return maxDimension;
+    }
+
+    public String fileName(String originalFileName) {
+        int lastDotIndex = originalFileName.lastIndexOf('.');
+        String baseName = lastDotIndex > 0 ? originalFileName.substring(0, lastDotIndex) : originalFileName;
+        return baseName + "_" + suffix + ".jpg";
+    }
+
+    /**
+     * Variant a file name was generated as, null for originals
+     */
+    public static ImageVariant fromFileName(String fileName) {
+        for (ImageVariant variant : values()) {
+            if (fileName.endsWith("_" + variant.suffix + ".jpg")) {
+                return variant;
+            }
+        }
+        return null;
+    }
+
+    // "<base>_thumb.jpg" -> "<base>"
+    public String baseName(String variantFileName) {
+        return variantFileName.substring(0, variantFileName.length() - ("_" + suffix + ".jpg").length());
+    }
+}
@@ -0,0 +1,359 @@
+package com.datn.trip_service.service;
+
+import com.datn.trip_service.config.ImageVariantConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Generates the resized variants (see ImageVariant) of uploaded images with plain ImageIO/Java2D.
+ * Work runs on the bounded image-variant pool after the upload is stored; until a variant exists
+ * clients should fall back to the original file. Images over image.variants.max-pixels are refused from
+ * their header, and big ones are subsampled while decoding, so a 50-megapixel photo never sits in memory
+ * at full size.
+ */
+@Service
+public class ImageVariantService {
+
+    private static final Set<String> SUPPORTED_EXTENSIONS = Set.of(".jpg", ".jpeg", ".png", ".gif", ".bmp");
+    private static final int EXIF_MARKER = 0xE1;
+    private static final int ORIENTATION_TAG = 0x0112;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    @Qualifier(ImageVariantConfig.VARIANT_EXECUTOR)
+    private Executor variantExecutor;
+
+    @Value("${image.variants.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${image.variants.jpeg-quality:0.82}")
+    private float jpegQuality = 0.82f;
+
+    @Value("${image.variants.max-pixels:50000000}")
+    private long maxPixels = 50_000_000L;
+
+    public boolean supports(String fileName) {
+        int lastDotIndex = fileName.lastIndexOf('.');
+        return enabled && lastDotIndex > 0
+                && SUPPORTED_EXTENSIONS.contains(fileName.substring(lastDotIndex).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * URL of every variant by suffix, e.g. {"thumb": "/uploads/<name>_thumb.jpg"}; null when the file gets none
+     */
+    public Map<String, String> variantUrls(String fileName) {
+        if (!supports(fileName) || !canDecode(fileStorageService.loadFile(fileName))) {
+            return null;
+        }
+        Map<String, String> urls = new LinkedHashMap<>();
+        for (ImageVariant variant : ImageVariant.values()) {
+            urls.put(variant.getSuffix(), "/uploads/" + variant.fileName(fileName));
+        }
+        return urls;
+    }
+
+    /**
+     * Names the original of a variant file may have, one per supported extension; empty for non-variant names
+     */
+    public static List<String> originalCandidates(String variantFileName) {
+        ImageVariant variant = ImageVariant.fromFileName(variantFileName);
+        if (variant == null) {
+            return List.of();
+        }
+        String baseName = variant.baseName(variantFileName);
+        List<String> candidates = new ArrayList<>();
+        for (String extension : SUPPORTED_EXTENSIONS) {
+            candidates.add(baseName + extension);
+        }
+        return candidates;
+    }
+
+    public CompletableFuture<Void> generateAsync(String fileName) {
+        if (!supports(fileName)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> {
+            try {
+                writeVariants(fileStorageService.loadFile(fileName),
+                        variant -> fileStorageService.loadFile(variant.fileName(fileName)));
+            } catch (Exception e) {
+                System.err.println("Failed to generate image variants for " + fileName + ": " + e.getMessage());
+            }
+        }, variantExecutor);
+    }
+
+    // Sniffs the file header; uploads are named by the client and can be WebP or HEIC behind a .jpg
+    public static boolean canDecode(Path source) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile())) {
+            return input != null && ImageIO.getImageReaders(input).hasNext();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Decode source once and write every missing variant, largest first so each one is scaled from the
+     * previous, smaller image. Returns the number of variants written.
+     */
+    public int writeVariants(Path source, Function<ImageVariant, Path> targets) throws IOException {
+        boolean allPresent = true;
+        for (ImageVariant variant : ImageVariant.values()) {
+            allPresent &= Files.exists(targets.apply(variant));
+        }
+        if (allPresent) {
+            // Content-addressed duplicate, variants were made for the first upload
+            return 0;
+        }
+
+        BufferedImage image = readOriented(source, maxPixels);
+        if (image == null) {
+            throw new IOException("Unsupported image format: " + source.getFileName());
+        }
+
+        int written = 0;
+        for (ImageVariant variant : ImageVariant.values()) {
+            image = resize(image, variant.getMaxDimension());
+            Path target = targets.apply(variant);
+            if (!Files.exists(target)) {
+                writeJpeg(image, target);
+                written++;
+            }
+        }
+        return written;
+    }
+
+    // Longest side at most maxDimension, halving first so large downscales stay smooth
+    static BufferedImage resize(BufferedImage source, int maxDimension) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        double scale = Math.min(1.0, (double) maxDimension / Math.max(width, height));
+        int targetWidth = Math.max(1, (int) Math.round(width * scale));
+        int targetHeight = Math.max(1, (int) Math.round(height * scale));
+
+        BufferedImage current = toRgb(source);
+        while (current.getWidth() / 2 >= targetWidth && current.getHeight() / 2 >= targetHeight) {
+            current = draw(current, current.getWidth() / 2, current.getHeight() / 2);
+        }
+        if (current.getWidth() != targetWidth || current.getHeight() != targetHeight) {
+            current = draw(current, targetWidth, targetHeight);
+        }
+        return current;
+    }
+
+    private static BufferedImage draw(BufferedImage source, int width, int height) {
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    // JPEG has no alpha channel, transparent areas become white
+    private static BufferedImage toRgb(BufferedImage source) {
+        if (source.getType() == BufferedImage.TYPE_INT_RGB) {
+            return source;
+        }
+        BufferedImage target = new BufferedImage(source.getWidth(), source.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, source.getWidth(), source.getHeight());
+            graphics.drawImage(source, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    private void writeJpeg(BufferedImage image, Path target) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(jpegQuality);
+
+        // Written next to the target and moved into place, so a half-written variant is never served
+        Files.createDirectories(target.getParent());
+        Path tempFile = Files.createTempFile(target.getParent(), ".variant-", ".part");
+        try {
+            try (ImageOutputStream output = ImageIO.createImageOutputStream(tempFile.toFile())) {
+                writer.setOutput(output);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    // Decode and apply the EXIF orientation phone cameras use instead of rotating the pixels
+    private static BufferedImage readOriented(Path source, long maxPixels) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile())) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, false);
+                // Sizes come from the header; the decoded image would take width x height x 4 bytes
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    throw new IOException("Image is " + width + "x" + height
+                            + ", over the limit of " + maxPixels + " pixels");
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = subsamplingFor(Math.max(width, height));
+                if (step > 1) {
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+                BufferedImage image = reader.read(0, param);
+                int orientation = 1;
+                if ("jpeg".equalsIgnoreCase(reader.getFormatName())) {
+                    orientation = readExifOrientation(reader);
+                }
+                return orient(image, orientation);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Decoder keeps every step-th row and column; at least twice the largest variant is kept so that
+    // resize still has a smoothing halving step after the unfiltered decimation
+    static int subsamplingFor(int longestSide) {
+        return Math.max(1, longestSide / (2 * ImageVariant.LARGE.getMaxDimension()));
+    }
+
+    private static int readExifOrientation(ImageReader reader) {
+        try {
+            // Throws on files ImageIO can decode but whose marker order it rejects (e.g. EXIF before JFIF)
+            IIOMetadata metadata = reader.getImageMetadata(0);
+            Node root = metadata.getAsTree("javax_imageio_jpeg_image_1.0");
+            NodeList markers = ((IIOMetadataNode) root).getElementsByTagName("unknown");
+            for (int i = 0; i < markers.getLength(); i++) {
+                IIOMetadataNode marker = (IIOMetadataNode) markers.item(i);
+                if (Integer.parseInt(marker.getAttribute("MarkerTag")) == EXIF_MARKER) {
+                    int orientation = parseOrientation((byte[]) marker.getUserObject());
+                    if (orientation > 0) {
+                        return orientation;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            // No usable EXIF, keep the pixels as stored
+        }
+        return 1;
+    }
+
+    // APP1 payload: "Exif\0\0" then a TIFF header and IFD0, which holds the orientation tag
+    static int parseOrientation(byte[] app1) {
+        if (app1 == null || app1.length < 14 || app1[0] != 'E' || app1[1] != 'x' || app1[2] != 'i' || app1[3] != 'f') {
+            return 0;
+        }
+        int tiff = 6;
+        boolean littleEndian = app1[tiff] == 'I';
+        int ifd = tiff + readInt(app1, tiff + 4, littleEndian);
+        if (ifd + 2 > app1.length) {
+            return 0;
+        }
+        int entries = readShort(app1, ifd, littleEndian);
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > app1.length) {
+                return 0;
+            }
+            if (readShort(app1, entry, littleEndian) == ORIENTATION_TAG) {
+                return readShort(app1, entry + 8, littleEndian);
+            }
+        }
+        return 0;
+    }
+
+    private static int readShort(byte[] data, int offset, boolean littleEndian) {
+        int b0 = data[offset] & 0xFF;
+        int b1 = data[offset + 1] & 0xFF;
+        return littleEndian ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    private static int readInt(byte[] data, int offset, boolean littleEndian) {
+        int high = readShort(data, littleEndian ? offset + 2 : offset, littleEndian);
+        int low = readShort(data, littleEndian ? offset : offset + 2, littleEndian);
+        return (high << 16) | low;
+    }
+
+    static BufferedImage orient(BufferedImage image, int orientation) {
+        if (orientation < 2 || orientation > 8) {
+            return image;
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean swap = orientation >= 5;
+        AffineTransform transform = new AffineTransform();
+        switch (orientation) {
+            case 2: transform.scale(-1, 1); transform.translate(-width, 0); break;
+            case 3: transform.translate(width, height); transform.rotate(Math.PI); break;
+            case 4: transform.scale(1, -1); transform.translate(0, -height); break;
+            case 5: transform.rotate(-Math.PI / 2); transform.scale(-1, 1); break;
+            case 6: transform.translate(height, 0); transform.rotate(Math.PI / 2); break;
+            case 7: transform.scale(-1, 1); transform.translate(-height, 0);
+                    transform.translate(0, width); transform.rotate(3 * Math.PI / 2); break;
+            case 8: transform.translate(0, width); transform.rotate(3 * Math.PI / 2); break;
+            default: break;
+        }
+        BufferedImage target = new BufferedImage(swap ? height : width, swap ? width : height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.drawImage(toRgb(image), transform, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+}
@@ -0,0 +1,23 @@
+package com.datn.trip_service.service;
+
+import com.datn.trip_service.dto.PlanBatchResponse;
+
+/**
+ * Thrown when items of a plan batch fail validation; nothing was written. The response holds the
+ * error of every invalid item.
+ */
+public class InvalidPlanBatchException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final PlanBatchResponse response;
+
+    public InvalidPlanBatchException(PlanBatchResponse response) {
+        super(response.getFailed() + " invalid plan(s) in batch");
+        this.response = response;
+    }
+
+    public PlanBatchResponse getResponse() {
+        return response;
+    }
+}
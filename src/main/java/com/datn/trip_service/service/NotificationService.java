@@ -7,6 +7,7 @@ import com.google.firebase.messaging.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -14,6 +15,9 @@ import java.util.UUID;
 @Service
 public class NotificationService {
 
+    // FCM accepts at most 500 messages per sendEach call
+    private static final int FCM_BATCH_LIMIT = 500;
+
     @Autowired
     private NotificationRepository notificationRepository;
 
@@ -327,4 +331,131 @@ public class NotificationService {
             return null;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Send one notification per user in bulk.
+     * Devices are loaded with getAll, messages go out through sendEach in chunks of 500
+     * and the notification records are saved with WriteBatches. A chunk FCM rejects as a whole is
+     * skipped and the rest still go out.
+     * Returns the number of users notified successfully.
+     */
+    public int sendNotificationsToUsers(Map<String, NotificationRequest> requestsByUserId) {
+        if (requestsByUserId.isEmpty()) {
+            return 0;
+        }
+        try {
+            Map<String, Map<String, Object>> devices = notificationRepository.getUserDevices(requestsByUserId.keySet());
+
+            List<String> usersWithoutDevice = new ArrayList<>();
+            List<String> recipients = new ArrayList<>();
+            List<Message> messages = new ArrayList<>();
+
+            for (Map.Entry<String, NotificationRequest> entry : requestsByUserId.entrySet()) {
+                String userId = entry.getKey();
+                Map<String, Object> userDevice = devices.get(userId);
+                if (userDevice == null) {
+                    usersWithoutDevice.add(userId);
+                    continue;
+                }
+
+                String fcmToken = (String) userDevice.get("fcmToken");
+                Boolean notificationsEnabled = (Boolean) userDevice.get("notificationsEnabled");
+                if (fcmToken == null || fcmToken.isEmpty() || Boolean.FALSE.equals(notificationsEnabled)) {
+                    continue;
+                }
+
+                NotificationRequest request = entry.getValue();
+                recipients.add(userId);
+                messages.add(buildUserMessage(fcmToken, request.getTitle(), request.getBody(), request.getData()));
+            }
+
+            if (!usersWithoutDevice.isEmpty()) {
+                try {
+                    notificationRepository.enableNotificationsForUsers(usersWithoutDevice);
+                    System.out.println("Created default notification settings for " + usersWithoutDevice.size() + " user(s)");
+                } catch (Exception e) {
+                    System.err.println(" Failed to create default settings: " + e.getMessage());
+                }
+            }
+
+            List<Notification> records = new ArrayList<>();
+            for (int i = 0; i < messages.size(); i += FCM_BATCH_LIMIT) {
+                int end = Math.min(i + FCM_BATCH_LIMIT, messages.size());
+                List<SendResponse> responses;
+                try {
+                    responses = FirebaseMessaging.getInstance().sendEach(messages.subList(i, end)).getResponses();
+                } catch (FirebaseMessagingException e) {
+                    // Only this chunk failed; the chunks already sent still get their records
+                    System.err.println(" Failed to send notifications to " + (end - i) + " user(s): " + e.getMessage());
+                    continue;
+                }
+
+                for (int j = 0; j < responses.size(); j++) {
+                    String userId = recipients.get(i + j);
+                    if (!responses.get(j).isSuccessful()) {
+                        System.err.println(" Failed to send notification to user " + userId + ": "
+                                + responses.get(j).getException().getMessage());
+                        continue;
+                    }
+
+                    NotificationRequest request = requestsByUserId.get(userId);
+                    Map<String, String> data = request.getData();
+                    Notification record = new Notification();
+                    record.setId(UUID.randomUUID().toString());
+                    record.setUserId(userId);
+                    record.setTitle(request.getTitle());
+                    record.setMessage(request.getBody());
+                    record.setType(data != null ? data.getOrDefault("type", "GENERAL") : "GENERAL");
+                    record.setTimestamp(System.currentTimeMillis());
+                    record.setIsRead(false);
+                    if (data != null) {
+                        record.setTripId(data.get("tripId"));
+                        record.setTripTitle(data.get("tripTitle"));
+                    }
+                    records.add(record);
+                }
+            }
+
+            if (!records.isEmpty()) {
+                try {
+                    notificationRepository.saveNotifications(records);
+                } catch (Exception e) {
+                    System.err.println("Failed to save notifications to Firestore: " + e.getMessage());
+                }
+            }
+
+            System.out.println(" Sent " + records.size() + " of " + requestsByUserId.size() + " bulk notification(s)");
+            return records.size();
+
+        } catch (Exception e) {
+            System.err.println(" Error sending bulk notifications: " + e.getMessage());
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    private Message buildUserMessage(String fcmToken, String title, String body, Map<String, String> data) {
+        com.google.firebase.messaging.Notification notification = com.google.firebase.messaging.Notification.builder()
+                .setTitle(title)
+                .setBody(body)
+                .build();
+
+        Message.Builder messageBuilder = Message.builder()
+                .setToken(fcmToken)
+                .setNotification(notification);
+
+        if (data != null && !data.isEmpty()) {
+            messageBuilder.putAllData(data);
+        }
+
+        messageBuilder.setAndroidConfig(AndroidConfig.builder()
+                .setPriority(AndroidConfig.Priority.HIGH)
+                .setNotification(AndroidNotification.builder()
+                        .setSound("default")
+                        .setColor("#FF6B35")
+                        .build())
+                .build());
+
+        return messageBuilder.build();
+    }
+}
@@ -2,19 +2,29 @@ package com.datn.trip_service.service;
 
 import com.datn.trip_service.dto.*;
 import com.datn.trip_service.model.Plan;
+import com.datn.trip_service.model.PlanComment;
 import com.datn.trip_service.model.PlanType;
 import com.datn.trip_service.model.plan.*;
+import com.datn.trip_service.model.UserProfile;
+import com.datn.trip_service.repository.PlanEngagementRepository;
 import com.datn.trip_service.repository.PlanRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 public class PlanService {
 
+    // Most plans one POST /plans/batch request may create, as for the other batch endpoints
+    public static final int MAX_BATCH_SIZE = 500;
+
     @Autowired
     private PlanRepository planRepository;
     
@@ -24,6 +34,15 @@ public class PlanService {
     @Autowired
     private TripService tripService;
     
+    @Autowired
+    private PlanEngagementRepository engagementRepository;
+    
+    @Autowired
+    private UserService userService;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
     private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
 
 //    public Plan createPlan(CreatePlanRequest request) {
@@ -50,6 +69,10 @@ public class PlanService {
 //    }
     
     public Plan createFlightPlan(CreateFlightPlanRequest request) {
+        return planRepository.save(buildFlightPlan(request));
+    }
+    
+    private FlightPlan buildFlightPlan(CreateFlightPlanRequest request) {
         FlightPlan plan = new FlightPlan();
         plan.setTripId(request.getTripId());
         plan.setTitle(request.getTitle());
@@ -71,10 +94,14 @@ public class PlanService {
             plan.setArrivalDate(LocalDateTime.parse(request.getArrivalDate(), formatter));
         }
         
-        return planRepository.save(plan);
+        return plan;
     }
     
     public Plan createRestaurantPlan(CreateRestaurantPlanRequest request) {
+        return planRepository.save(buildRestaurantPlan(request));
+    }
+    
+    private RestaurantPlan buildRestaurantPlan(CreateRestaurantPlanRequest request) {
         RestaurantPlan plan = new RestaurantPlan();
         plan.setTripId(request.getTripId());
         plan.setTitle(request.getTitle());
@@ -97,10 +124,14 @@ public class PlanService {
             plan.setReservationTime(LocalDateTime.parse(request.getReservationTime(), formatter));
         }
         
-        return planRepository.save(plan);
+        return plan;
     }
     
     public Plan createLodgingPlan(CreateLodgingPlanRequest request) {
+        return planRepository.save(buildLodgingPlan(request));
+    }
+    
+    private LodgingPlan buildLodgingPlan(CreateLodgingPlanRequest request) {
         LodgingPlan plan = new LodgingPlan();
         plan.setTripId(request.getTripId());
         plan.setTitle(request.getTitle());
@@ -124,10 +155,14 @@ public class PlanService {
         }
         plan.setPhone(request.getPhone());
         
-        return planRepository.save(plan);
+        return plan;
     }
     
     public Plan createActivityPlan(CreateActivityPlanRequest request) {
+        return planRepository.save(buildActivityPlan(request));
+    }
+    
+    private ActivityPlan buildActivityPlan(CreateActivityPlanRequest request) {
         ActivityPlan plan = new ActivityPlan();
         plan.setTripId(request.getTripId());
         plan.setTitle(request.getTitle());
@@ -150,10 +185,14 @@ public class PlanService {
             plan.setType(PlanType.ACTIVITY);
         }
         
-        return planRepository.save(plan);
+        return plan;
     }
     
     public Plan createBoatPlan(CreateBoatPlanRequest request) {
+        return planRepository.save(buildBoatPlan(request));
+    }
+    
+    private BoatPlan buildBoatPlan(CreateBoatPlanRequest request) {
         BoatPlan plan = new BoatPlan();
         plan.setTripId(request.getTripId());
         plan.setTitle(request.getTitle());
@@ -175,10 +214,14 @@ public class PlanService {
         plan.setArrivalLocation(request.getArrivalLocation());
         plan.setArrivalAddress(request.getArrivalAddress());
         
-        return planRepository.save(plan);
+        return plan;
     }
     
     public Plan createCarRentalPlan(CreateCarRentalPlanRequest request) {
+        return planRepository.save(buildCarRentalPlan(request));
+    }
+    
+    private CarRentalPlan buildCarRentalPlan(CreateCarRentalPlanRequest request) {
         CarRentalPlan plan = new CarRentalPlan();
         plan.setTripId(request.getTripId());
         plan.setTitle(request.getTitle());
@@ -207,7 +250,94 @@ public class PlanService {
         }
         plan.setPhone(request.getPhone());
         
-        return planRepository.save(plan);
+        return plan;
+    }
+
+    /**
+     * Create many plans of mixed types for one trip with batched writes. Each item is a plan request body
+     * plus its "type" (PlanType name). Every item is validated first: if any is invalid nothing is written
+     * and InvalidPlanBatchException carries the per-item errors. Membership is checked by the caller
+     * (verifyMemberAccess), so the endpoint can tell a denied request from a bad one.
+     */
+    public PlanBatchResponse createPlans(String tripId, List<Map<String, Object>> items) {
+        List<PlanBatchResponse.ItemResult> results = new ArrayList<>();
+        List<Plan> plans = new ArrayList<>();
+        boolean invalid = false;
+        for (int index = 0; index < items.size(); index++) {
+            PlanBatchResponse.ItemResult result = PlanBatchResponse.ItemResult.builder().index(index).build();
+            results.add(result);
+            try {
+                plans.add(buildPlan(tripId, items.get(index)));
+            } catch (RuntimeException e) {
+                result.setError(e.getMessage() != null ? e.getMessage() : "Invalid plan");
+                invalid = true;
+            }
+        }
+        if (invalid) {
+            int failed = (int) results.stream().filter(result -> result.getError() != null).count();
+            throw new InvalidPlanBatchException(PlanBatchResponse.builder()
+                    .created(0)
+                    .failed(failed)
+                    .results(results)
+                    .build());
+        }
+        
+        List<String> errors = planRepository.saveAll(plans);
+        for (int i = 0; i < plans.size(); i++) {
+            PlanBatchResponse.ItemResult result = results.get(i);
+            if (errors.get(i) == null) {
+                result.setSuccess(true);
+                result.setPlan(plans.get(i));
+            } else {
+                result.setError(errors.get(i));
+            }
+        }
+        
+        int created = (int) results.stream().filter(PlanBatchResponse.ItemResult::isSuccess).count();
+        return PlanBatchResponse.builder()
+                .created(created)
+                .failed(results.size() - created)
+                .results(results)
+                .build();
+    }
+    
+    // Same type-to-class mapping as the type-specific create endpoints
+    private Plan buildPlan(String tripId, Map<String, Object> item) {
+        Object type = item.get("type");
+        if (type == null) {
+            throw new IllegalArgumentException("Plan type is required");
+        }
+        PlanType planType;
+        try {
+            planType = PlanType.valueOf(type.toString());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown plan type: " + type);
+        }
+        
+        Plan plan;
+        switch (planType) {
+            case FLIGHT:
+                plan = buildFlightPlan(objectMapper.convertValue(item, CreateFlightPlanRequest.class));
+                break;
+            case RESTAURANT:
+                plan = buildRestaurantPlan(objectMapper.convertValue(item, CreateRestaurantPlanRequest.class));
+                break;
+            case LODGING:
+                plan = buildLodgingPlan(objectMapper.convertValue(item, CreateLodgingPlanRequest.class));
+                break;
+            case BOAT:
+                plan = buildBoatPlan(objectMapper.convertValue(item, CreateBoatPlanRequest.class));
+                break;
+            case CAR_RENTAL:
+            case TRAIN:
+                plan = buildCarRentalPlan(objectMapper.convertValue(item, CreateCarRentalPlanRequest.class));
+                break;
+            default:
+                plan = buildActivityPlan(objectMapper.convertValue(item, CreateActivityPlanRequest.class));
+        }
+        // The trip comes from the URL, never from the item
+        plan.setTripId(tripId);
+        return plan;
     }
 
     public Plan getPlanById(String id) {
@@ -215,6 +345,11 @@ public class PlanService {
                 .orElseThrow(() -> new RuntimeException("Plan not found with id: " + id));
     }
 
+    // Trip of the plan, without loading its likes and comments; null when the plan does not exist
+    public String findTripIdOfPlan(String planId) {
+        return planRepository.findTripId(planId).orElse(null);
+    }
+
     public List<Plan> getPlansByTripId(String tripId) {
         return planRepository.findByTripId(tripId);
     }
@@ -222,47 +357,47 @@ public class PlanService {
     public Plan updatePlan(String id, CreatePlanRequest request) {
         Plan plan = getPlanById(id);
         
-        if (request.getTitle() != null) {
-            plan.setTitle(request.getTitle());
-        }
-        if (request.getAddress() != null) {
-            plan.setAddress(request.getAddress());
-        }
-        if (request.getLocation() != null) {
-            plan.setLocation(request.getLocation());
-        }
-        
-        if (request.getStartTime() != null) {
-            plan.setStartTime(LocalDateTime.parse(request.getStartTime(), formatter));
-        }
+        // Only the fields that actually change are written
+        return planRepository.update(plan, changed -> {
+            if (request.getTitle() != null) {
+                changed.setTitle(request.getTitle());
+            }
+            if (request.getAddress() != null) {
+                changed.setAddress(request.getAddress());
+            }
+            if (request.getLocation() != null) {
+                changed.setLocation(request.getLocation());
+            }
+            
+            if (request.getStartTime() != null) {
+                changed.setStartTime(LocalDateTime.parse(request.getStartTime(), formatter));
+            }
 
-        if (request.getExpense() != null) {
-            plan.setExpense(request.getExpense());
-        }
-        if (request.getPhotoUrl() != null) {
-            plan.setPhotoUrl(request.getPhotoUrl());
-        }
-        if (request.getPhotos() != null) {
-            plan.setPhotos(request.getPhotos());
-        }
-        
-        if (request.getType() != null) {
-            plan.setType(PlanType.valueOf(request.getType()));
-        }
-        
-        return planRepository.save(plan);
+            if (request.getExpense() != null) {
+                changed.setExpense(request.getExpense());
+            }
+            if (request.getPhotoUrl() != null) {
+                changed.setPhotoUrl(request.getPhotoUrl());
+            }
+            if (request.getPhotos() != null) {
+                changed.setPhotos(request.getPhotos());
+            }
+            
+            if (request.getType() != null) {
+                changed.setType(PlanType.valueOf(request.getType()));
+            }
+        });
     }
 
     public void deletePlan(String id) {
-        planRepository.deleteById(id);
+        planRepository.delete(getPlanById(id));
     }
     
     public void deletePhotoFromPlan(String planId, String photoFileName) {
         Plan plan = getPlanById(planId);
         
         if (plan.getPhotos() != null && plan.getPhotos().contains(photoFileName)) {
-            plan.getPhotos().remove(photoFileName);
-            planRepository.save(plan);
+            planRepository.update(plan, changed -> changed.getPhotos().remove(photoFileName));
             
             // Delete photo file from storage
             try {
@@ -323,6 +458,57 @@ public class PlanService {
     public void deletePlanWithAuth(String id, String userId) {
         Plan plan = getPlanById(id);
         verifyMemberAccess(plan.getTripId(), userId);
-        deletePlan(id);
+        planRepository.delete(plan);
+    }
+    
+    // Comments and likes (stored in subcollections of the plan, see PlanEngagementRepository)
+    
+    public CommentPage getComments(String planId, int limit, String cursor) {
+        CommentPage page = engagementRepository.findComments(planId, limit, cursor);
+        populateCommentAuthors(page.getComments());
+        return page;
+    }
+    
+    public PlanComment addComment(String planId, String userId, String content, String parentId) {
+        if (content == null || content.isBlank()) {
+            throw new IllegalArgumentException("Comment content is required");
+        }
+        PlanComment comment = new PlanComment();
+        comment.setUserId(userId);
+        comment.setContent(content);
+        comment.setParentId(parentId);
+        
+        PlanComment saved = engagementRepository.addComment(planId, comment);
+        populateCommentAuthors(List.of(saved));
+        return saved;
+    }
+    
+    public void deleteComment(String planId, String commentId, String userId) {
+        engagementRepository.deleteComment(planId, commentId, userId);
+    }
+    
+    // Returns the like count after the change
+    public long setLiked(String planId, String userId, boolean liked) {
+        return engagementRepository.setLiked(planId, userId, liked);
+    }
+    
+    public boolean isLikedBy(String planId, String userId) {
+        return engagementRepository.isLikedBy(planId, userId);
+    }
+    
+    private void populateCommentAuthors(List<PlanComment> comments) {
+        if (comments.isEmpty()) {
+            return;
+        }
+        Map<String, UserProfile> profiles = userService.getUserProfiles(comments.stream()
+                .map(PlanComment::getUserId)
+                .collect(Collectors.toSet()));
+        for (PlanComment comment : comments) {
+            UserProfile user = profiles.get(comment.getUserId());
+            if (user != null) {
+                comment.setUserName(user.getDisplayName());
+                comment.setUserAvatar(user.getProfilePicture());
+            }
+        }
     }
 }
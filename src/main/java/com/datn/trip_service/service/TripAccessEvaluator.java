@@ -0,0 +1,213 @@
+package com.datn.trip_service.service;
+
+import com.datn.trip_service.model.Trip;
+import com.datn.trip_service.repository.FollowGraph;
+import com.datn.trip_service.repository.TripRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Decides whether a user can view a trip, entirely server-side: the owner and members always can,
+ * "public" trips are open to everyone, "follower" trips to the users in sharedWithUsers or, when that
+ * list is empty, to everyone following the owner (from FollowGraph).
+ *
+ * Decisions are cached per (trip, user) pair, up to trip.access.cache-maximum-size pairs, and each expires
+ * trip.access.cache-ttl-seconds after it was made, which bounds staleness for changes made by other
+ * instances. invalidate bumps the generation of the trip's stripe when its sharing settings or members
+ * change; decisions made under an older generation are no longer used. Decisions that relied on the
+ * follow graph also carry the viewer's follow version and are recomputed once it moves.
+ */
+@Service
+public class TripAccessEvaluator {
+
+    public static final int MAX_BATCH_SIZE = 500;
+    private static final int GENERATION_STRIPES = 1024;
+
+    @Autowired
+    private TripRepository tripRepository;
+
+    @Autowired
+    private FollowGraph followGraph;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${trip.access.cache-ttl-seconds:60}")
+    private long cacheTtlSeconds;
+
+    @Value("${trip.access.cache-maximum-size:10000}")
+    private long cacheMaximumSize;
+
+    private Cache<DecisionKey, Decision> decisions;
+
+    // Bumped by invalidate, per stripe of trip IDs; a collision only costs a recomputed decision
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    @PostConstruct
+    public void init() {
+        decisions = Caffeine.newBuilder()
+                .maximumSize(cacheMaximumSize)
+                .expireAfterWrite(Duration.ofSeconds(cacheTtlSeconds))
+                .recordStats()
+                .build();
+
+        if (meterRegistry != null) {
+            CaffeineCacheMetrics.monitor(meterRegistry, decisions, "tripAccess");
+        }
+    }
+
+    public boolean canView(String tripId, String userId) {
+        Boolean allowed = canViewAll(List.of(tripId), userId).get(tripId);
+        if (allowed == null) {
+            throw new RuntimeException("Trip not found with id: " + tripId);
+        }
+        return allowed;
+    }
+
+    /**
+     * Access to each trip, in request order; trips that do not exist (or are deleted) are left out.
+     * Trips without a cached decision are fetched together, once each.
+     */
+    public Map<String, Boolean> canViewAll(Collection<String> tripIds, String userId) {
+        Map<String, Boolean> results = new LinkedHashMap<>();
+        List<String> toEvaluate = new ArrayList<>();
+        // Taken before the trips are read, so an invalidate during the read keeps the result out of the cache
+        Map<String, Long> generationsBeforeRead = new LinkedHashMap<>();
+        for (String tripId : new LinkedHashSet<>(tripIds)) {
+            Decision cached = cachedDecision(tripId, userId);
+            results.put(tripId, cached != null ? cached.allowed : null);
+            if (cached == null) {
+                toEvaluate.add(tripId);
+                generationsBeforeRead.put(tripId, generation(tripId));
+            }
+        }
+
+        if (!toEvaluate.isEmpty()) {
+            Map<String, Trip> trips = tripRepository.findAccessInfoByIds(toEvaluate);
+            for (String tripId : toEvaluate) {
+                Trip trip = trips.get(tripId);
+                if (trip == null) {
+                    results.remove(tripId);
+                    continue;
+                }
+                Decision decision = evaluate(trip, userId, generationsBeforeRead.get(tripId));
+                if (decision.cacheable && userId != null) {
+                    decisions.put(new DecisionKey(tripId, userId), decision);
+                }
+                results.put(tripId, decision.allowed);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Drop every cached decision for the trip; called whenever its visibility, shared users or members change
+     */
+    public void invalidate(String tripId) {
+        if (tripId != null) {
+            generations.incrementAndGet(stripeFor(tripId));
+        }
+    }
+
+    private Decision cachedDecision(String tripId, String userId) {
+        if (userId == null) {
+            return null;
+        }
+        DecisionKey key = new DecisionKey(tripId, userId);
+        Decision decision = decisions.getIfPresent(key);
+        if (decision == null) {
+            return null;
+        }
+        if (decision.generation != generation(tripId)
+                || (decision.followVersion >= 0 && decision.followVersion != followGraph.version(userId))) {
+            // The trip's sharing or members changed, or the viewer followed or unfollowed someone since
+            decisions.asMap().remove(key, decision);
+            return null;
+        }
+        return decision;
+    }
+
+    private Decision evaluate(Trip trip, String userId, long generation) {
+        // Creator can always view
+        if (userId != null && userId.equals(trip.getUserId())) {
+            return Decision.of(true, generation);
+        }
+
+        // Members can always view
+        if (userId != null && trip.getMembers() != null
+                && trip.getMembers().stream().anyMatch(member -> userId.equals(member.getId()))) {
+            return Decision.of(true, generation);
+        }
+
+        // Public trips can be viewed by anyone
+        if ("public".equals(trip.getIsPublic())) {
+            return Decision.of(true, generation);
+        }
+
+        // Follower-only trips
+        if ("follower".equals(trip.getIsPublic())) {
+            // If sharedWithUsers is specified and not empty, check if user is in the list
+            if (trip.getSharedWithUsers() != null && !trip.getSharedWithUsers().isEmpty()) {
+                return Decision.of(userId != null && trip.getSharedWithUsers().stream()
+                        .anyMatch(user -> userId.equals(user.getId())), generation);
+            }
+            // If sharedWithUsers is empty, share with all followers of the creator
+            if (userId == null) {
+                return Decision.of(false, generation);
+            }
+            long version = followGraph.version(userId);
+            boolean following = followGraph.isFollowing(userId, trip.getUserId());
+            return version >= 0
+                    ? new Decision(following, generation, version, true)
+                    : new Decision(following, generation, -1, false);
+        }
+
+        return Decision.of(false, generation);
+    }
+
+    private long generation(String tripId) {
+        return generations.get(stripeFor(tripId));
+    }
+
+    private static int stripeFor(String tripId) {
+        return Math.floorMod(tripId.hashCode(), GENERATION_STRIPES);
+    }
+
+    private record DecisionKey(String tripId, String userId) {
+    }
+
+    private static final class Decision {
+        private final boolean allowed;
+        // Generation of the trip's stripe the decision was made under
+        private final long generation;
+        // Viewer's follow graph version the decision was made with, -1 when it does not depend on follows
+        private final long followVersion;
+        private final boolean cacheable;
+
+        private Decision(boolean allowed, long generation, long followVersion, boolean cacheable) {
+            this.allowed = allowed;
+            this.generation = generation;
+            this.followVersion = followVersion;
+            this.cacheable = cacheable;
+        }
+
+        private static Decision of(boolean allowed, long generation) {
+            return new Decision(allowed, generation, -1, true);
+        }
+    }
+}
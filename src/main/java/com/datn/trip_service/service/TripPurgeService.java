@@ -0,0 +1,364 @@
+package com.datn.trip_service.service;
+
+import com.datn.trip_service.dto.TripPurgeStatus;
+import com.datn.trip_service.repository.TripRepository;
+import com.google.api.core.ApiFuture;
+import com.google.cloud.firestore.BulkWriter;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.SetOptions;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Second half of a trip delete. TripService soft-deletes the trip (deleted=true), then this service
+ * removes its plans with a BulkWriter (including their likes/comments subcollections), deletes the
+ * cover and plan photos on a background worker and finally removes the trip document.
+ *
+ * Progress is kept in trip_purges/{tripId}. Every step is idempotent and files are recorded in
+ * pendingFiles before the documents referencing them are deleted, so an interrupted purge is simply
+ * run again by the periodic sweep.
+ *
+ * Stored files are shared by reference count across trips and users, so each release must happen once.
+ * A purge releases every file name once, however many plans use it, and takes names out of pendingFiles
+ * in a transaction before releasing them, so a resumed run never releases a name twice. A release that
+ * fails (or a name used by several plans of the trip) leaves an unreferenced file behind, which the
+ * upload garbage collector removes.
+ */
+@Service
+public class TripPurgeService {
+
+    private static final String TRIPS_COLLECTION = "trips";
+    private static final String PLANS_COLLECTION = "plans";
+    private static final String PURGES_COLLECTION = "trip_purges";
+
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_COMPLETED = "COMPLETED";
+    public static final String STATUS_FAILED = "FAILED";
+
+    @Autowired
+    private Firestore firestore;
+
+    @Autowired
+    private TripRepository tripRepository;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Value("${trip.purge.page-size:200}")
+    private int pageSize;
+
+    @Value("${trip.purge.sweep-batch-size:50}")
+    private int sweepBatchSize;
+
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+    private final ExecutorService purgeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "trip-purge");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService fileExecutor = Executors.newFixedThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "trip-purge-files");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PreDestroy
+    public void shutdown() {
+        purgeExecutor.shutdownNow();
+        fileExecutor.shutdownNow();
+    }
+
+    /**
+     * Queue the purge of a soft-deleted trip; a purge already running for the trip is not started twice
+     */
+    public void purgeAsync(String tripId) {
+        if (!running.add(tripId)) {
+            return;
+        }
+        try {
+            purgeExecutor.execute(() -> {
+                try {
+                    purge(tripId);
+                } finally {
+                    running.remove(tripId);
+                }
+            });
+        } catch (RuntimeException e) {
+            running.remove(tripId);
+            System.err.println("Failed to queue purge of trip " + tripId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Resume purges that were interrupted or failed, and pick up soft-deleted trips that were never queued
+     */
+    @Scheduled(initialDelayString = "${trip.purge.sweep-initial-delay-ms:60000}",
+            fixedDelayString = "${trip.purge.sweep-interval-ms:300000}")
+    public void sweep() {
+        try {
+            Set<String> tripIds = new LinkedHashSet<>(tripRepository.findDeletedTripIds(sweepBatchSize));
+            QuerySnapshot unfinished = firestore.collection(PURGES_COLLECTION)
+                    .whereIn("status", List.of(STATUS_RUNNING, STATUS_FAILED))
+                    .limit(sweepBatchSize)
+                    .get()
+                    .get();
+            for (DocumentSnapshot document : unfinished.getDocuments()) {
+                tripIds.add(document.getId());
+            }
+            tripIds.forEach(this::purgeAsync);
+        } catch (Exception e) {
+            System.err.println("Trip purge sweep failed: " + e.getMessage());
+        }
+    }
+
+    public TripPurgeStatus getStatus(String tripId) {
+        try {
+            DocumentSnapshot document = firestore.collection(PURGES_COLLECTION).document(tripId).get().get();
+            if (!document.exists()) {
+                return null;
+            }
+            List<?> pendingFiles = (List<?>) document.get("pendingFiles");
+            return TripPurgeStatus.builder()
+                    .tripId(tripId)
+                    .status(document.getString("status"))
+                    .plansDeleted(longValue(document.getLong("plansDeleted")))
+                    .filesQueued(longValue(document.getLong("filesQueued")))
+                    .filesDeleted(longValue(document.getLong("filesDeleted")))
+                    .pendingFiles(pendingFiles != null ? pendingFiles.size() : 0)
+                    .error(document.getString("error"))
+                    .startedAt(document.getLong("startedAt"))
+                    .updatedAt(document.getLong("updatedAt"))
+                    .completedAt(document.getLong("completedAt"))
+                    .build();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to read purge status", e);
+        }
+    }
+
+    void purge(String tripId) {
+        DocumentReference progressRef = firestore.collection(PURGES_COLLECTION).document(tripId);
+        DocumentReference tripRef = firestore.collection(TRIPS_COLLECTION).document(tripId);
+        BulkWriter bulkWriter = firestore.bulkWriter();
+        List<CompletableFuture<Boolean>> fileDeletions = new ArrayList<>();
+        try {
+            DocumentSnapshot trip = tripRef.get().get();
+            if (trip.exists() && !TripRepository.isDeleted(trip)) {
+                // Nothing to purge, the trip is live
+                return;
+            }
+
+            Map<String, Object> start = new HashMap<>();
+            start.put("status", STATUS_RUNNING);
+            start.put("error", FieldValue.delete());
+            start.put("updatedAt", System.currentTimeMillis());
+            DocumentSnapshot progress = progressRef.get().get();
+            if (!progress.exists() || progress.getLong("startedAt") == null) {
+                start.put("startedAt", System.currentTimeMillis());
+            }
+            progressRef.set(start, SetOptions.merge()).get();
+
+            // Files recorded by an earlier, interrupted run; with those seen below, each name is handled once
+            Set<String> handled = new HashSet<>();
+            List<?> pendingFiles = (List<?>) progress.get("pendingFiles");
+            if (pendingFiles != null) {
+                List<String> recorded = new ArrayList<>();
+                for (Object fileName : pendingFiles) {
+                    if (handled.add((String) fileName)) {
+                        recorded.add((String) fileName);
+                    }
+                }
+                fileDeletions.addAll(releaseFiles(progressRef, recorded));
+            }
+
+            while (true) {
+                QuerySnapshot page = firestore.collection(PLANS_COLLECTION)
+                        .whereEqualTo("tripId", tripId)
+                        .limit(pageSize)
+                        .get()
+                        .get();
+                if (page.isEmpty()) {
+                    break;
+                }
+
+                List<String> files = new ArrayList<>();
+                for (DocumentSnapshot plan : page.getDocuments()) {
+                    for (String fileName : collectPlanFiles(plan)) {
+                        if (handled.add(fileName)) {
+                            files.add(fileName);
+                        }
+                    }
+                }
+                recordFiles(progressRef, files);
+
+                List<ApiFuture<Void>> deletes = new ArrayList<>();
+                for (DocumentSnapshot plan : page.getDocuments()) {
+                    deletes.add(firestore.recursiveDelete(plan.getReference(), bulkWriter));
+                }
+                bulkWriter.flush().get();
+                for (ApiFuture<Void> delete : deletes) {
+                    delete.get();
+                }
+
+                fileDeletions.addAll(releaseFiles(progressRef, files));
+                progressRef.update(
+                        "plansDeleted", FieldValue.increment(page.size()),
+                        "updatedAt", System.currentTimeMillis()).get();
+            }
+
+            if (trip.exists()) {
+                String coverPhoto = trip.getString("coverPhoto");
+                if (isStoredFile(coverPhoto) && handled.add(coverPhoto)) {
+                    recordFiles(progressRef, List.of(coverPhoto));
+                    fileDeletions.addAll(releaseFiles(progressRef, List.of(coverPhoto)));
+                }
+                firestore.recursiveDelete(tripRef, bulkWriter);
+                bulkWriter.flush().get();
+            }
+
+            long filesFailed = CompletableFuture.allOf(fileDeletions.toArray(new CompletableFuture<?>[0]))
+                    .thenApply(ignored -> fileDeletions.stream().filter(deletion -> !deletion.join()).count())
+                    .get();
+
+            // Released names are out of pendingFiles, so the files that failed are not retried here
+            Map<String, Object> end = new HashMap<>();
+            end.put("updatedAt", System.currentTimeMillis());
+            end.put("status", STATUS_COMPLETED);
+            end.put("completedAt", System.currentTimeMillis());
+            if (filesFailed > 0) {
+                end.put("error", filesFailed + " file(s) could not be deleted, the upload garbage collector removes them");
+            }
+            progressRef.set(end, SetOptions.merge()).get();
+            System.out.println("Purge of trip " + tripId + " finished with status " + end.get("status"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("Purge of trip " + tripId + " failed, it is retried by the next sweep: " + e.getMessage());
+            Map<String, Object> failed = new HashMap<>();
+            failed.put("status", STATUS_FAILED);
+            failed.put("error", String.valueOf(e.getMessage()));
+            failed.put("updatedAt", System.currentTimeMillis());
+            try {
+                progressRef.set(failed, SetOptions.merge()).get();
+            } catch (Exception ignored) {
+                // The trip is still marked deleted, so the sweep finds it again
+            }
+        } finally {
+            closeQuietly(bulkWriter);
+        }
+    }
+
+    // Everything was flushed or the purge failed; close only waits for writes still in flight
+    private static void closeQuietly(BulkWriter bulkWriter) {
+        try {
+            bulkWriter.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("Failed to close purge bulk writer: " + e.getMessage());
+        }
+    }
+
+    // Remember files before the documents referencing them are gone
+    private void recordFiles(DocumentReference progressRef, List<String> files) throws Exception {
+        if (files.isEmpty()) {
+            return;
+        }
+        progressRef.update(
+                "pendingFiles", FieldValue.arrayUnion(files.toArray()),
+                "filesQueued", FieldValue.increment(files.size())).get();
+    }
+
+    /**
+     * Take the files out of pendingFiles in one transaction and release only those that were still there,
+     * so a name is released once even when an interrupted run had already got to it
+     */
+    private List<CompletableFuture<Boolean>> releaseFiles(DocumentReference progressRef, Collection<String> files) throws Exception {
+        if (files.isEmpty()) {
+            return List.of();
+        }
+        List<String> claimed = firestore.runTransaction(transaction -> {
+            List<?> pending = (List<?>) transaction.get(progressRef).get().get("pendingFiles");
+            List<Object> remaining = pending != null ? new ArrayList<>(pending) : new ArrayList<>();
+            List<String> taken = new ArrayList<>();
+            for (String fileName : files) {
+                if (remaining.remove(fileName)) {
+                    taken.add(fileName);
+                }
+            }
+            if (!taken.isEmpty()) {
+                transaction.update(progressRef, "pendingFiles", remaining);
+            }
+            return taken;
+        }).get();
+
+        List<CompletableFuture<Boolean>> deletions = new ArrayList<>();
+        for (String fileName : claimed) {
+            deletions.add(deleteFileAsync(progressRef, fileName));
+        }
+        return deletions;
+    }
+
+    private CompletableFuture<Boolean> deleteFileAsync(DocumentReference progressRef, String fileName) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                fileStorageService.deleteFile(fileName);
+            } catch (Exception e) {
+                System.err.println("Failed to delete file " + fileName + ": " + e.getMessage());
+                return false;
+            }
+            try {
+                progressRef.update("filesDeleted", FieldValue.increment(1)).get();
+            } catch (Exception e) {
+                // Only the progress counter is off; the file is released and out of pendingFiles
+                System.err.println("Failed to count deleted file " + fileName + ": " + e.getMessage());
+            }
+            return true;
+        }, fileExecutor);
+    }
+
+    private List<String> collectPlanFiles(DocumentSnapshot plan) {
+        Set<String> files = new LinkedHashSet<>();
+        String photoUrl = plan.getString("photoUrl");
+        if (isStoredFile(photoUrl)) {
+            files.add(photoUrl);
+        }
+        Object photos = plan.get("photos");
+        if (photos instanceof List) {
+            for (Object photo : (List<?>) photos) {
+                if (photo instanceof String && isStoredFile((String) photo)) {
+                    files.add((String) photo);
+                }
+            }
+        }
+        return new ArrayList<>(files);
+    }
+
+    // Uploads are referenced by bare file name; anything with a path or scheme is not ours to delete
+    private static boolean isStoredFile(String name) {
+        return name != null && !name.isEmpty() && !name.contains("/") && !name.contains("\\") && !name.contains("..");
+    }
+
+    private static long longValue(Long value) {
+        return value != null ? value : 0L;
+    }
+}
@@ -2,21 +2,25 @@ package com.datn.trip_service.service;
 
 import com.datn.trip_service.dto.AdventureResponse;
 import com.datn.trip_service.dto.CreateTripRequest;
+import com.datn.trip_service.dto.TripSummary;
+import com.datn.trip_service.dto.TripPurgeStatus;
 import com.datn.trip_service.model.Plan;
 import com.datn.trip_service.model.PlanComment;
 import com.datn.trip_service.model.Trip;
 import com.datn.trip_service.model.User;
+import com.datn.trip_service.model.UserProfile;
 import com.datn.trip_service.repository.PlanRepository;
 import com.datn.trip_service.repository.TripRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDate;
-import java.time.format.TextStyle;
-import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
 @Service
@@ -33,6 +37,15 @@ public class TripService {
     
     @Autowired
     private UserService userService;
+    
+    @Autowired
+    private AdventureFeedService adventureFeedService;
+    
+    @Autowired
+    private TripPurgeService tripPurgeService;
+    
+    @Autowired
+    private TripAccessEvaluator tripAccessEvaluator;
 
     public Trip createTrip(CreateTripRequest request) {
         Trip trip = new Trip();
@@ -47,7 +60,9 @@ public class TripService {
         trip.setMembers(request.getMembers() != null ? request.getMembers() : new ArrayList<>());
         trip.setSharedWithUsers(request.getSharedWithUsers() != null ? request.getSharedWithUsers() : new ArrayList<>());
         
-        return tripRepository.save(trip);
+        Trip savedTrip = tripRepository.save(trip);
+        adventureFeedService.refresh(savedTrip);
+        return savedTrip;
     }
 
     public Trip getTripById(String id) {
@@ -55,139 +70,189 @@ public class TripService {
                 .orElseThrow(() -> new RuntimeException("Trip not found with id: " + id));
     }
     
+    // The current trip from Firestore, bypassing the cache, for changes written with tripRepository.update
+    private Trip getTripForUpdate(String id) {
+        return tripRepository.findByIdForUpdate(id)
+                .orElseThrow(() -> new RuntimeException("Trip not found with id: " + id));
+    }
+    
+    public CompletableFuture<Trip> getTripByIdAsync(String id) {
+        return tripRepository.findByIdAsync(id)
+                .thenApply(trip -> trip.orElseThrow(() -> new RuntimeException("Trip not found with id: " + id)));
+    }
+    
 
     public Trip getTripWithFullPlans(String id) {
-        Trip trip = tripRepository.findById(id)
-                .orElseThrow(() -> new RuntimeException("Trip not found with id: " + id));
-        
-        // Load all plans for this trip with full details
-        List<Plan> plans = planRepository.findByTripId(id);
-        
-        // Populate user info for comments in each plan
-        if (plans != null && !plans.isEmpty()) {
-            for (Plan plan : plans) {
-                if (plan.getComments() != null && !plan.getComments().isEmpty()) {
-                    populateCommentUserInfo(plan.getComments());
-                }
+        try {
+            return getTripWithFullPlansAsync(id).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
-            trip.setPlans(plans);
-        } else {
-            trip.setPlans(new ArrayList<>());
+            throw e;
         }
+    }
+
+    /**
+     * Trip document and its typed plans are read once and concurrently.
+     * Comment authors are hydrated as soon as the plans arrive, overlapping with the trip read.
+     */
+    public CompletableFuture<Trip> getTripWithFullPlansAsync(String id) {
+        CompletableFuture<Optional<Trip>> tripFuture = tripRepository.findByIdWithoutPlansAsync(id);
+        CompletableFuture<List<Plan>> plansFuture = planRepository.findByTripIdAsync(id)
+                .thenCompose(plans -> populateCommentUserInfo(plans).thenApply(ignored -> plans));
         
-        return trip;
+        return tripFuture.thenCombine(plansFuture, (found, plans) -> {
+            Trip trip = found.orElseThrow(() -> new RuntimeException("Trip not found with id: " + id));
+            trip.setPlans(plans != null ? plans : new ArrayList<>());
+            return trip;
+        });
     }
 
-    private void populateCommentUserInfo(List<PlanComment> comments) {
-        for (PlanComment comment : comments) {
-            if (comment.getUserId() != null) {
-                try {
-                    User user = userService.getUserById(comment.getUserId());
-                    if (user != null) {
-                        comment.setUserName(user.getFirstName() + " " + user.getLastName());
-                        comment.setUserAvatar(user.getProfilePicture());
-                    }
-                } catch (Exception e) {
-                    // Log but don't fail - just leave userName/userAvatar as null
-                    System.err.println("Failed to get user info for comment userId: " + comment.getUserId());
-                }
+    private CompletableFuture<Void> populateCommentUserInfo(List<Plan> plans) {
+        List<PlanComment> comments = new ArrayList<>();
+        for (Plan plan : plans) {
+            if (plan.getComments() != null) {
+                comments.addAll(plan.getComments());
             }
         }
+        if (comments.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        // One batched lookup for every distinct commenter, served from the profile cache when possible
+        return userService.getUserProfilesAsync(comments.stream()
+                        .map(PlanComment::getUserId)
+                        .collect(Collectors.toSet()))
+                .thenAccept(profiles -> {
+                    for (PlanComment comment : comments) {
+                        UserProfile user = profiles.get(comment.getUserId());
+                        if (user != null) {
+                            comment.setUserName(user.getDisplayName());
+                            comment.setUserAvatar(user.getProfilePicture());
+                        }
+                    }
+                })
+                .exceptionally(e -> {
+                    // Log but don't fail - just leave userName/userAvatar as null
+                    System.err.println("Failed to get user info for comments: " + e.getMessage());
+                    return null;
+                });
     }
 
     public List<Trip> getTripsByUserId(String userId) {
         return tripRepository.findByUserId(userId);
     }
 
+    public CompletableFuture<List<Trip>> getTripsByUserIdAsync(String userId) {
+        return tripRepository.findByUserIdAsync(userId);
+    }
+
     public List<Trip> getTripsByMemberId(String userId) {
         return tripRepository.findTripsByMemberId(userId);
     }
 
+    public List<TripSummary> getTripSummariesByUserId(String userId) {
+        return tripRepository.findSummariesByUserId(userId);
+    }
+
+    public List<TripSummary> getTripSummariesByMemberId(String userId) {
+        return tripRepository.findSummariesByMemberId(userId);
+    }
+
     public Trip updateTrip(String id, CreateTripRequest request) {
-        Trip trip = getTripById(id);
+        Trip trip = getTripForUpdate(id);
+        String oldCoverPhoto = trip.getCoverPhoto();
         
-        // Check if coverPhoto is being changed and delete old photo if exists
+        // Only the fields that actually change are written
+        Trip savedTrip = tripRepository.update(trip, changed -> {
+            changed.setTitle(request.getTitle());
+            changed.setStartDate(request.getStartDate());
+            changed.setEndDate(request.getEndDate());
+            changed.setIsPublic(request.getIsPublic());
+            changed.setCoverPhoto(request.getCoverPhoto());
+            changed.setContent(request.getContent());
+            changed.setTags(request.getTags());
+            changed.setMembers(request.getMembers());
+            // Update members and sharing settings
+//            if (request.getMembers() != null) {
+//                changed.setMembers(request.getMembers());
+//            }
+            if (request.getSharedWithUsers() != null) {
+                changed.setSharedWithUsers(request.getSharedWithUsers());
+            }
+            
+            // Only set sharedAt if it's the first time sharing (trip doesn't have sharedAt yet)
+            if (changed.getSharedAt() == null && request.getSharedAt() != null) {
+                changed.setSharedAt(request.getSharedAt());
+            }
+            // Keep existing sharedAt if already set, don't update it
+        });
+        
+        // Delete the old cover photo once the trip no longer references it
         if (request.getCoverPhoto() != null && 
-            !request.getCoverPhoto().equals(trip.getCoverPhoto()) &&
-            trip.getCoverPhoto() != null && 
-            !trip.getCoverPhoto().isEmpty()) {
+            !request.getCoverPhoto().equals(oldCoverPhoto) &&
+            oldCoverPhoto != null && 
+            !oldCoverPhoto.isEmpty()) {
             try {
-                // Delete old cover photo from storage
-                fileStorageService.deleteFile(trip.getCoverPhoto());
+                fileStorageService.deleteFile(oldCoverPhoto);
             } catch (Exception e) {
-                // Log error but continue with update
+                // Log error, the trip is already updated
                 System.err.println("Failed to delete old cover photo: " + e.getMessage());
             }
         }
         
-        trip.setTitle(request.getTitle());
-        trip.setStartDate(request.getStartDate());
-        trip.setEndDate(request.getEndDate());
-        trip.setIsPublic(request.getIsPublic());
-        trip.setCoverPhoto(request.getCoverPhoto());
-        trip.setContent(request.getContent());
-        trip.setTags(request.getTags());
-        trip.setMembers(request.getMembers());
-        // Update members and sharing settings
-//        if (request.getMembers() != null) {
-//            trip.setMembers(request.getMembers());
-//        }
-        if (request.getSharedWithUsers() != null) {
-            trip.setSharedWithUsers(request.getSharedWithUsers());
-        }
-        
-        // Only set sharedAt if it's the first time sharing (trip doesn't have sharedAt yet)
-        if (trip.getSharedAt() == null && request.getSharedAt() != null) {
-            trip.setSharedAt(request.getSharedAt());
-        }
-        // Keep existing sharedAt if already set, don't update it
-        
-        return tripRepository.save(trip);
+        tripAccessEvaluator.invalidate(id);
+        adventureFeedService.refresh(savedTrip);
+        return savedTrip;
     }
 
+    // Soft delete now; plans, photos and the document itself are purged in the background
     public void deleteTrip(String id) {
-        tripRepository.deleteById(id);
+        tripRepository.markDeleted(id);
+        tripAccessEvaluator.invalidate(id);
+        adventureFeedService.remove(id);
+        tripPurgeService.purgeAsync(id);
     }
     
-    // Add member to trip
-    public Trip addMember(String tripId, User member) {
-        Trip trip = getTripById(tripId);
-        
-        if (trip.getMembers() == null) {
-            trip.setMembers(new ArrayList<>());
-        }
-        
-        // Check if member already exists
-        boolean memberExists = trip.getMembers().stream()
-                .anyMatch(m -> m.getId().equals(member.getId()));
-        
-        if (!memberExists) {
-            trip.getMembers().add(member);
-            return tripRepository.save(trip);
-        }
-        
-        return trip;
+    public TripPurgeStatus getPurgeStatus(String tripId) {
+        return tripPurgeService.getStatus(tripId);
     }
     
-    // Remove member from trip
-    public Trip removeMember(String tripId, String userId) {
-        Trip trip = getTripById(tripId);
-        
-        if (trip.getMembers() != null) {
-            trip.getMembers().removeIf(member -> member.getId().equals(userId));
-            return tripRepository.save(trip);
-        }
-        
-        return trip;
+    // Add member to trip; returns the updated member list
+    public List<User> addMember(String tripId, User member) {
+        return addMembers(tripId, List.of(member));
+    }
+    
+    // Add several members with one transactional write
+    public List<User> addMembers(String tripId, List<User> members) {
+        List<User> updatedMembers = tripRepository.addMembers(tripId, members);
+        tripAccessEvaluator.invalidate(tripId);
+        adventureFeedService.updateMembers(tripId, updatedMembers);
+        return updatedMembers;
+    }
+    
+    // Remove member from trip; returns the updated member list
+    public List<User> removeMember(String tripId, String userId) {
+        return removeMembers(tripId, List.of(userId));
+    }
+    
+    public List<User> removeMembers(String tripId, List<String> userIds) {
+        List<User> updatedMembers = tripRepository.removeMembers(tripId, userIds);
+        tripAccessEvaluator.invalidate(tripId);
+        adventureFeedService.updateMembers(tripId, updatedMembers);
+        return updatedMembers;
     }
     
     // Update shared users list
     public Trip updateSharedUsers(String tripId, List<String> userIds) {
-        Trip trip = getTripById(tripId);
+        Trip trip = getTripForUpdate(tripId);
         // For backward compatibility, convert IDs to User objects if needed
         // In practice, this method might be deprecated in favor of full user objects
-        trip.setSharedWithUsers(new ArrayList<>()); // Clear for now, or convert IDs to User objects
-        return tripRepository.save(trip);
+        Trip savedTrip = tripRepository.update(trip, changed ->
+                changed.setSharedWithUsers(new ArrayList<>())); // Clear for now, or convert IDs to User objects
+        tripAccessEvaluator.invalidate(tripId);
+        return savedTrip;
     }
     
     // Check if user is member of trip
@@ -208,133 +273,26 @@ public class TripService {
         return false;
     }
     
-    // Check if user can view the trip based on sharing settings
-    public boolean canViewTrip(String tripId, String userId, List<String> userFollowerIds) {
-        Trip trip = getTripById(tripId);
-        
-        // Creator can always view
-        if (trip.getUserId().equals(userId)) {
-            return true;
-        }
-        
-        // Members can always view
-        if (isMember(tripId, userId)) {
-            return true;
-        }
-        
-        // Public trips can be viewed by anyone
-        if ("public".equals(trip.getIsPublic())) {
-            return true;
-        }
-        
-        // Follower-only trips
-        if ("follower".equals(trip.getIsPublic())) {
-            // If sharedWithUsers is specified and not empty, check if user is in the list
-            if (trip.getSharedWithUsers() != null && !trip.getSharedWithUsers().isEmpty()) {
-                return trip.getSharedWithUsers().stream()
-                        .anyMatch(user -> user.getId().equals(userId));
-            }
-            // If sharedWithUsers is empty, share with all followers
-            else if (userFollowerIds != null) {
-                return userFollowerIds.contains(trip.getUserId());
-            }
-        }
-        
-        return false;
+    // Check if user can view the trip based on sharing settings; followers come from the server-side follow graph
+    public boolean canViewTrip(String tripId, String userId) {
+        return tripAccessEvaluator.canView(tripId, userId);
     }
     
-
-    public AdventureResponse getAdventureTrips(String userId, int limit) {
-        try {
-            // 1. Get public trips (excluding user's own trips)
-            List<Trip> publicTrips = tripRepository.findPublicTripsForAdventure(userId, limit);
-            
-            // 2. Build adventure items with all details embedded
-            List<AdventureResponse.AdventureItem> items = publicTrips.stream()
-                .map(trip -> {
-                    try {
-                        // Get user details (trip owner)
-                        User tripOwner = getUserById(trip.getUserId());
-                        
-                        // Calculate duration
-                        int duration = (int) ChronoUnit.DAYS.between(trip.getStartDate(), trip.getEndDate()) + 1;
-                        
-                        // Format start date text (e.g., "January 2026")
-                        String monthName = trip.getStartDate().getMonth()
-                            .getDisplayName(TextStyle.FULL, Locale.ENGLISH);
-                        int year = trip.getStartDate().getYear();
-                        String startDateText = monthName + " " + year;
-                        
-                        // Format duration text (e.g., "5 days")
-                        String durationText = duration + " days";
-                        
-                        // Build TripDetail
-                        AdventureResponse.TripDetail tripDetail = AdventureResponse.TripDetail.builder()
-                            .id(trip.getId())
-                            .userId(trip.getUserId())
-                            .title(trip.getTitle())
-                            .startDate(trip.getStartDate())
-                            .endDate(trip.getEndDate())
-                            .isPublic(trip.getIsPublic())
-                            .coverPhoto(trip.getCoverPhoto())
-                            .content(trip.getContent())
-                            .tags(trip.getTags())
-                            .plans(trip.getPlans())
-                            .members(trip.getMembers())
-                            .sharedWithUsers(trip.getSharedWithUsers())
-                            .createdAt(trip.getCreatedAt())
-                            .sharedAt(trip.getSharedAt())
-                            .build();
-                        
-                        // Build UserDetail
-                        AdventureResponse.UserDetail userDetail = AdventureResponse.UserDetail.builder()
-                            .id(tripOwner.getId())
-                            .firstName(tripOwner.getFirstName())
-                            .lastName(tripOwner.getLastName())
-                            .email(tripOwner.getEmail())
-                            .profilePicture(tripOwner.getProfilePicture())
-                            .role(tripOwner.getRole())
-                            .createdAt(tripOwner.getCreatedAt())
-                            .updatedAt(tripOwner.getUpdatedAt())
-                            .build();
-                        
-                        // Build AdventureItem
-                        return AdventureResponse.AdventureItem.builder()
-                            .tripId(trip.getId())
-                            .trip(tripDetail)
-                            .user(userDetail)
-                            .duration(duration)
-                            .startDateText(startDateText)
-                            .durationText(durationText)
-                            .build();
-                            
-                    } catch (Exception e) {
-                        System.err.println("Error processing trip " + trip.getId() + ": " + e.getMessage());
-                        return null;
-                    }
-                })
-                .filter(item -> item != null)
-                .collect(Collectors.toList());
-            
-            return AdventureResponse.builder()
-                .items(items)
-                .build();
-                
-        } catch (Exception e) {
-            System.err.println("Error getting adventure trips: " + e.getMessage());
-            e.printStackTrace();
-            throw new RuntimeException("Failed to get adventure trips", e);
+    // Access to several trips at once, by trip ID; unknown trips are not viewable
+    public Map<String, Boolean> canViewTrips(List<String> tripIds, String userId) {
+        Map<String, Boolean> found = tripAccessEvaluator.canViewAll(tripIds, userId);
+        Map<String, Boolean> access = new LinkedHashMap<>();
+        for (String tripId : tripIds) {
+            access.put(tripId, found.getOrDefault(tripId, false));
         }
+        return access;
     }
     
+
     /**
-     * Helper method to get user by ID
+     * One page of the precomputed Adventure feed (see AdventureFeedService)
      */
-    private User getUserById(String userId) {
-        try {
-            return userService.getUserById(userId);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to get user: " + userId, e);
-        }
+    public AdventureResponse getAdventureTrips(String userId, int limit, String cursor) {
+        return adventureFeedService.getFeed(userId, limit, cursor);
     }
 }
@@ -0,0 +1,97 @@
+package com.datn.trip_service.service;
+
+import com.datn.trip_service.config.FileUploadExecutorConfig;
+import com.datn.trip_service.dto.FileUploadResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Stores the files of a multi-file upload in parallel on the shared upload pool. At most
+ * file.upload.max-concurrency-per-request files of one request are in flight, so a large album does not
+ * take the whole pool. Results keep the order of the request; a failed file gets an unsuccessful
+ * entry and does not stop the others.
+ */
+@Service
+public class UploadBatchService {
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private ImageVariantService imageVariantService;
+
+    @Autowired
+    @Qualifier(FileUploadExecutorConfig.UPLOAD_EXECUTOR)
+    private Executor uploadExecutor;
+
+    @Value("${file.upload.max-concurrency-per-request:4}")
+    private int maxConcurrencyPerRequest;
+
+    public List<FileUploadResponse> storeFiles(MultipartFile[] files) {
+        return runBounded(Arrays.asList(files), maxConcurrencyPerRequest, uploadExecutor, this::storeFile);
+    }
+
+    private FileUploadResponse storeFile(MultipartFile file) {
+        try {
+            String fileName = fileStorageService.storeFile(file);
+            imageVariantService.generateAsync(fileName);
+            return new FileUploadResponse(
+                    true,
+                    "File uploaded successfully",
+                    fileName,
+                    "/uploads/" + fileName,
+                    imageVariantService.variantUrls(fileName)
+            );
+        } catch (Exception e) {
+            return new FileUploadResponse(
+                    false,
+                    "Failed to upload file: " + e.getMessage(),
+                    null,
+                    null,
+                    null
+            );
+        }
+    }
+
+    /**
+     * Apply task to every item with at most maxConcurrency running at once, results in item order.
+     * Up to maxConcurrency workers each take the next unprocessed index until none are left; task must
+     * not throw (failures belong in its result).
+     */
+    static <I, R> List<R> runBounded(List<I> items, int maxConcurrency, Executor executor, Function<I, R> task) {
+        int size = items.size();
+        List<R> results = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            results.add(null);
+        }
+        if (size == 0) {
+            return results;
+        }
+
+        AtomicInteger next = new AtomicInteger();
+        int workers = Math.max(1, Math.min(maxConcurrency, size));
+        CompletableFuture<?>[] running = new CompletableFuture<?>[workers];
+        for (int w = 0; w < workers; w++) {
+            running[w] = CompletableFuture.runAsync(() -> {
+                int index;
+                while ((index = next.getAndIncrement()) < size) {
+                    // Each index is set by exactly one worker and the list never resizes; join() below publishes the writes
+                    results.set(index, task.apply(items.get(index)));
+                }
+            }, executor);
+        }
+        CompletableFuture.allOf(running).join();
+        return results;
+    }
+}
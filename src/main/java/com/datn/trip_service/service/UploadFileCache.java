@@ -0,0 +1,204 @@
+package com.datn.trip_service.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Hot uploaded files kept memory-mapped, so repeated requests for the same photo are served from the
+ * page cache without opening and reading the file again. The cache is bounded by the total mapped bytes
+ * (file.serving.cache.max-bytes); files larger than file.serving.cache.max-file-bytes are never mapped.
+ *
+ * Stored files never change content, so an entry stays valid until FileStorageService deletes the file
+ * and invalidates it. Metrics: cache.gets/cache.evictions (cache=uploadFiles) for the hit rate,
+ * uploads.cache.mapped.bytes and uploads.cache.bytes.served for bytes sent from mapped memory.
+ */
+@Component
+public class UploadFileCache {
+
+    private static final String CACHE_NAME = "uploadFiles";
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${file.serving.cache.max-bytes:268435456}")
+    private long maxBytes = 256L << 20;
+
+    @Value("${file.serving.cache.max-file-bytes:16777216}")
+    private long maxFileBytes = 16L << 20;
+
+    private Cache<String, MappedFile> files;
+    private Counter bytesServed;
+
+    @PostConstruct
+    public void init() {
+        files = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String fileName, MappedFile file) -> file.buffer.capacity())
+                .recordStats()
+                .build();
+
+        if (meterRegistry != null) {
+            CaffeineCacheMetrics.monitor(meterRegistry, files, CACHE_NAME);
+            Gauge.builder("uploads.cache.mapped.bytes", files,
+                            cache -> cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L))
+                    .description("Bytes of uploaded files currently memory-mapped")
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+            bytesServed = Counter.builder("uploads.cache.bytes.served")
+                    .description("Bytes of uploaded files sent from memory-mapped buffers")
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * The file as a memory-mapped resource, mapping it on first use; null when the file does not exist
+     * or is too large to cache
+     */
+    public Resource get(String fileName, Path path) {
+        MappedFile file = files.get(fileName, name -> map(path));
+        return file != null ? new MappedFileResource(fileName, file, bytesServed) : null;
+    }
+
+    public void invalidate(String fileName) {
+        files.invalidate(fileName);
+    }
+
+    private MappedFile map(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!attributes.isRegularFile() || attributes.size() > maxFileBytes) {
+                return null;
+            }
+            // The mapping outlives the channel; it is released when the evicted buffer is collected
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, attributes.size());
+                return new MappedFile(buffer, attributes.lastModifiedTime().toMillis());
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static final class MappedFile {
+        private final ByteBuffer buffer;
+        private final long lastModified;
+
+        private MappedFile(ByteBuffer buffer, long lastModified) {
+            this.buffer = buffer;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * Read-only view of a mapped file; every input stream reads its own duplicate of the buffer,
+     * so concurrent responses (and Range requests skipping ahead) do not share a position
+     */
+    static final class MappedFileResource extends AbstractResource {
+        private final String fileName;
+        private final MappedFile file;
+        private final Counter bytesServed;
+
+        MappedFileResource(String fileName, MappedFile file, Counter bytesServed) {
+            this.fileName = fileName;
+            this.file = file;
+            this.bytesServed = bytesServed;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new BufferInputStream(file.buffer.duplicate(), bytesServed);
+        }
+
+        @Override
+        public long contentLength() {
+            return file.buffer.capacity();
+        }
+
+        @Override
+        public long lastModified() {
+            return file.lastModified;
+        }
+
+        @Override
+        public String getFilename() {
+            return fileName;
+        }
+
+        @Override
+        public String getDescription() {
+            return "memory-mapped upload [" + fileName + "]";
+        }
+    }
+
+    private static final class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+        private final Counter bytesServed;
+
+        private BufferInputStream(ByteBuffer buffer, Counter bytesServed) {
+            this.buffer = buffer;
+            this.bytesServed = bytesServed;
+        }
+
+        @Override
+        public int read() {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            count(1);
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(length, buffer.remaining());
+            buffer.get(target, offset, read);
+            count(read);
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        private void count(int bytes) {
+            if (bytesServed != null) {
+                bytesServed.increment(bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.datn.trip_service.service;
+
+import com.datn.trip_service.dto.UploadGcReport;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QuerySnapshot;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Mark-and-sweep collector for uploads nothing refers to: photos uploaded but never attached, or left
+ * behind when documents were removed without releasing their files.
+ *
+ * Mark pages through trips.coverPhoto, plans.photoUrl/photos and users.profilePicture (only those fields
+ * are read) into a FileReferenceSet. Sweep walks the upload directory, skipping .tmp/.meta, and collects
+ * unreferenced files last stored before the grace period. Variants belong to their original and go with
+ * it; a variant is only an orphan itself when its original is gone.
+ *
+ * The grace period only protects recent uploads (including ones deduplicated onto an old file). An old
+ * file can also be attached again while the run is going, by a document saved with its URL after mark
+ * read that document. So before anything is deleted, mark runs a second time and orphans referenced by
+ * then are kept. Orphans are then deleted at most file.gc.max-deletes-per-second, so a file attached
+ * after the second mark read its document, and before the file's turn, can still be lost.
+ *
+ * With file.gc.dry-run=true (the default) orphans are only reported and the second mark is skipped.
+ * Every run's report is logged and kept in upload_gc_runs/{runId}.
+ */
+@Service
+public class UploadGarbageCollector {
+
+    private static final String REPORTS_COLLECTION = "upload_gc_runs";
+    private static final int SAMPLE_SIZE = 100;
+
+    @Autowired
+    private Firestore firestore;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Value("${file.gc.enabled:true}")
+    private boolean enabled;
+
+    @Value("${file.gc.dry-run:true}")
+    private boolean dryRun;
+
+    @Value("${file.gc.grace-period-hours:48}")
+    private long gracePeriodHours;
+
+    @Value("${file.gc.max-deletes-per-second:20}")
+    private int maxDeletesPerSecond;
+
+    @Value("${file.gc.page-size:500}")
+    private int pageSize;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Scheduled(cron = "${file.gc.cron:0 30 3 * * *}")
+    public void scheduledRun() {
+        if (enabled) {
+            run(dryRun);
+        }
+    }
+
+    /**
+     * Run one collection; null when a run is already in progress
+     */
+    public UploadGcReport run(boolean dryRun) {
+        if (!running.compareAndSet(false, true)) {
+            System.out.println("Upload GC already running, skipping");
+            return null;
+        }
+        UploadGcReport report = UploadGcReport.builder()
+                .runId(UUID.randomUUID().toString())
+                .dryRun(dryRun)
+                .sampleOrphans(new ArrayList<>())
+                .startedAt(System.currentTimeMillis())
+                .build();
+        try {
+            FileReferenceSet references = markReferences();
+            report.setReferences(references.size());
+            long storedBefore = report.getStartedAt() - Duration.ofHours(gracePeriodHours).toMillis();
+            List<Orphan> orphans = sweep(references, storedBefore, report);
+            if (!dryRun && !orphans.isEmpty()) {
+                // Documents saved since the first mark may refer to some of the orphans again
+                references = markReferences();
+                deleteOrphans(orphans, references, storedBefore, report);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            report.setError("Interrupted");
+        } catch (Exception e) {
+            System.err.println("Upload GC failed: " + e.getMessage());
+            report.setError(String.valueOf(e.getMessage()));
+        } finally {
+            report.setCompletedAt(System.currentTimeMillis());
+            running.set(false);
+        }
+
+        System.out.println("Upload GC " + (dryRun ? "dry run " : "") + report.getRunId()
+                + ": " + report.getFilesScanned() + " file(s) scanned, " + report.getOrphans() + " orphan(s) ("
+                + report.getOrphanBytes() + " bytes), " + report.getDeleted() + " deleted, "
+                + report.getSkippedRecent() + " within grace period, " + report.getReattached() + " attached again, "
+                + report.getFailed() + " failed");
+        try {
+            firestore.collection(REPORTS_COLLECTION).document(report.getRunId()).set(report).get();
+        } catch (Exception e) {
+            System.err.println("Failed to save upload GC report: " + e.getMessage());
+        }
+        return report;
+    }
+
+    private FileReferenceSet markReferences() throws Exception {
+        FileReferenceSet references = new FileReferenceSet();
+        markCollection("trips", references, "coverPhoto");
+        markCollection("plans", references, "photoUrl", "photos");
+        markCollection("users", references, "profilePicture");
+        references.seal();
+        return references;
+    }
+
+    // Pages through the collection in document ID order, reading only the given fields
+    private void markCollection(String collection, FileReferenceSet references, String... fields) throws Exception {
+        String lastDocumentId = null;
+        while (true) {
+            Query query = firestore.collection(collection)
+                    .orderBy(FieldPath.documentId())
+                    .select(fields)
+                    .limit(pageSize);
+            if (lastDocumentId != null) {
+                query = query.startAfter(lastDocumentId);
+            }
+            QuerySnapshot page = query.get().get();
+            for (DocumentSnapshot document : page.getDocuments()) {
+                for (String field : fields) {
+                    addReference(references, document.get(field));
+                }
+            }
+            if (page.size() < pageSize) {
+                return;
+            }
+            lastDocumentId = page.getDocuments().get(page.size() - 1).getId();
+        }
+    }
+
+    private static void addReference(FileReferenceSet references, Object value) {
+        if (value instanceof List) {
+            for (Object item : (List<?>) value) {
+                addReference(references, item);
+            }
+        } else if (value instanceof String) {
+            String fileName = fileNameOf((String) value);
+            if (!fileName.isEmpty()) {
+                references.add(fileName);
+            }
+        }
+    }
+
+    // References are bare names, /uploads/<name> or full URLs; the last path segment is the stored name
+    static String fileNameOf(String reference) {
+        String path = reference.trim();
+        int end = path.length();
+        for (char delimiter : new char[]{'?', '#'}) {
+            int index = path.indexOf(delimiter);
+            if (index >= 0) {
+                end = Math.min(end, index);
+            }
+        }
+        path = path.substring(0, end);
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    // Walks the upload directory and returns the orphans, deleting nothing
+    private List<Orphan> sweep(FileReferenceSet references, long storedBefore, UploadGcReport report) throws Exception {
+        Path root = fileStorageService.getStorageLocation();
+        List<Orphan> orphans = new ArrayList<>();
+
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                // .tmp (uploads in progress) and .meta (reference counts, checkpoints)
+                return !dir.equals(root) && dir.getFileName().toString().startsWith(".")
+                        ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                String fileName = file.getFileName().toString();
+                // Dot files are in-flight temp files
+                if (fileName.startsWith(".") || !attrs.isRegularFile()) {
+                    return FileVisitResult.CONTINUE;
+                }
+                report.setFilesScanned(report.getFilesScanned() + 1);
+                report.setBytesScanned(report.getBytesScanned() + attrs.size());
+                if (references.contains(fileName) || hasOriginal(fileName, references)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                if (fileStorageService.lastStoredAt(fileName) >= storedBefore) {
+                    report.setSkippedRecent(report.getSkippedRecent() + 1);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                report.setOrphans(report.getOrphans() + 1);
+                report.setOrphanBytes(report.getOrphanBytes() + attrs.size());
+                if (report.getSampleOrphans().size() < SAMPLE_SIZE) {
+                    report.getSampleOrphans().add(fileName);
+                }
+                orphans.add(new Orphan(fileName, attrs.size()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                // Deleted while the walk was running
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return orphans;
+    }
+
+    // Deletes the orphans still unreferenced in the re-read references, rate limited
+    private void deleteOrphans(List<Orphan> orphans, FileReferenceSet references, long storedBefore,
+                               UploadGcReport report) throws InterruptedException {
+        long pauseMillis = maxDeletesPerSecond > 0 ? 1000L / maxDeletesPerSecond : 0L;
+        for (Orphan orphan : orphans) {
+            if (references.contains(orphan.fileName) || hasOriginal(orphan.fileName, references)) {
+                report.setReattached(report.getReattached() + 1);
+                continue;
+            }
+            try {
+                if (fileStorageService.deleteUnreferenced(orphan.fileName, storedBefore)) {
+                    report.setDeleted(report.getDeleted() + 1);
+                    report.setDeletedBytes(report.getDeletedBytes() + orphan.size);
+                }
+            } catch (RuntimeException e) {
+                report.setFailed(report.getFailed() + 1);
+                System.err.println("Upload GC could not delete " + orphan.fileName + ": " + e.getMessage());
+            }
+            if (pauseMillis > 0) {
+                Thread.sleep(pauseMillis);
+            }
+        }
+    }
+
+    // A variant stays while its original is stored or referenced; it is deleted together with the original
+    private boolean hasOriginal(String fileName, FileReferenceSet references) {
+        for (String original : ImageVariantService.originalCandidates(fileName)) {
+            if (references.contains(original) || Files.exists(fileStorageService.loadFile(original))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private record Orphan(String fileName, long size) {
+    }
+}
@@ -1,97 +1,254 @@
 package com.datn.trip_service.service;
 
+import com.datn.trip_service.config.FirestoreAsyncConfig;
 import com.datn.trip_service.model.User;
+import com.datn.trip_service.model.UserProfile;
+import com.datn.trip_service.repository.FirestoreFutures;
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.cloud.firestore.DocumentReference;
 import com.google.cloud.firestore.DocumentSnapshot;
 import com.google.cloud.firestore.Firestore;
 import com.google.cloud.firestore.QuerySnapshot;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 
 @Service
 public class UserService {
 
+    private static final int GET_ALL_CHUNK_SIZE = 100;
+
     @Autowired
     private Firestore firestore;
 
+    @Autowired
+    @Qualifier(FirestoreAsyncConfig.CALLBACK_EXECUTOR)
+    private Executor callbackExecutor;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${user.profile-cache.maximum-size:5000}")
+    private long profileCacheMaximumSize;
+
+    @Value("${user.profile-cache.ttl-seconds:300}")
+    private long profileCacheTtlSeconds;
+
+    // Shared profile cache holding one future per user ID, so concurrent misses (single or bulk) share
+    // one read; cache misses of a getAll are loaded together with getAll on the callback executor
+    private AsyncLoadingCache<String, Optional<UserProfile>> profileCache;
+
+    @PostConstruct
+    public void initProfileCache() {
+        profileCache = Caffeine.newBuilder()
+                .maximumSize(profileCacheMaximumSize)
+                .expireAfterWrite(Duration.ofSeconds(profileCacheTtlSeconds))
+                .executor(callbackExecutor)
+                .recordStats()
+                .buildAsync(new AsyncCacheLoader<String, Optional<UserProfile>>() {
+                    @Override
+                    public CompletableFuture<Optional<UserProfile>> asyncLoad(String userId, Executor executor) {
+                        return loadUserProfilesAsync(Set.of(userId))
+                                .thenApply(loaded -> loaded.getOrDefault(userId, Optional.empty()));
+                    }
+
+                    @Override
+                    public CompletableFuture<Map<String, Optional<UserProfile>>> asyncLoadAll(
+                            Set<? extends String> userIds, Executor executor) {
+                        return loadUserProfilesAsync(userIds);
+                    }
+                });
+
+        if (meterRegistry != null) {
+            CaffeineCacheMetrics.monitor(meterRegistry, profileCache, "userProfiles");
+        }
+    }
+
     public User getUserById(String userId) throws ExecutionException, InterruptedException {
+        DocumentSnapshot userDoc;
         try {
-            DocumentSnapshot userDoc = firestore.collection("users")
+            userDoc = firestore.collection("users")
                     .document(userId)
                     .get()
                     .get();
-            
-            if (userDoc.exists()) {
-                return User.builder()
-                        .id(userDoc.getId())
-                        .firstName(userDoc.getString("firstName"))
-                        .lastName(userDoc.getString("lastName"))
-                        .email(userDoc.getString("email"))
-                        .profilePicture(userDoc.getString("profilePicture"))
-                        .role(userDoc.getString("role"))
-                        .enabled(userDoc.getBoolean("enabled"))
-                        .build();
-            } else {
-                throw new RuntimeException("User not found with id: " + userId);
-            }
         } catch (Exception e) {
             System.err.println("Error in getUserById: " + e.getMessage());
             e.printStackTrace();
             throw new RuntimeException("Failed to get user: " + e.getMessage());
         }
+            
+        if (!userDoc.exists()) {
+            // A missing user is an expected outcome, no stack trace needed
+            throw new RuntimeException("Failed to get user: User not found with id: " + userId);
+        }
+        
+        return convertDocumentToUser(userDoc);
+    }
+
+    /**
+     * Cached display profile of a user, or null if the user does not exist
+     */
+    public UserProfile getUserProfile(String userId) {
+        if (userId == null || userId.isEmpty()) {
+            return null;
+        }
+        return FirestoreFutures.await(profileCache.get(userId), "Failed to get user profile: " + userId).orElse(null);
+    }
+
+    // Every requested ID gets an entry; users that don't exist are cached as empty
+    private CompletableFuture<Map<String, Optional<UserProfile>>> loadUserProfilesAsync(Collection<? extends String> userIds) {
+        return getUserDocumentsByIdsAsync(userIds).thenApply(documents -> {
+            Map<String, Optional<UserProfile>> loaded = new HashMap<>();
+            for (DocumentSnapshot userDoc : documents) {
+                loaded.put(userDoc.getId(), Optional.ofNullable(convertDocumentToProfile(userDoc)));
+            }
+            for (String userId : userIds) {
+                loaded.putIfAbsent(userId, Optional.empty());
+            }
+            return loaded;
+        });
+    }
+
+    /**
+     * Cached display profiles for many users; cache misses are loaded together with getAll and misses
+     * already being loaded by another request are waited for rather than read again.
+     * Users that don't exist are left out of the result.
+     */
+    public Map<String, UserProfile> getUserProfiles(Collection<String> userIds) {
+        return FirestoreFutures.await(getUserProfilesAsync(userIds), "Failed to get user profiles");
+    }
+
+    /**
+     * Non-blocking getUserProfiles: cached profiles complete immediately, profiles already being loaded
+     * are shared and the rest are read together with getAll.
+     */
+    public CompletableFuture<Map<String, UserProfile>> getUserProfilesAsync(Collection<String> userIds) {
+        Set<String> ids = new LinkedHashSet<>();
+        for (String userId : userIds) {
+            if (userId != null && !userId.isEmpty()) {
+                ids.add(userId);
+            }
+        }
+        if (ids.isEmpty()) {
+            return CompletableFuture.completedFuture(new HashMap<>());
+        }
+
+        return profileCache.getAll(ids).thenApply(cached -> {
+            Map<String, UserProfile> profiles = new HashMap<>();
+            cached.forEach((userId, profile) -> profile.ifPresent(p -> profiles.put(userId, p)));
+            return profiles;
+        });
+    }
+
+    /**
+     * Load many users with chunked Firestore getAll calls instead of one read per user.
+     * IDs are de-duplicated; users are returned in request order and missing users are skipped.
+     */
+    public List<User> getUsersByIds(Collection<String> userIds) {
+        List<User> users = new ArrayList<>();
+        for (DocumentSnapshot userDoc : getUserDocumentsByIds(userIds)) {
+            if (userDoc.exists()) {
+                users.add(convertDocumentToUser(userDoc));
+            }
+        }
+        return users;
+    }
+
+    private List<DocumentSnapshot> getUserDocumentsByIds(Collection<? extends String> userIds) {
+        return FirestoreFutures.await(getUserDocumentsByIdsAsync(userIds), "Failed to get users");
+    }
+
+    private CompletableFuture<List<DocumentSnapshot>> getUserDocumentsByIdsAsync(Collection<? extends String> userIds) {
+        List<String> ids = new ArrayList<>(new LinkedHashSet<String>(userIds));
+        ids.removeIf(id -> id == null || id.isEmpty());
+
+        // Issue every chunk before waiting on any of them
+        List<CompletableFuture<List<DocumentSnapshot>>> futures = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += GET_ALL_CHUNK_SIZE) {
+            DocumentReference[] refs = ids.subList(i, Math.min(i + GET_ALL_CHUNK_SIZE, ids.size())).stream()
+                    .map(id -> firestore.collection("users").document(id))
+                    .toArray(DocumentReference[]::new);
+            futures.add(FirestoreFutures.toCompletable(firestore.getAll(refs), callbackExecutor));
+        }
+
+        return FirestoreFutures.allOf(futures).thenApply(chunks -> {
+            List<DocumentSnapshot> documents = new ArrayList<>();
+            chunks.forEach(documents::addAll);
+            return documents;
+        });
+    }
+
+    private User convertDocumentToUser(DocumentSnapshot userDoc) {
+        // Manually extract fields to avoid LocalDateTime deserialization issue
+        return User.builder()
+                .id(userDoc.getId())
+                .firstName(userDoc.getString("firstName"))
+                .lastName(userDoc.getString("lastName"))
+                .email(userDoc.getString("email"))
+                .profilePicture(userDoc.getString("profilePicture"))
+                .role(userDoc.getString("role"))
+                .enabled(userDoc.getBoolean("enabled"))
+                // Skip createdAt and updatedAt to avoid conversion issues
+                .build();
+    }
+
+    private UserProfile convertDocumentToProfile(DocumentSnapshot userDoc) {
+        if (!userDoc.exists()) {
+            return null;
+        }
+        return UserProfile.builder()
+                .id(userDoc.getId())
+                .firstName(userDoc.getString("firstName"))
+                .lastName(userDoc.getString("lastName"))
+                .email(userDoc.getString("email"))
+                .profilePicture(userDoc.getString("profilePicture"))
+                .role(userDoc.getString("role"))
+                .build();
     }
 
     public List<User> getFollowers(String userId) throws ExecutionException, InterruptedException {
-        List<User> followers = new ArrayList<>();
-        
         try {
             QuerySnapshot followingSnapshot = firestore.collection("follows")
                     .whereEqualTo("followerID", userId)
                     .get()
                     .get();
 
+            List<String> followedUserIds = new ArrayList<>();
             for (DocumentSnapshot doc : followingSnapshot.getDocuments()) {
                 String followedUserId = doc.getString("followingID");
-                
-                if (followedUserId == null || followedUserId.isEmpty()) {
-                    continue;
-                }
-                
-                // Get user details from users collection
-                DocumentSnapshot userDoc = firestore.collection("users")
-                        .document(followedUserId)
-                        .get()
-                        .get();
-                
-                if (userDoc.exists()) {
-                    // Manually extract fields to avoid LocalDateTime deserialization issue
-                    User user = User.builder()
-                            .id(userDoc.getId())
-                            .firstName(userDoc.getString("firstName"))
-                            .lastName(userDoc.getString("lastName"))
-                            .email(userDoc.getString("email"))
-                            .profilePicture(userDoc.getString("profilePicture"))
-                            .role(userDoc.getString("role"))
-                            .enabled(userDoc.getBoolean("enabled"))
-                            // Skip createdAt and updatedAt to avoid conversion issues
-                            .build();
-                    
-                    followers.add(user);
-                    System.out.println("Added user: " + user.getFirstName() + " " + user.getLastName());
-                } else {
-                    System.out.println("User document not found for ID: " + followedUserId);
+                if (followedUserId != null && !followedUserId.isEmpty()) {
+                    followedUserIds.add(followedUserId);
                 }
             }
 
+            // Get user details from users collection in one batched read
+            List<User> followers = getUsersByIds(followedUserIds);
+            System.out.println("Loaded " + followers.size() + " of " + followedUserIds.size() + " followed user(s) for " + userId);
+            return followers;
+
         } catch (Exception e) {
             System.err.println("Error in getFollowers: " + e.getMessage());
             e.printStackTrace();
             throw new RuntimeException("Failed to get followers: " + e.getMessage());
         }
-        
-        return followers;
     }
 }
@@ -0,0 +1,100 @@
+package com.datn.trip_service.controller;
+
+import com.datn.trip_service.dto.CommentPage;
+import com.datn.trip_service.dto.PlanBatchResponse;
+import com.datn.trip_service.service.PlanService;
+import com.datn.trip_service.service.TripService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PlanControllerTest {
+
+    private PlanService planService;
+    private TripService tripService;
+    private PlanController controller;
+
+    @BeforeEach
+    void setUp() {
+        planService = mock(PlanService.class);
+        tripService = mock(TripService.class);
+        controller = new PlanController();
+        ReflectionTestUtils.setField(controller, "planService", planService);
+        ReflectionTestUtils.setField(controller, "tripService", tripService);
+
+        when(planService.findTripIdOfPlan("plan-1")).thenReturn("trip-1");
+        when(tripService.canViewTrip("trip-1", "member")).thenReturn(true);
+        when(tripService.canViewTrip("trip-1", "stranger")).thenReturn(false);
+    }
+
+    @Test
+    void planOfAnotherTripIsNotFound() {
+        assertThat(controller.getComments("trip-2", "plan-1", "member", 20, null).getStatusCode())
+                .isEqualTo(HttpStatus.NOT_FOUND);
+        assertThat(controller.likePlan("trip-2", "plan-1", "member").getStatusCode())
+                .isEqualTo(HttpStatus.NOT_FOUND);
+        assertThat(controller.getComments("trip-1", "missing", "member", 20, null).getStatusCode())
+                .isEqualTo(HttpStatus.NOT_FOUND);
+
+        verify(planService, never()).setLiked(anyString(), anyString(), anyBoolean());
+    }
+
+    @Test
+    void usersWhoCannotViewTheTripAreForbidden() {
+        assertThat(controller.getComments("trip-1", "plan-1", "stranger", 20, null).getStatusCode())
+                .isEqualTo(HttpStatus.FORBIDDEN);
+        assertThat(controller.addComment("trip-1", "plan-1", "stranger", Map.of("content", "hi")).getStatusCode())
+                .isEqualTo(HttpStatus.FORBIDDEN);
+        assertThat(controller.deleteComment("trip-1", "plan-1", "c-1", "stranger").getStatusCode())
+                .isEqualTo(HttpStatus.FORBIDDEN);
+        assertThat(controller.setLiked("trip-1", "plan-1", "stranger", Map.of("liked", true)).getStatusCode())
+                .isEqualTo(HttpStatus.FORBIDDEN);
+        assertThat(controller.unlikePlan("trip-1", "plan-1", "stranger").getStatusCode())
+                .isEqualTo(HttpStatus.FORBIDDEN);
+        assertThat(controller.getMyLike("trip-1", "plan-1", "stranger").getStatusCode())
+                .isEqualTo(HttpStatus.FORBIDDEN);
+
+        verify(planService, never()).addComment(anyString(), anyString(), anyString(), anyString());
+        verify(planService, never()).setLiked(anyString(), anyString(), anyBoolean());
+    }
+
+    @Test
+    void viewersReachTheEngagement() {
+        when(planService.getComments("plan-1", 20, null)).thenReturn(new CommentPage());
+        when(planService.setLiked("plan-1", "member", true)).thenReturn(3L);
+
+        assertThat(controller.getComments("trip-1", "plan-1", "member", 20, null).getStatusCode())
+                .isEqualTo(HttpStatus.OK);
+        assertThat(controller.likePlan("trip-1", "plan-1", "member").getBody())
+                .containsEntry("likeCount", 3L);
+    }
+
+    @Test
+    void oversizedBatchIsRejectedWithAnError() {
+        List<Map<String, Object>> items = Collections.nCopies(PlanService.MAX_BATCH_SIZE + 1, Map.of("type", "TOUR"));
+
+        ResponseEntity<PlanBatchResponse> tooLong = controller.createPlans("trip-1", "member", items);
+        ResponseEntity<PlanBatchResponse> missing = controller.createPlans("trip-1", "member", null);
+
+        assertThat(tooLong.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(tooLong.getBody().getError()).contains("501");
+        assertThat(missing.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(missing.getBody().getError()).isNotBlank();
+        verify(planService, never()).createPlans(anyString(), anyList());
+    }
+}
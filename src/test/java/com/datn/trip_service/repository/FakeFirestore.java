@@ -0,0 +1,603 @@
+package com.datn.trip_service.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.api.core.SettableApiFuture;
+import com.google.api.gax.grpc.GrpcStatusCode;
+import com.google.api.gax.rpc.ApiExceptionFactory;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.BulkWriter;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.SetOptions;
+import com.google.cloud.firestore.Transaction;
+import com.google.cloud.firestore.WriteBatch;
+import com.google.cloud.firestore.WriteResult;
+import io.grpc.Status;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * In-memory stand-in for the parts of the Firestore API the repositories use, for tests that count
+ * round trips. Documents are kept by path; every RPC is counted by kind. Futures are already complete,
+ * so with a direct callback executor the whole read runs on the calling thread. With setReadLatency,
+ * reads are answered later from a timer instead, like RPCs in flight.
+ *
+ * Transactions run one at a time and apply their writes on commit. Transactions and WriteBatches,
+ * like Firestore's, fail to commit more than 500 writes. Supported field transforms are increment,
+ * delete, arrayUnion and arrayRemove. BulkWriter writes and recursive deletes apply immediately.
+ */
+public class FakeFirestore {
+
+    public static final int MAX_BATCH_WRITES = 500;
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final String DOCUMENT_ID = "__name__";
+
+    private final Map<String, Map<String, Object>> documents = new ConcurrentSkipListMap<>();
+    private final Map<String, DocumentReference> documentRefs = new ConcurrentHashMap<>();
+    private final Map<String, CollectionReference> collectionRefs = new ConcurrentHashMap<>();
+    private final Object transactionLock = new Object();
+    // Result of direct document writes; its update time is null like that of every snapshot
+    private final WriteResult writeResult = mock(WriteResult.class);
+
+    public final AtomicInteger documentGets = new AtomicInteger();
+    public final AtomicInteger queries = new AtomicInteger();
+    public final AtomicInteger getAlls = new AtomicInteger();
+    public final AtomicInteger transactions = new AtomicInteger();
+    public final AtomicInteger batchCommits = new AtomicInteger();
+    // Most reads waiting for their answer at once, with a read latency set
+    public final AtomicInteger peakReadsInFlight = new AtomicInteger();
+    private final AtomicInteger readsInFlight = new AtomicInteger();
+
+    private volatile ScheduledExecutorService latencyTimer;
+    private volatile long latencyMillis;
+
+    private final Firestore firestore = mock(Firestore.class, withSettings().defaultAnswer(this::onFirestore));
+
+    public Firestore firestore() {
+        return firestore;
+    }
+
+    public void put(String path, Map<String, Object> data) {
+        documents.put(path, new HashMap<>(data));
+    }
+
+    public Map<String, Object> get(String path) {
+        return documents.get(path);
+    }
+
+    /**
+     * Paths of the documents directly under a collection
+     */
+    public List<String> list(String collectionPath) {
+        List<String> paths = new ArrayList<>();
+        for (String path : documents.keySet()) {
+            if (isChildOf(path, collectionPath)) {
+                paths.add(path);
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Answer document gets, queries and getAll calls after the given delay, from the timer's thread.
+     * The snapshot is taken when the read is issued.
+     */
+    public void setReadLatency(ScheduledExecutorService timer, long millis) {
+        latencyMillis = millis;
+        latencyTimer = timer;
+    }
+
+    /**
+     * Read round trips so far: document gets, queries and getAll calls
+     */
+    public int reads() {
+        return documentGets.get() + queries.get() + getAlls.get();
+    }
+
+    public void resetCounts() {
+        documentGets.set(0);
+        queries.set(0);
+        getAlls.set(0);
+        transactions.set(0);
+        batchCommits.set(0);
+    }
+
+    private Object onFirestore(InvocationOnMock invocation) throws Throwable {
+        switch (invocation.getMethod().getName()) {
+            case "collection":
+                return collection(invocation.getArgument(0));
+            case "document":
+                return document(invocation.getArgument(0));
+            case "getAll":
+                getAlls.incrementAndGet();
+                List<DocumentSnapshot> snapshots = new ArrayList<>();
+                for (DocumentReference reference : (DocumentReference[]) invocation.getRawArguments()[0]) {
+                    snapshots.add(snapshot(reference.getPath()));
+                }
+                return answer(snapshots);
+            case "runTransaction":
+                return runTransaction(invocation.getArgument(0));
+            case "batch":
+                return batch();
+            case "bulkWriter":
+                return mock(BulkWriter.class, withSettings().defaultAnswer(writer ->
+                        ApiFuture.class.isAssignableFrom(writer.getMethod().getReturnType()) ? ApiFutures.immediateFuture(null) : null));
+            case "recursiveDelete":
+                recursiveDelete(invocation.getArgument(0));
+                return ApiFutures.immediateFuture(null);
+            default:
+                throw new UnsupportedOperationException(invocation.getMethod().toString());
+        }
+    }
+
+    // A document or collection reference, with everything below it
+    private void recursiveDelete(Object reference) {
+        String path = reference instanceof DocumentReference
+                ? ((DocumentReference) reference).getPath() : ((CollectionReference) reference).getPath();
+        documents.keySet().removeIf(key -> key.equals(path) || key.startsWith(path + "/"));
+    }
+
+    private CollectionReference collection(String path) {
+        return collectionRefs.computeIfAbsent(path, key -> {
+            Answer<Object> queryAnswer = query(new QuerySpec(key));
+            return mock(CollectionReference.class, withSettings().defaultAnswer(invocation -> {
+                switch (invocation.getMethod().getName()) {
+                    case "document":
+                        String id = invocation.getArguments().length > 0
+                                ? invocation.getArgument(0) : UUID.randomUUID().toString().replace("-", "");
+                        return document(key + "/" + id);
+                    case "getId":
+                        return key.substring(key.lastIndexOf('/') + 1);
+                    case "getPath":
+                        return key;
+                    case "getParent":
+                        return key.contains("/") ? document(key.substring(0, key.lastIndexOf('/'))) : null;
+                    case "toString":
+                        return key;
+                    default:
+                        return queryAnswer.answer(invocation);
+                }
+            }));
+        });
+    }
+
+    private DocumentReference document(String path) {
+        return documentRefs.computeIfAbsent(path, key -> mock(DocumentReference.class, withSettings().defaultAnswer(invocation -> {
+            Object[] args = invocation.getArguments();
+            switch (invocation.getMethod().getName()) {
+                case "getId":
+                    return key.substring(key.lastIndexOf('/') + 1);
+                case "getPath":
+                    return key;
+                case "getParent":
+                    return collection(key.substring(0, key.lastIndexOf('/')));
+                case "collection":
+                    return collection(key + "/" + args[0]);
+                case "get":
+                    documentGets.incrementAndGet();
+                    return answer(snapshot(key));
+                case "set":
+                    apply(key, asMap(args[0]), args.length > 1);
+                    return ApiFutures.immediateFuture(writeResult);
+                case "create":
+                    apply(key, asMap(args[0]), false);
+                    return ApiFutures.immediateFuture(writeResult);
+                case "update":
+                    if (!documents.containsKey(key)) {
+                        return ApiFutures.immediateFailedFuture(ApiExceptionFactory.createException(
+                                new RuntimeException("No document to update: " + key),
+                                GrpcStatusCode.of(Status.Code.NOT_FOUND), false));
+                    }
+                    apply(key, updates(args, 0), true);
+                    return ApiFutures.immediateFuture(writeResult);
+                case "delete":
+                    documents.remove(key);
+                    return ApiFutures.immediateFuture(writeResult);
+                case "toString":
+                    return key;
+                default:
+                    throw new UnsupportedOperationException(invocation.getMethod().toString());
+            }
+        })));
+    }
+
+    private <T> ApiFuture<T> answer(T value) {
+        ScheduledExecutorService timer = latencyTimer;
+        if (timer == null) {
+            return ApiFutures.immediateFuture(value);
+        }
+        SettableApiFuture<T> future = SettableApiFuture.create();
+        peakReadsInFlight.accumulateAndGet(readsInFlight.incrementAndGet(), Math::max);
+        timer.schedule(() -> {
+            readsInFlight.decrementAndGet();
+            future.set(value);
+        }, latencyMillis, TimeUnit.MILLISECONDS);
+        return future;
+    }
+
+    private Answer<Object> query(QuerySpec spec) {
+        return invocation -> {
+            Object[] args = invocation.getArguments();
+            switch (invocation.getMethod().getName()) {
+                case "whereEqualTo":
+                    return queryMock(spec.where(document -> Objects.equals(document.get(field(args[0])), args[1])));
+                case "whereIn":
+                    return queryMock(spec.where(document -> ((Collection<?>) args[1]).contains(document.get(field(args[0])))));
+                case "whereArrayContains":
+                    return queryMock(spec.where(document -> document.get(field(args[0])) instanceof Collection
+                            && ((Collection<?>) document.get(field(args[0]))).contains(args[1])));
+                case "orderBy":
+                    return queryMock(spec.orderBy(field(args[0]),
+                            args.length > 1 && args[1] == Query.Direction.DESCENDING));
+                case "limit":
+                    return queryMock(spec.limit((Integer) args[0]));
+                case "startAfter":
+                    return queryMock(spec.startAfter(args));
+                case "select":
+                    return queryMock(spec);
+                case "get":
+                    queries.incrementAndGet();
+                    return answer(querySnapshot(spec.run()));
+                default:
+                    throw new UnsupportedOperationException(invocation.getMethod().toString());
+            }
+        };
+    }
+
+    private Query queryMock(QuerySpec spec) {
+        return mock(Query.class, withSettings().defaultAnswer(query(spec)));
+    }
+
+    private ApiFuture<Object> runTransaction(Transaction.Function<?> function) {
+        transactions.incrementAndGet();
+        synchronized (transactionLock) {
+            List<Runnable> pending = new ArrayList<>();
+            Transaction transaction = mock(Transaction.class, withSettings().defaultAnswer(invocation -> {
+                Object[] args = invocation.getArguments();
+                switch (invocation.getMethod().getName()) {
+                    case "get":
+                        documentGets.incrementAndGet();
+                        return ApiFutures.immediateFuture(snapshot(((DocumentReference) args[0]).getPath()));
+                    case "set":
+                        pending.add(() -> apply(path(args[0]), asMap(args[1]), args.length > 2));
+                        break;
+                    case "create":
+                        pending.add(() -> apply(path(args[0]), asMap(args[1]), false));
+                        break;
+                    case "update":
+                        Map<String, Object> updates = updates(args, 1);
+                        pending.add(() -> apply(path(args[0]), updates, true));
+                        break;
+                    case "delete":
+                        pending.add(() -> documents.remove(path(args[0])));
+                        break;
+                    default:
+                        throw new UnsupportedOperationException(invocation.getMethod().toString());
+                }
+                return invocation.getMock();
+            }));
+            try {
+                Object result = function.updateCallback(transaction);
+                if (pending.size() > MAX_BATCH_WRITES) {
+                    throw new IllegalArgumentException("maximum " + MAX_BATCH_WRITES + " writes allowed per request");
+                }
+                pending.forEach(Runnable::run);
+                return ApiFutures.immediateFuture(result);
+            } catch (Exception e) {
+                return ApiFutures.immediateFailedFuture(e);
+            }
+        }
+    }
+
+    private WriteBatch batch() {
+        List<Runnable> pending = new ArrayList<>();
+        return mock(WriteBatch.class, withSettings().defaultAnswer(invocation -> {
+            Object[] args = invocation.getArguments();
+            switch (invocation.getMethod().getName()) {
+                case "set":
+                    pending.add(() -> apply(path(args[0]), asMap(args[1]), args.length > 2));
+                    break;
+                case "create":
+                    pending.add(() -> apply(path(args[0]), asMap(args[1]), false));
+                    break;
+                case "update":
+                    Map<String, Object> updates = updates(args, 1);
+                    pending.add(() -> apply(path(args[0]), updates, true));
+                    break;
+                case "delete":
+                    pending.add(() -> documents.remove(path(args[0])));
+                    break;
+                case "getMutationsSize":
+                    return pending.size();
+                case "commit":
+                    if (pending.size() > MAX_BATCH_WRITES) {
+                        return ApiFutures.immediateFailedFuture(new IllegalArgumentException(
+                                "maximum " + MAX_BATCH_WRITES + " writes allowed per request"));
+                    }
+                    batchCommits.incrementAndGet();
+                    synchronized (transactionLock) {
+                        pending.forEach(Runnable::run);
+                    }
+                    return ApiFutures.immediateFuture(new ArrayList<>());
+                default:
+                    throw new UnsupportedOperationException(invocation.getMethod().toString());
+            }
+            return invocation.getMock();
+        }));
+    }
+
+    private synchronized void apply(String path, Map<String, Object> data, boolean merge) {
+        Map<String, Object> current = documents.get(path);
+        Map<String, Object> updated = merge && current != null ? new HashMap<>(current) : new HashMap<>();
+        data.forEach((field, value) -> {
+            if (value == FieldValue.delete() || FieldValue.delete().equals(value)) {
+                updated.remove(field);
+            } else if (value instanceof FieldValue) {
+                updated.put(field, transform(updated.get(field), (FieldValue) value));
+            } else {
+                updated.put(field, value);
+            }
+        });
+        documents.put(path, updated);
+    }
+
+    // Transforms keep their operands in package-private fields of package-private subclasses
+    private static Object transform(Object current, FieldValue value) {
+        String kind = value.getClass().getSimpleName();
+        if (kind.equals("ArrayUnionFieldValue") || kind.equals("ArrayRemoveFieldValue")) {
+            List<Object> elements = new ArrayList<>(current instanceof List ? (List<?>) current : List.of());
+            for (Object element : (List<?>) operand(value, "elements")) {
+                if (kind.equals("ArrayRemoveFieldValue")) {
+                    elements.removeIf(element::equals);
+                } else if (!elements.contains(element)) {
+                    elements.add(element);
+                }
+            }
+            return elements;
+        }
+        long base = current instanceof Number ? ((Number) current).longValue() : 0L;
+        return base + ((Number) operand(value, "operand")).longValue();
+    }
+
+    private static Object operand(FieldValue value, String name) {
+        try {
+            Field operand = value.getClass().getDeclaredField(name);
+            operand.setAccessible(true);
+            return operand.get(value);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Unsupported field transform " + value, e);
+        }
+    }
+
+    // update(ref, Map) or update(ref, field, value, field, value...) with the reference at argument offset
+    private static Map<String, Object> updates(Object[] args, int offset) {
+        if (args[offset] instanceof Map) {
+            return asMap(args[offset]);
+        }
+        Map<String, Object> updates = new HashMap<>();
+        List<Object> pairs = new ArrayList<>(Arrays.asList(args).subList(offset, args.length));
+        for (int i = 0; i + 1 < pairs.size(); i += 2) {
+            updates.put(field(pairs.get(i)), pairs.get(i + 1));
+        }
+        return updates;
+    }
+
+    @SuppressWarnings("unchecked")
+    // Objects are stored by their bean properties, roughly as Firestore maps them
+    private static Map<String, Object> asMap(Object data) {
+        if (data instanceof Map) {
+            return (Map<String, Object>) data;
+        }
+        return OBJECT_MAPPER.convertValue(data, Map.class);
+    }
+
+    private static String path(Object reference) {
+        return ((DocumentReference) reference).getPath();
+    }
+
+    private static String field(Object field) {
+        if (field instanceof FieldPath) {
+            return FieldPath.documentId().equals(field) ? DOCUMENT_ID : field.toString();
+        }
+        return (String) field;
+    }
+
+    private static boolean isChildOf(String path, String collectionPath) {
+        return path.startsWith(collectionPath + "/") && path.indexOf('/', collectionPath.length() + 1) < 0;
+    }
+
+    private QueryDocumentSnapshot snapshot(String path) {
+        Map<String, Object> data = documents.get(path);
+        String id = path.substring(path.lastIndexOf('/') + 1);
+        DocumentReference reference = document(path);
+        return mock(QueryDocumentSnapshot.class, withSettings().defaultAnswer(invocation -> {
+            Object[] args = invocation.getArguments();
+            Object value = args.length > 0 && data != null ? data.get(field(args[0])) : null;
+            switch (invocation.getMethod().getName()) {
+                case "getId":
+                    return id;
+                case "getReference":
+                    return reference;
+                case "exists":
+                    return data != null;
+                case "contains":
+                    return data != null && data.containsKey(field(args[0]));
+                case "getData":
+                    return data != null ? new HashMap<>(data) : null;
+                case "get":
+                    return value;
+                case "getString":
+                    return (String) value;
+                case "getBoolean":
+                    return (Boolean) value;
+                case "getLong":
+                    return value instanceof Number ? ((Number) value).longValue() : null;
+                case "getDouble":
+                    return value instanceof Number ? ((Number) value).doubleValue() : null;
+                case "getTimestamp":
+                    return (Timestamp) value;
+                case "getCreateTime":
+                case "getUpdateTime":
+                case "getReadTime":
+                    return null;
+                case "toString":
+                    return path;
+                default:
+                    throw new UnsupportedOperationException(invocation.getMethod().toString());
+            }
+        }));
+    }
+
+    private QuerySnapshot querySnapshot(List<QueryDocumentSnapshot> results) {
+        return mock(QuerySnapshot.class, withSettings().defaultAnswer(invocation -> {
+            switch (invocation.getMethod().getName()) {
+                case "getDocuments":
+                    return results;
+                case "size":
+                    return results.size();
+                case "isEmpty":
+                    return results.isEmpty();
+                case "iterator":
+                    return results.iterator();
+                default:
+                    throw new UnsupportedOperationException(invocation.getMethod().toString());
+            }
+        }));
+    }
+
+    private final class QuerySpec {
+        private final String collectionPath;
+        private final List<Predicate<Map<String, Object>>> filters;
+        private final List<String> orderBy;
+        // Parallel to orderBy
+        private final List<Boolean> descending;
+        private final int limit;
+        private final Object[] startAfter;
+
+        private QuerySpec(String collectionPath) {
+            this(collectionPath, List.of(), List.of(), List.of(), Integer.MAX_VALUE, null);
+        }
+
+        private QuerySpec(String collectionPath, List<Predicate<Map<String, Object>>> filters, List<String> orderBy,
+                          List<Boolean> descending, int limit, Object[] startAfter) {
+            this.collectionPath = collectionPath;
+            this.filters = filters;
+            this.orderBy = orderBy;
+            this.descending = descending;
+            this.limit = limit;
+            this.startAfter = startAfter;
+        }
+
+        private QuerySpec where(Predicate<Map<String, Object>> filter) {
+            List<Predicate<Map<String, Object>>> all = new ArrayList<>(filters);
+            all.add(filter);
+            return new QuerySpec(collectionPath, all, orderBy, descending, limit, startAfter);
+        }
+
+        private QuerySpec orderBy(String field, boolean desc) {
+            List<String> fields = new ArrayList<>(orderBy);
+            fields.add(field);
+            List<Boolean> directions = new ArrayList<>(descending);
+            directions.add(desc);
+            return new QuerySpec(collectionPath, filters, fields, directions, limit, startAfter);
+        }
+
+        private QuerySpec limit(int limit) {
+            return new QuerySpec(collectionPath, filters, orderBy, descending, limit, startAfter);
+        }
+
+        private QuerySpec startAfter(Object[] values) {
+            return new QuerySpec(collectionPath, filters, orderBy, descending, limit, values);
+        }
+
+        private List<QueryDocumentSnapshot> run() {
+            List<Map.Entry<String, Map<String, Object>>> matches = new ArrayList<>();
+            for (Map.Entry<String, Map<String, Object>> entry : documents.entrySet()) {
+                if (isChildOf(entry.getKey(), collectionPath) && filters.stream().allMatch(filter -> filter.test(entry.getValue()))) {
+                    matches.add(entry);
+                }
+            }
+            // Paths are kept sorted, which is document ID order within a collection
+            Comparator<Map.Entry<String, Map<String, Object>>> order = (a, b) -> 0;
+            for (int i = 0; i < orderBy.size(); i++) {
+                String field = orderBy.get(i);
+                Comparator<Object> values = FakeFirestore::compareValues;
+                order = order.thenComparing(entry -> sortKey(entry, field), descending.get(i) ? values.reversed() : values);
+            }
+            matches.sort(order);
+
+            List<QueryDocumentSnapshot> results = new ArrayList<>();
+            for (Map.Entry<String, Map<String, Object>> entry : matches) {
+                if (startAfter != null && !isAfter(entry)) {
+                    continue;
+                }
+                if (results.size() == limit) {
+                    break;
+                }
+                results.add(snapshot(entry.getKey()));
+            }
+            return results;
+        }
+
+        private boolean isAfter(Map.Entry<String, Map<String, Object>> entry) {
+            List<String> fields = orderBy.isEmpty() ? List.of(DOCUMENT_ID) : orderBy;
+            for (int i = 0; i < startAfter.length && i < fields.size(); i++) {
+                int compared = compareValues(sortKey(entry, fields.get(i)), startAfter[i]);
+                if (i < descending.size() && descending.get(i)) {
+                    compared = -compared;
+                }
+                if (compared != 0) {
+                    return compared > 0;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static Object sortKey(Map.Entry<String, Map<String, Object>> entry, String field) {
+        return DOCUMENT_ID.equals(field)
+                ? entry.getKey().substring(entry.getKey().lastIndexOf('/') + 1)
+                : entry.getValue().get(field);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareValues(Object a, Object b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        if (a instanceof Number && b instanceof Number) {
+            return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        }
+        return ((Comparable) a).compareTo(b);
+    }
+}
@@ -0,0 +1,59 @@
+package com.datn.trip_service.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FollowGraphTest {
+
+    private FollowGraph graph;
+
+    @BeforeEach
+    void setUp() {
+        graph = new FollowGraph();
+        graph.put("f1", "alice", "bob");
+        graph.put("f2", "carol", "bob");
+        graph.markReady();
+    }
+
+    @Test
+    void answersFromTheLoadedFollows() {
+        assertThat(graph.isFollowing("alice", "bob")).isTrue();
+        assertThat(graph.isFollowing("bob", "alice")).isFalse();
+    }
+
+    @Test
+    void duplicateFollowDocumentsKeepTheRelationshipUntilTheLastIsRemoved() {
+        graph.put("f3", "alice", "bob");
+
+        graph.remove("f1");
+        assertThat(graph.isFollowing("alice", "bob")).isTrue();
+
+        graph.remove("f3");
+        assertThat(graph.isFollowing("alice", "bob")).isFalse();
+    }
+
+    @Test
+    void changesMoveOnlyTheFollowersVersion() {
+        long alice = graph.version("alice");
+        long carol = graph.version("carol");
+
+        graph.put("f1", "alice", "dave");
+
+        assertThat(graph.version("alice")).isGreaterThan(alice);
+        assertThat(graph.version("carol")).isEqualTo(carol);
+        assertThat(graph.isFollowing("alice", "bob")).isFalse();
+        assertThat(graph.isFollowing("alice", "dave")).isTrue();
+    }
+
+    @Test
+    void resetInvalidatesEveryFollowerWithFollows() {
+        long carol = graph.version("carol");
+
+        graph.reset();
+
+        assertThat(graph.version("carol")).isGreaterThan(carol);
+        assertThat(graph.isFollowing("carol", "bob")).isFalse();
+    }
+}
@@ -0,0 +1,206 @@
+package com.datn.trip_service.repository;
+
+import com.datn.trip_service.model.PlanComment;
+import com.google.firebase.cloud.FirestoreClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mockStatic;
+
+class PlanEngagementRepositoryTest {
+
+    private static final int USERS = 16;
+
+    private final FakeFirestore store = new FakeFirestore();
+    private MockedStatic<FirestoreClient> firestoreClient;
+    private PlanEngagementRepository engagementRepository;
+
+    @BeforeEach
+    void setUp() {
+        firestoreClient = mockStatic(FirestoreClient.class);
+        firestoreClient.when(FirestoreClient::getFirestore).thenReturn(store.firestore());
+        Executor direct = Runnable::run;
+
+        TripCache tripCache = new TripCache();
+        ReflectionTestUtils.setField(tripCache, "maximumSize", 100L);
+        ReflectionTestUtils.setField(tripCache, "ttlSeconds", 60L);
+        ReflectionTestUtils.setField(tripCache, "negativeTtlSeconds", 5L);
+        tripCache.init();
+
+        PlanLikeCounter likeCounter = new PlanLikeCounter();
+        ReflectionTestUtils.setField(likeCounter, "callbackExecutor", direct);
+        ReflectionTestUtils.setField(likeCounter, "shardCount", 4);
+        ReflectionTestUtils.setField(likeCounter, "cacheTtlSeconds", 60L);
+        ReflectionTestUtils.setField(likeCounter, "cacheMaximumSize", 100L);
+        likeCounter.init();
+
+        engagementRepository = new PlanEngagementRepository();
+        ReflectionTestUtils.setField(engagementRepository, "tripCache", tripCache);
+        ReflectionTestUtils.setField(engagementRepository, "likeCounter", likeCounter);
+        ReflectionTestUtils.setField(engagementRepository, "callbackExecutor", direct);
+
+        store.put("plans/plan-1", Map.of("tripId", "trip-1", "title", "Old Quarter", "type", "ACTIVITY", "likeCount", 2L));
+    }
+
+    @AfterEach
+    void tearDown() {
+        firestoreClient.close();
+    }
+
+    @Test
+    void concurrentLikesAndUnlikesKeepTheCountRight() throws Exception {
+        List<Long> likes = runConcurrently(user -> engagementRepository.setLiked("plan-1", "user-" + user, true));
+
+        assertThat(store.list("plans/plan-1/likes")).hasSize(USERS);
+        assertThat(shardTotal()).isEqualTo(USERS);
+        // Each call sees at least its own like, and the last one to commit sees them all
+        assertThat(likes).allMatch(count -> count > 2 && count <= 2 + USERS).contains(2L + USERS);
+
+        // Half the users unlike while the other half like again, which changes nothing
+        List<Long> mixed = runConcurrently(user -> engagementRepository.setLiked("plan-1", "user-" + user, user % 2 == 0));
+
+        assertThat(store.list("plans/plan-1/likes")).hasSize(USERS / 2);
+        assertThat(shardTotal()).isEqualTo(USERS / 2);
+        assertThat(mixed).allMatch(count -> count >= 2 + USERS / 2 && count <= 2 + USERS);
+        assertThat(engagementRepository.setLiked("plan-1", "user-0", true)).isEqualTo(2 + USERS / 2);
+    }
+
+    @Test
+    void likeIsCountedWithoutReadingThePlanAgain() {
+        engagementRepository.setLiked("plan-1", "alice", true);
+        store.resetCounts();
+
+        long count = engagementRepository.setLiked("plan-1", "bob", true);
+
+        assertThat(count).isEqualTo(4);
+        // The plan and like documents inside the transaction; the shard sum comes from the cache
+        assertThat(store.documentGets.get()).isEqualTo(2);
+        assertThat(store.reads()).isEqualTo(2);
+
+        assertThat(engagementRepository.setLiked("plan-1", "alice", false)).isEqualTo(3);
+        assertThat(engagementRepository.setLiked("plan-1", "alice", false)).isEqualTo(3);
+    }
+
+    @Test
+    void largeLegacyPlanIsMigratedInChunksThatFitATransaction() {
+        store.put("plans/legacy", legacyPlan(700, 400));
+
+        engagementRepository.migrateLegacyPlan("legacy");
+
+        // 1100 entries in chunks of 499; only the last one clears the arrays
+        assertThat(store.transactions.get()).isEqualTo(3);
+        assertThat(store.list("plans/legacy/likes")).hasSize(700);
+        assertThat(store.list("plans/legacy/comments")).hasSize(400).contains("plans/legacy/comments/legacy-0");
+        assertThat(store.get("plans/legacy"))
+                .containsEntry("likeCount", 700L)
+                .containsEntry("commentCount", 400L)
+                .doesNotContainKeys("likes", "comments", "legacyEngagementCopied");
+
+        engagementRepository.migrateLegacyPlan("legacy");
+        assertThat(store.transactions.get()).isEqualTo(4);
+    }
+
+    @Test
+    void interruptedMigrationContinuesFromTheRecordedCount() {
+        Map<String, Object> plan = legacyPlan(700, 0);
+        plan.put("legacyEngagementCopied", 600L);
+        store.put("plans/legacy", plan);
+
+        engagementRepository.migrateLegacyPlan("legacy");
+
+        assertThat(store.transactions.get()).isEqualTo(1);
+        assertThat(store.list("plans/legacy/likes")).hasSize(100).contains("plans/legacy/likes/user-699");
+        assertThat(store.get("plans/legacy")).containsEntry("likeCount", 700L).doesNotContainKeys("likes");
+    }
+
+    @Test
+    void likesAndCommentsOnALargeLegacyPlanMigrateItFirst() {
+        store.put("plans/legacy", legacyPlan(600, 1));
+
+        assertThat(engagementRepository.setLiked("legacy", "user-0", false)).isEqualTo(599);
+        assertThat(store.list("plans/legacy/likes")).hasSize(599).doesNotContain("plans/legacy/likes/user-0");
+        assertThat(engagementRepository.setLiked("legacy", "user-1", true)).isEqualTo(599);
+
+        PlanComment comment = new PlanComment();
+        comment.setUserId("alice");
+        comment.setContent("Nice");
+        engagementRepository.addComment("legacy", comment);
+        assertThat(store.get("plans/legacy")).containsEntry("commentCount", 2L);
+    }
+
+    private static Map<String, Object> legacyPlan(int likes, int comments) {
+        List<Map<String, Object>> legacyLikes = new ArrayList<>();
+        for (int i = 0; i < likes; i++) {
+            legacyLikes.add(Map.of("userId", "user-" + i));
+        }
+        List<Map<String, Object>> legacyComments = new ArrayList<>();
+        for (int i = 0; i < comments; i++) {
+            // The oldest comments predate comment ids
+            legacyComments.add(i == 0 ? Map.of("userId", "user-0", "content", "first")
+                    : Map.of("id", (long) i, "userId", "user-" + i, "content", "comment " + i));
+        }
+        Map<String, Object> plan = new HashMap<>();
+        plan.put("tripId", "trip-1");
+        plan.put("title", "Legacy");
+        plan.put("type", "ACTIVITY");
+        plan.put("likes", legacyLikes);
+        plan.put("comments", legacyComments);
+        return plan;
+    }
+
+    private long shardTotal() {
+        long total = 0;
+        for (String shard : store.list("plans/plan-1/like_shards")) {
+            total += ((Number) store.get(shard).get("count")).longValue();
+        }
+        return total;
+    }
+
+    // Runs the call for every user at once, each thread with its own FirestoreClient stub
+    private List<Long> runConcurrently(UserCall call) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(USERS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            for (int user = 0; user < USERS; user++) {
+                int id = user;
+                Callable<Long> task = () -> {
+                    try (MockedStatic<FirestoreClient> client = mockStatic(FirestoreClient.class)) {
+                        client.when(FirestoreClient::getFirestore).thenReturn(store.firestore());
+                        start.await();
+                        return call.run(id);
+                    }
+                };
+                results.add(pool.submit(task));
+            }
+            start.countDown();
+            List<Long> counts = new ArrayList<>();
+            for (Future<Long> result : results) {
+                counts.add(result.get(10, TimeUnit.SECONDS));
+            }
+            return counts;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private interface UserCall {
+        long run(int user);
+    }
+}
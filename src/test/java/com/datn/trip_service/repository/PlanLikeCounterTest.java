@@ -0,0 +1,107 @@
+package com.datn.trip_service.repository;
+
+import com.datn.trip_service.model.Plan;
+import com.google.firebase.cloud.FirestoreClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.when;
+
+class PlanLikeCounterTest {
+
+    private final FakeFirestore store = new FakeFirestore();
+    // Reads held open until the test releases them
+    private final List<Runnable> pendingReads = new ArrayList<>();
+    private MockedStatic<FirestoreClient> firestoreClient;
+    private PlanLikeCounter likeCounter;
+
+    @BeforeEach
+    void setUp() {
+        firestoreClient = mockStatic(FirestoreClient.class);
+        firestoreClient.when(FirestoreClient::getFirestore).thenReturn(store.firestore());
+        Executor direct = Runnable::run;
+
+        likeCounter = new PlanLikeCounter();
+        ReflectionTestUtils.setField(likeCounter, "callbackExecutor", direct);
+        ReflectionTestUtils.setField(likeCounter, "shardCount", 1);
+        ReflectionTestUtils.setField(likeCounter, "cacheTtlSeconds", 60L);
+        ReflectionTestUtils.setField(likeCounter, "cacheMaximumSize", 100L);
+        likeCounter.init();
+
+        ScheduledExecutorService timer = mock(ScheduledExecutorService.class);
+        when(timer.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class))).thenAnswer(invocation -> {
+            pendingReads.add(invocation.getArgument(0));
+            return null;
+        });
+        store.setReadLatency(timer, 1);
+        store.put("plans/plan-1/like_shards/0", Map.of("count", 3L));
+    }
+
+    @AfterEach
+    void tearDown() {
+        firestoreClient.close();
+    }
+
+    @Test
+    void sumReadWhileAWriteEndedIsNotCached() {
+        Plan plan = plan();
+        CompletableFuture<Void> read = likeCounter.addShardCountsAsync(List.of(plan));
+
+        // A like commits while the shard read is still open
+        likeCounter.beginWrite("plan-1");
+        store.put("plans/plan-1/like_shards/0", Map.of("count", 4L));
+        likeCounter.endWrite("plan-1", true, 1);
+        releaseReads();
+        read.join();
+
+        // The open read saw the shards as they were before the like
+        assertThat(plan.getLikeCount()).isEqualTo(3);
+        store.setReadLatency(null, 0);
+        assertThat(likeCounter.shardSum("plan-1", 1)).isEqualTo(4);
+        assertThat(store.getAlls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void sumReadWithoutOverlappingWritesIsCached() {
+        likeCounter.addShardCountsAsync(List.of(plan()));
+        releaseReads();
+
+        likeCounter.beginWrite("plan-1");
+        store.put("plans/plan-1/like_shards/0", Map.of("count", 4L));
+        likeCounter.endWrite("plan-1", true, 1);
+        store.setReadLatency(null, 0);
+
+        // Adjusted in place, not read again
+        assertThat(likeCounter.shardSum("plan-1", 1)).isEqualTo(4);
+        assertThat(store.getAlls.get()).isEqualTo(1);
+    }
+
+    private void releaseReads() {
+        List<Runnable> reads = new ArrayList<>(pendingReads);
+        pendingReads.clear();
+        reads.forEach(Runnable::run);
+    }
+
+    private static Plan plan() {
+        Plan plan = new Plan();
+        plan.setId("plan-1");
+        plan.setLikeShards(1);
+        return plan;
+    }
+}
@@ -0,0 +1,82 @@
+package com.datn.trip_service.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+class TripDateIndexTest {
+
+    private TripDateIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new TripDateIndex();
+        index.put("short", "alice", "2026-03-10", "2026-03-12");
+        index.put("long", "bob", "2026-01-01", "2026-06-30");
+        index.put("later", "alice", "2026-04-01", "2026-04-05");
+        index.put("undated", "alice", null, "2026-04-05");
+        index.markReady();
+    }
+
+    @Test
+    void findsTripsActiveOnDayIncludingLongRunningOnes() {
+        assertThat(index.findActiveTripIds(LocalDate.parse("2026-03-11")))
+                .containsExactlyInAnyOrder("short", "long");
+        assertThat(index.findActiveTripIds(LocalDate.parse("2026-03-12")))
+                .containsExactlyInAnyOrder("short", "long");
+        assertThat(index.findActiveTripIds(LocalDate.parse("2026-07-01"))).isEmpty();
+    }
+
+    @Test
+    void findsTripsStartingAfterDayNearestFirst() {
+        assertThat(index.findTripIdsStartingAfter(LocalDate.parse("2026-02-01")))
+                .containsExactly("short", "later");
+        assertThat(index.findTripIdsStartingAfterForUser("alice", LocalDate.parse("2026-03-10")))
+                .containsExactly("later");
+    }
+
+    @Test
+    void scopesQueriesToOwner() {
+        assertThat(index.findActiveTripIdsForUser("alice", LocalDate.parse("2026-03-11")))
+                .containsExactly("short");
+        assertThat(index.findActiveTripIdsForUser("carol", LocalDate.parse("2026-03-11"))).isEmpty();
+    }
+
+    @Test
+    void picksNearestUpcomingTripOfOwnersWithoutAnActiveTrip() {
+        index.put("open-ended", "carol", "2026-02-10", null);
+
+        assertThat(index.findNextTripIdByOwner(LocalDate.parse("2026-02-01")))
+                .containsOnly(entry("alice", "short"), entry("carol", "open-ended"));
+        assertThat(index.findNextTripIdByOwner(LocalDate.parse("2026-03-20")))
+                .containsOnly(entry("alice", "later"));
+        assertThat(index.findActiveTripIds(LocalDate.parse("2026-02-10"))).containsExactly("long");
+    }
+
+    @Test
+    void appliesUpdatesAndRemovals() {
+        index.put("short", "alice", "2026-05-01", "2026-05-02");
+        index.remove("long");
+
+        assertThat(index.findActiveTripIds(LocalDate.parse("2026-03-11"))).isEmpty();
+        assertThat(index.findActiveTripIds(LocalDate.parse("2026-05-01"))).containsExactly("short");
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.isReady()).isTrue();
+    }
+
+    @Test
+    void tripThatChangesOwnerOrLosesItsDatesLeavesTheOldSlices() {
+        index.put("short", "carol", "2026-03-10", "2026-03-12");
+        index.put("later", "alice", null, null);
+
+        assertThat(index.findActiveTripIdsForUser("alice", LocalDate.parse("2026-03-11"))).isEmpty();
+        assertThat(index.findActiveTripIdsForUser("carol", LocalDate.parse("2026-03-11"))).containsExactly("short");
+        assertThat(index.findTripIdsStartingAfter(LocalDate.parse("2026-03-20"))).isEmpty();
+        assertThat(index.findNextTripIdByOwner(LocalDate.parse("2026-03-20"))).isEmpty();
+        assertThat(index.size()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,101 @@
+package com.datn.trip_service.repository;
+
+import com.datn.trip_service.model.Plan;
+import com.datn.trip_service.model.Trip;
+import com.google.firebase.cloud.FirestoreClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mockStatic;
+
+class TripRepositoryTest {
+
+    private final FakeFirestore store = new FakeFirestore();
+    private MockedStatic<FirestoreClient> firestoreClient;
+    private TripRepository tripRepository;
+
+    @BeforeEach
+    void setUp() {
+        firestoreClient = mockStatic(FirestoreClient.class);
+        firestoreClient.when(FirestoreClient::getFirestore).thenReturn(store.firestore());
+        Executor direct = Runnable::run;
+
+        TripCache tripCache = new TripCache();
+        ReflectionTestUtils.setField(tripCache, "maximumSize", 100L);
+        ReflectionTestUtils.setField(tripCache, "ttlSeconds", 60L);
+        ReflectionTestUtils.setField(tripCache, "negativeTtlSeconds", 5L);
+        tripCache.init();
+
+        PlanLikeCounter likeCounter = new PlanLikeCounter();
+        ReflectionTestUtils.setField(likeCounter, "callbackExecutor", direct);
+        ReflectionTestUtils.setField(likeCounter, "shardCount", 10);
+        ReflectionTestUtils.setField(likeCounter, "cacheTtlSeconds", 5L);
+        ReflectionTestUtils.setField(likeCounter, "cacheMaximumSize", 100L);
+        likeCounter.init();
+
+        tripRepository = new TripRepository();
+        ReflectionTestUtils.setField(tripRepository, "tripCache", tripCache);
+        ReflectionTestUtils.setField(tripRepository, "likeCounter", likeCounter);
+        ReflectionTestUtils.setField(tripRepository, "callbackExecutor", direct);
+    }
+
+    @AfterEach
+    void tearDown() {
+        firestoreClient.close();
+    }
+
+    @Test
+    void plansOfManyTripsAreLoadedWithOneQueryPerChunk() {
+        for (int i = 0; i < 65; i++) {
+            store.put("trips/trip-" + i, Map.of("userId", "owner", "title", "Trip " + i));
+            store.put("plans/plan-" + i, Map.of("tripId", "trip-" + i, "title", "Plan " + i, "type", "ACTIVITY"));
+        }
+        store.put("plans/plan-extra", Map.of("tripId", "trip-64", "title", "Extra", "type", "ACTIVITY"));
+        store.put("trips/gone", Map.of("userId", "owner", "title", "Gone", "deleted", true));
+        store.put("plans/plan-gone", Map.of("tripId", "gone", "title", "Gone", "type", "ACTIVITY"));
+
+        List<Trip> trips = tripRepository.findByUserId("owner");
+
+        assertThat(trips).hasSize(65);
+        for (Trip trip : trips) {
+            String planId = trip.getId().replace("trip-", "plan-");
+            if (trip.getId().equals("trip-64")) {
+                assertThat(trip.getPlans()).extracting(Plan::getId).containsExactlyInAnyOrder(planId, "plan-extra");
+            } else {
+                assertThat(trip.getPlans()).extracting(Plan::getId).containsExactly(planId);
+            }
+        }
+        // One trips query, then ceil(65 / 30) plan queries; deleted trips are not looked up
+        assertThat(store.queries.get()).isEqualTo(4);
+        assertThat(store.reads()).isEqualTo(4);
+    }
+
+    @Test
+    void userWithoutTripsCostsASingleQuery() {
+        assertThat(tripRepository.findByUserId("nobody")).isEmpty();
+        assertThat(store.reads()).isEqualTo(1);
+    }
+
+    @Test
+    void readForUpdateSkipsTheCachedCopy() {
+        store.put("trips/trip-1", Map.of("userId", "owner", "title", "Hanoi"));
+        assertThat(tripRepository.findById("trip-1")).get().extracting(Trip::getTitle).isEqualTo("Hanoi");
+        // Written by another instance, whose cache invalidation does not reach this one
+        store.put("trips/trip-1", Map.of("userId", "owner", "title", "Hue"));
+
+        assertThat(tripRepository.findById("trip-1")).get().extracting(Trip::getTitle).isEqualTo("Hanoi");
+        Trip current = tripRepository.findByIdForUpdate("trip-1").orElseThrow();
+        assertThat(current.getTitle()).isEqualTo("Hue");
+
+        tripRepository.update(current, changed -> changed.setContent("Notes"));
+        assertThat(store.get("trips/trip-1")).containsEntry("title", "Hue").containsEntry("content", "Notes");
+    }
+}
@@ -0,0 +1,87 @@
+package com.datn.trip_service.service;
+
+import com.datn.trip_service.dto.AdventureResponse;
+import com.datn.trip_service.model.User;
+import com.datn.trip_service.repository.FakeFirestore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdventureFeedServiceTest {
+
+    private final FakeFirestore store = new FakeFirestore();
+    private AdventureFeedService feedService;
+
+    @BeforeEach
+    void setUp() {
+        feedService = new AdventureFeedService();
+        ReflectionTestUtils.setField(feedService, "firestore", store.firestore());
+    }
+
+    @Test
+    void pagesAreFilledPastTheExcludedUsersTrips() {
+        // Newest first: trip-10 .. trip-1, the five newest belong to the viewer
+        for (int i = 1; i <= 10; i++) {
+            putEntry("trip-" + i, i > 5 ? "viewer" : "other", i);
+        }
+
+        AdventureResponse first = feedService.getFeed("viewer", 3, null);
+        assertThat(tripIds(first)).containsExactly("trip-5", "trip-4", "trip-3");
+        assertThat(first.getNextCursor()).isNotNull();
+
+        AdventureResponse second = feedService.getFeed("viewer", 3, first.getNextCursor());
+        assertThat(tripIds(second)).containsExactly("trip-2", "trip-1");
+        assertThat(second.getNextCursor()).isNull();
+    }
+
+    @Test
+    void feedThatEndsOnAFullPageHasNoCursorOnceRead() {
+        for (int i = 1; i <= 4; i++) {
+            putEntry("trip-" + i, "other", i);
+        }
+
+        AdventureResponse first = feedService.getFeed(null, 2, null);
+        AdventureResponse second = feedService.getFeed(null, 2, first.getNextCursor());
+        AdventureResponse third = feedService.getFeed(null, 2, second.getNextCursor());
+
+        assertThat(tripIds(first)).containsExactly("trip-4", "trip-3");
+        assertThat(tripIds(second)).containsExactly("trip-2", "trip-1");
+        assertThat(third.getItems()).isEmpty();
+        assertThat(third.getNextCursor()).isNull();
+    }
+
+    @Test
+    void updateMembersOfATripOutsideTheFeedWritesNothing() {
+        User member = new User();
+        member.setId("member-1");
+
+        feedService.updateMembers("private-trip", List.of(member));
+
+        assertThat(store.get("adventure_feed/private-trip")).isNull();
+    }
+
+    private void putEntry(String tripId, String userId, long sortKey) {
+        Map<String, Object> entry = new HashMap<>();
+        entry.put("tripId", tripId);
+        entry.put("userId", userId);
+        entry.put("startDate", "2026-01-01");
+        entry.put("endDate", "2026-01-03");
+        entry.put("sortKey", sortKey);
+        entry.put("members", new ArrayList<>());
+        store.put("adventure_feed/" + tripId, entry);
+    }
+
+    private static List<String> tripIds(AdventureResponse response) {
+        return response.getItems().stream()
+                .map(AdventureResponse.AdventureItem::getTripId)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,54 @@
+package com.datn.trip_service.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FileReferenceSetTest {
+
+    @Test
+    void containsEveryAddedNameAndNothingElse() {
+        FileReferenceSet references = new FileReferenceSet();
+        // More than the initial capacity, so the array grows
+        for (int i = 0; i < 5000; i++) {
+            references.add("file-" + i + ".jpg");
+        }
+        references.add("file-7.jpg");
+        references.seal();
+
+        assertThat(references.size()).isEqualTo(5001);
+        for (int i = 0; i < 5000; i++) {
+            assertThat(references.contains("file-" + i + ".jpg")).isTrue();
+        }
+        assertThat(references.contains("file-5000.jpg")).isFalse();
+        assertThat(references.contains("FILE-1.jpg")).isFalse();
+        assertThat(references.contains("")).isFalse();
+    }
+
+    @Test
+    void emptySetContainsNothing() {
+        FileReferenceSet references = new FileReferenceSet();
+        references.seal();
+
+        assertThat(references.size()).isZero();
+        assertThat(references.contains("a.jpg")).isFalse();
+    }
+
+    @Test
+    void setMustBeSealedBeforeLookupsAndNotChangedAfter() {
+        FileReferenceSet references = new FileReferenceSet();
+        references.add("a.jpg");
+
+        assertThatThrownBy(() -> references.contains("a.jpg")).isInstanceOf(IllegalStateException.class);
+        references.seal();
+        assertThatThrownBy(() -> references.add("b.jpg")).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void hashIsStableAndSpreadsSimilarNames() {
+        assertThat(FileReferenceSet.hash("a.jpg")).isEqualTo(FileReferenceSet.hash("a.jpg"));
+        assertThat(FileReferenceSet.hash("a.jpg")).isNotEqualTo(FileReferenceSet.hash("b.jpg"));
+        assertThat(FileReferenceSet.hash("ab.jpg")).isNotEqualTo(FileReferenceSet.hash("ba.jpg"));
+    }
+}
@@ -0,0 +1,85 @@
+package com.datn.trip_service.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileStorageServiceTest {
+
+    @TempDir
+    Path uploadDir;
+
+    private FileStorageService storage;
+
+    @BeforeEach
+    void setUp() {
+        storage = new FileStorageService(uploadDir.toString());
+    }
+
+    @Test
+    void identicalUploadsShareOneBlobNamedByHash() {
+        String first = storage.storeFile(image("a.JPG", "same bytes"));
+        String second = storage.storeFile(image("b.jpg", "same bytes"));
+
+        assertThat(first).isEqualTo(second).matches("[0-9a-f]{64}\\.jpg");
+        assertThat(storage.getReferenceCount(first)).isEqualTo(2);
+        assertThat(storage.loadFile(first)).hasContent("same bytes");
+    }
+
+    @Test
+    void blobIsRemovedWithItsLastReference() {
+        String fileName = storage.storeFile(image("a.jpg", "photo"));
+        storage.storeFile(image("b.jpg", "photo"));
+
+        storage.deleteFile(fileName);
+        assertThat(storage.loadFile(fileName)).exists();
+
+        storage.deleteFile(fileName);
+        assertThat(storage.loadFile(fileName)).doesNotExist();
+        assertThat(storage.getReferenceCount(fileName)).isZero();
+    }
+
+    @Test
+    void legacyFilesWithoutReferenceCountAreDeletedDirectly() throws Exception {
+        Path legacy = uploadDir.resolve("00d77433-e814-4934-b9da-d297fa4462bd.jpg");
+        Files.writeString(legacy, "old upload", StandardCharsets.UTF_8);
+
+        storage.deleteFile(legacy.getFileName().toString());
+
+        assertThat(legacy).doesNotExist();
+    }
+
+    @Test
+    void newFilesAreStoredInTheDirectoryTree() {
+        String fileName = storage.storeFile(image("a.jpg", "photo"));
+
+        Path expected = uploadDir.resolve(fileName.substring(0, 2)).resolve(fileName.substring(2, 4)).resolve(fileName);
+        assertThat(storage.loadFile(fileName)).isEqualTo(expected).hasContent("photo");
+        assertThat(uploadDir.resolve(fileName)).doesNotExist();
+    }
+
+    @Test
+    void flatFilesResolveUntilMovedIntoTheTree() throws Exception {
+        String fileName = "00d77433-e814-4934-b9da-d297fa4462bd.jpg";
+        Path flat = uploadDir.resolve(fileName);
+        Files.writeString(flat, "old upload", StandardCharsets.UTF_8);
+        assertThat(storage.loadFile(fileName)).isEqualTo(flat);
+
+        assertThat(storage.moveToShard(fileName)).isTrue();
+
+        assertThat(flat).doesNotExist();
+        assertThat(storage.loadFile(fileName)).isEqualTo(uploadDir.resolve("00/d7").resolve(fileName)).hasContent("old upload");
+        assertThat(storage.moveToShard(fileName)).isFalse();
+    }
+
+    private static MockMultipartFile image(String name, String content) {
+        return new MockMultipartFile("file", name, "image/jpeg", content.getBytes(StandardCharsets.UTF_8));
+    }
+}
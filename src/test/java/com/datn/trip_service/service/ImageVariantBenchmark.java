@@ -0,0 +1,82 @@
+package com.datn.trip_service.service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Variant generation throughput over the sample images in uploads/, single-threaded and with one
+ * worker per core. Not a unit test; run it from the IDE or with
+ * mvn test-compile exec:java -Dexec.mainClass=com.datn.trip_service.service.ImageVariantBenchmark -Dexec.classpathScope=test
+ *
+ * Arguments: [upload dir, default "uploads"] [max images, default 50]
+ */
+public class ImageVariantBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Path uploadDir = Paths.get(args.length > 0 ? args[0] : "uploads");
+        int maxImages = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        List<Path> images;
+        try (Stream<Path> files = Files.list(uploadDir)) {
+            // Some samples are WebP or HTML saved as .jpg; ImageIO cannot decode those
+            images = files.filter(Files::isRegularFile)
+                    .filter(ImageVariantService::canDecode)
+                    .sorted()
+                    .limit(maxImages)
+                    .collect(Collectors.toList());
+        }
+        if (images.isEmpty()) {
+            System.out.println("No decodable images in " + uploadDir.toAbsolutePath());
+            return;
+        }
+        long totalBytes = 0;
+        for (Path image : images) {
+            totalBytes += Files.size(image);
+        }
+        System.out.printf("%d images, %.1f MB, %d core(s)%n", images.size(), totalBytes / 1048576.0, cores);
+
+        ImageVariantService service = new ImageVariantService();
+        // Warm up JIT and ImageIO codecs
+        run(service, images.subList(0, Math.min(5, images.size())), 1);
+
+        for (int threads : cores > 1 ? new int[]{1, cores} : new int[]{1}) {
+            double seconds = run(service, images, threads);
+            double imagesPerSecond = images.size() / seconds;
+            System.out.printf("%2d thread(s): %6.2f s, %6.1f images/s, %6.1f images/s per core, %6.1f variants/s%n",
+                    threads, seconds, imagesPerSecond, imagesPerSecond / threads,
+                    imagesPerSecond * ImageVariant.values().length);
+        }
+    }
+
+    private static double run(ImageVariantService service, List<Path> images, int threads) throws Exception {
+        Path outputDir = Files.createTempDirectory("variant-bench");
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            long start = System.nanoTime();
+            List<Future<Integer>> results = new ArrayList<>();
+            for (Path image : images) {
+                results.add(executor.submit(() -> service.writeVariants(image,
+                        variant -> outputDir.resolve(variant.fileName(image.getFileName().toString())))));
+            }
+            for (Future<Integer> result : results) {
+                result.get();
+            }
+            return (System.nanoTime() - start) / 1e9;
+        } finally {
+            executor.shutdown();
+            try (Stream<Path> files = Files.walk(outputDir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.datn.trip_service.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ImageVariantServiceTest {
+
+    private static final int RED = 0xFF0000;
+    private static final int BLUE = 0x0000FF;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void resizeKeepsTheAspectRatioAndNeverUpscales() {
+        BufferedImage landscape = resize(3000, 1500, 1280);
+        assertThat(landscape.getWidth()).isEqualTo(1280);
+        assertThat(landscape.getHeight()).isEqualTo(640);
+
+        BufferedImage portrait = resize(300, 901, 200);
+        assertThat(portrait.getWidth()).isEqualTo(67);
+        assertThat(portrait.getHeight()).isEqualTo(200);
+
+        BufferedImage small = resize(120, 80, 640);
+        assertThat(small.getWidth()).isEqualTo(120);
+        assertThat(small.getHeight()).isEqualTo(80);
+        assertThat(small.getType()).isEqualTo(BufferedImage.TYPE_INT_RGB);
+    }
+
+    @Test
+    void orientMovesPixelsTheWayTheExifOrientationSays() {
+        // Red on the left, blue on the right
+        BufferedImage image = new BufferedImage(2, 1, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, RED);
+        image.setRGB(1, 0, BLUE);
+
+        assertThat(ImageVariantService.orient(image, 1)).isSameAs(image);
+        assertThat(ImageVariantService.orient(image, 9)).isSameAs(image);
+
+        BufferedImage mirrored = ImageVariantService.orient(image, 2);
+        assertThat(rgb(mirrored, 0, 0)).isEqualTo(BLUE);
+        assertThat(rgb(mirrored, 1, 0)).isEqualTo(RED);
+
+        BufferedImage upsideDown = ImageVariantService.orient(image, 3);
+        assertThat(rgb(upsideDown, 0, 0)).isEqualTo(BLUE);
+
+        // 6: rotate clockwise, the left edge becomes the top
+        BufferedImage clockwise = ImageVariantService.orient(image, 6);
+        assertThat(clockwise.getWidth()).isEqualTo(1);
+        assertThat(clockwise.getHeight()).isEqualTo(2);
+        assertThat(rgb(clockwise, 0, 0)).isEqualTo(RED);
+        assertThat(rgb(clockwise, 0, 1)).isEqualTo(BLUE);
+
+        // 8: rotate counter-clockwise, the right edge becomes the top
+        BufferedImage counterClockwise = ImageVariantService.orient(image, 8);
+        assertThat(rgb(counterClockwise, 0, 0)).isEqualTo(BLUE);
+        assertThat(rgb(counterClockwise, 0, 1)).isEqualTo(RED);
+    }
+
+    @Test
+    void parseOrientationReadsBothByteOrders() {
+        assertThat(ImageVariantService.parseOrientation(exif(false, 6))).isEqualTo(6);
+        assertThat(ImageVariantService.parseOrientation(exif(true, 8))).isEqualTo(8);
+    }
+
+    @Test
+    void parseOrientationIgnoresOtherOrTruncatedPayloads() {
+        assertThat(ImageVariantService.parseOrientation(null)).isZero();
+        byte[] xmp = exif(false, 6);
+        xmp[0] = 'h';
+        assertThat(ImageVariantService.parseOrientation(xmp)).isZero();
+        byte[] truncated = new byte[20];
+        System.arraycopy(exif(false, 6), 0, truncated, 0, truncated.length);
+        assertThat(ImageVariantService.parseOrientation(truncated)).isZero();
+    }
+
+    @Test
+    void imagesOverThePixelLimitAreRefusedBeforeDecoding() throws IOException {
+        ImageVariantService service = new ImageVariantService();
+        ReflectionTestUtils.setField(service, "maxPixels", 10_000L);
+        Path source = png("big.png", 200, 100);
+
+        assertThatThrownBy(() -> service.writeVariants(source, variant -> dir.resolve(variant.fileName("big.png"))))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("200x100");
+        assertThat(dir.resolve(ImageVariant.THUMB.fileName("big.png"))).doesNotExist();
+    }
+
+    @Test
+    void largeImagesAreSubsampledToNoLessThanTwiceTheLargestVariant() throws IOException {
+        assertThat(ImageVariantService.subsamplingFor(2000)).isEqualTo(1);
+        assertThat(ImageVariantService.subsamplingFor(2560)).isEqualTo(1);
+        assertThat(ImageVariantService.subsamplingFor(5120)).isEqualTo(2);
+        assertThat(ImageVariantService.subsamplingFor(8000)).isEqualTo(3);
+
+        ImageVariantService service = new ImageVariantService();
+        Path source = png("wide.png", 6000, 300);
+
+        assertThat(service.writeVariants(source, variant -> dir.resolve(variant.fileName("wide.png")))).isEqualTo(3);
+
+        BufferedImage large = ImageIO.read(dir.resolve(ImageVariant.LARGE.fileName("wide.png")).toFile());
+        assertThat(large.getWidth()).isEqualTo(1280);
+        assertThat(large.getHeight()).isEqualTo(64);
+    }
+
+    private static BufferedImage resize(int width, int height, int maxDimension) {
+        return ImageVariantService.resize(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB), maxDimension);
+    }
+
+    private static int rgb(BufferedImage image, int x, int y) {
+        return image.getRGB(x, y) & 0xFFFFFF;
+    }
+
+    private Path png(String name, int width, int height) throws IOException {
+        Path file = dir.resolve(name);
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", file.toFile());
+        return file;
+    }
+
+    // "Exif\0\0", a TIFF header, then IFD0 with one entry: the orientation tag (SHORT, count 1)
+    private static byte[] exif(boolean littleEndian, int orientation) {
+        byte[] app1 = new byte[6 + 8 + 2 + 12 + 4];
+        System.arraycopy("Exif\0\0".getBytes(StandardCharsets.US_ASCII), 0, app1, 0, 6);
+        int tiff = 6;
+        app1[tiff] = app1[tiff + 1] = (byte) (littleEndian ? 'I' : 'M');
+        putShort(app1, tiff + 2, 42, littleEndian);
+        putInt(app1, tiff + 4, 8, littleEndian);
+        int ifd = tiff + 8;
+        putShort(app1, ifd, 1, littleEndian);
+        putShort(app1, ifd + 2, 0x0112, littleEndian);
+        putShort(app1, ifd + 4, 3, littleEndian);
+        putInt(app1, ifd + 6, 1, littleEndian);
+        putShort(app1, ifd + 10, orientation, littleEndian);
+        return app1;
+    }
+
+    private static void putShort(byte[] data, int offset, int value, boolean littleEndian) {
+        data[offset] = (byte) (littleEndian ? value : value >> 8);
+        data[offset + 1] = (byte) (littleEndian ? value >> 8 : value);
+    }
+
+    private static void putInt(byte[] data, int offset, int value, boolean littleEndian) {
+        putShort(data, littleEndian ? offset : offset + 2, value & 0xFFFF, littleEndian);
+        putShort(data, littleEndian ? offset + 2 : offset, value >>> 16, littleEndian);
+    }
+}
@@ -0,0 +1,77 @@
+package com.datn.trip_service.service;
+
+import com.datn.trip_service.dto.NotificationRequest;
+import com.datn.trip_service.model.Notification;
+import com.datn.trip_service.repository.NotificationRepository;
+import com.google.firebase.messaging.BatchResponse;
+import com.google.firebase.messaging.FirebaseMessaging;
+import com.google.firebase.messaging.FirebaseMessagingException;
+import com.google.firebase.messaging.Message;
+import com.google.firebase.messaging.SendResponse;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.MockedStatic;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NotificationServiceTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedChunkDoesNotStopTheOthersOrTheirRecords() throws Exception {
+        Map<String, NotificationRequest> requests = new LinkedHashMap<>();
+        Map<String, Map<String, Object>> devices = new HashMap<>();
+        for (int i = 0; i < 501; i++) {
+            String userId = "user-" + i;
+            NotificationRequest request = new NotificationRequest();
+            request.setTitle("Upcoming trip");
+            request.setBody("Soon");
+            requests.put(userId, request);
+            devices.put(userId, Map.of("fcmToken", "token-" + i, "notificationsEnabled", true));
+        }
+
+        NotificationRepository repository = mock(NotificationRepository.class);
+        when(repository.getUserDevices(anyCollection())).thenReturn(devices);
+        NotificationService notificationService = new NotificationService();
+        ReflectionTestUtils.setField(notificationService, "notificationRepository", repository);
+
+        // The first chunk of 500 is rejected as a whole, the last message goes out
+        SendResponse sent = mock(SendResponse.class);
+        when(sent.isSuccessful()).thenReturn(true);
+        BatchResponse lastChunk = mock(BatchResponse.class);
+        when(lastChunk.getResponses()).thenReturn(List.of(sent));
+        FirebaseMessaging messaging = mock(FirebaseMessaging.class);
+        when(messaging.sendEach(anyList())).thenAnswer(invocation -> {
+            if (((List<Message>) invocation.getArgument(0)).size() == 500) {
+                throw mock(FirebaseMessagingException.class);
+            }
+            return lastChunk;
+        });
+
+        int notified;
+        try (MockedStatic<FirebaseMessaging> firebase = mockStatic(FirebaseMessaging.class)) {
+            firebase.when(FirebaseMessaging::getInstance).thenReturn(messaging);
+            notified = notificationService.sendNotificationsToUsers(requests);
+        }
+
+        assertThat(notified).isEqualTo(1);
+        ArgumentCaptor<List<Notification>> records = ArgumentCaptor.forClass(List.class);
+        verify(repository).saveNotifications(records.capture());
+        List<String> recipients = new ArrayList<>(requests.keySet());
+        assertThat(records.getValue()).extracting(Notification::getUserId)
+                .containsExactly(recipients.get(recipients.size() - 1));
+    }
+}
@@ -0,0 +1,104 @@
+package com.datn.trip_service.service;
+
+import com.datn.trip_service.model.Trip;
+import com.datn.trip_service.repository.FollowGraph;
+import com.datn.trip_service.repository.TripRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TripAccessEvaluatorTest {
+
+    private TripRepository tripRepository;
+    private TripAccessEvaluator evaluator;
+
+    @BeforeEach
+    void setUp() {
+        tripRepository = mock(TripRepository.class);
+        FollowGraph followGraph = mock(FollowGraph.class);
+        when(followGraph.version("viewer")).thenReturn(-1L);
+
+        evaluator = new TripAccessEvaluator();
+        ReflectionTestUtils.setField(evaluator, "tripRepository", tripRepository);
+        ReflectionTestUtils.setField(evaluator, "followGraph", followGraph);
+        ReflectionTestUtils.setField(evaluator, "cacheTtlSeconds", 60L);
+        ReflectionTestUtils.setField(evaluator, "cacheMaximumSize", 100L);
+        evaluator.init();
+    }
+
+    @Test
+    void decisionsAreCachedPerTripAndUser() {
+        stubTrip("public");
+
+        assertThat(evaluator.canView("trip-1", "viewer")).isTrue();
+        assertThat(evaluator.canView("trip-1", "viewer")).isTrue();
+        assertThat(evaluator.canView("trip-1", "other")).isTrue();
+
+        // One read per user; the second look for the same user was cached
+        verify(tripRepository, times(2)).findAccessInfoByIds(anyCollection());
+    }
+
+    @Test
+    void cacheSizeCountsDecisionsNotTrips() {
+        stubTrip("public");
+        for (int i = 0; i < 1000; i++) {
+            evaluator.canView("trip-1", "viewer-" + i);
+        }
+
+        Cache<?, ?> decisions = (Cache<?, ?>) ReflectionTestUtils.getField(evaluator, "decisions");
+        decisions.cleanUp();
+        assertThat(decisions.estimatedSize()).isLessThanOrEqualTo(100);
+    }
+
+    @Test
+    void invalidateDropsTheTripsDecisions() {
+        stubTrip("public");
+        assertThat(evaluator.canView("trip-1", "viewer")).isTrue();
+
+        stubTrip("private");
+        evaluator.invalidate("trip-1");
+
+        assertThat(evaluator.canView("trip-1", "viewer")).isFalse();
+    }
+
+    @Test
+    void decisionReadBeforeAnInvalidateIsNotReused() {
+        AtomicInteger reads = new AtomicInteger();
+        when(tripRepository.findAccessInfoByIds(anyCollection())).thenAnswer(invocation -> {
+            if (reads.incrementAndGet() > 1) {
+                return Map.of("trip-1", trip("private"));
+            }
+            // The trip is made private while its old settings are being evaluated
+            evaluator.invalidate("trip-1");
+            return Map.of("trip-1", trip("public"));
+        });
+
+        assertThat(evaluator.canView("trip-1", "viewer")).isTrue();
+        assertThat(evaluator.canView("trip-1", "viewer")).isFalse();
+    }
+
+    private void stubTrip(String isPublic) {
+        when(tripRepository.findAccessInfoByIds(anyCollection())).thenReturn(Map.of("trip-1", trip(isPublic)));
+    }
+
+    private static Trip trip(String isPublic) {
+        Trip trip = new Trip();
+        trip.setId("trip-1");
+        trip.setUserId("owner");
+        trip.setIsPublic(isPublic);
+        trip.setMembers(List.of());
+        return trip;
+    }
+}
@@ -0,0 +1,174 @@
+package com.datn.trip_service.service;
+
+import com.datn.trip_service.repository.FakeFirestore;
+import com.datn.trip_service.repository.TripCache;
+import com.datn.trip_service.repository.TripRepository;
+import com.google.firebase.cloud.FirestoreClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.MockedStatic;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TripPurgeServiceTest {
+
+    @TempDir
+    Path uploadDir;
+
+    private final FakeFirestore store = new FakeFirestore();
+    private TripRepository tripRepository;
+    private FileStorageService storage;
+    private TripPurgeService purgeService;
+
+    @BeforeEach
+    void setUp() {
+        tripRepository = mock(TripRepository.class);
+        storage = new FileStorageService(uploadDir.toString());
+
+        purgeService = new TripPurgeService();
+        ReflectionTestUtils.setField(purgeService, "firestore", store.firestore());
+        ReflectionTestUtils.setField(purgeService, "tripRepository", tripRepository);
+        ReflectionTestUtils.setField(purgeService, "fileStorageService", storage);
+        ReflectionTestUtils.setField(purgeService, "pageSize", 200);
+        ReflectionTestUtils.setField(purgeService, "sweepBatchSize", 50);
+    }
+
+    @Test
+    void softDeleteFlagsTheTripAndDropsItFromTheCache() {
+        store.put("trips/trip-1", Map.of("title", "Hanoi"));
+        TripCache tripCache = mock(TripCache.class);
+        TripRepository repository = new TripRepository();
+        ReflectionTestUtils.setField(repository, "tripCache", tripCache);
+
+        try (MockedStatic<FirestoreClient> client = mockStatic(FirestoreClient.class)) {
+            client.when(FirestoreClient::getFirestore).thenReturn(store.firestore());
+            repository.markDeleted("trip-1");
+        }
+
+        assertThat(store.get("trips/trip-1")).containsEntry("deleted", true).containsKey("deletedAt");
+        verify(tripCache).invalidate("trip-1");
+    }
+
+    @Test
+    void liveTripIsNotPurged() {
+        store.put("trips/trip-1", Map.of("deleted", false));
+        store.put("plans/plan-1", Map.of("tripId", "trip-1"));
+
+        purgeService.purge("trip-1");
+
+        assertThat(store.get("plans/plan-1")).isNotNull();
+        assertThat(store.get("trip_purges/trip-1")).isNull();
+    }
+
+    @Test
+    void purgeDeletesPlansFilesAndFinallyTheTrip() {
+        String cover = storage.storeFile(image("cover.jpg", "cover"));
+        String photo = storage.storeFile(image("plan.jpg", "plan"));
+        store.put("trips/trip-1", Map.of("deleted", true, "coverPhoto", cover));
+        store.put("plans/plan-1", Map.of("tripId", "trip-1", "photoUrl", photo,
+                "photos", List.of(photo, "https://cdn.example.com/x.jpg")));
+        store.put("plans/plan-1/comments/1", Map.of("content", "nice"));
+
+        purgeService.purge("trip-1");
+
+        assertThat(store.get("plans/plan-1")).isNull();
+        assertThat(store.get("plans/plan-1/comments/1")).isNull();
+        assertThat(store.get("trips/trip-1")).isNull();
+        assertThat(storage.loadFile(cover)).doesNotExist();
+        assertThat(storage.loadFile(photo)).doesNotExist();
+        assertThat(progress()).containsEntry("status", TripPurgeService.STATUS_COMPLETED)
+                .containsEntry("pendingFiles", List.of())
+                .containsEntry("filesDeleted", 2L);
+    }
+
+    @Test
+    void resumedPurgeDeletesFilesRecordedByTheInterruptedRun() {
+        String leftOver = storage.storeFile(image("left.jpg", "left over"));
+        // The trip document is already gone, only its files are left
+        store.put("trip_purges/trip-1", Map.of(
+                "status", TripPurgeService.STATUS_RUNNING, "startedAt", 1L, "pendingFiles", List.of(leftOver)));
+
+        purgeService.purge("trip-1");
+
+        assertThat(storage.loadFile(leftOver)).doesNotExist();
+        assertThat(progress()).containsEntry("status", TripPurgeService.STATUS_COMPLETED);
+    }
+
+    @Test
+    void resumedPurgeReleasesASharedFileOnceWhenItsPlansStillExist() {
+        // Another trip holds the second reference
+        String shared = storage.storeFile(image("shared.jpg", "shared"));
+        storage.storeFile(image("copy.jpg", "shared"));
+        assertThat(storage.getReferenceCount(shared)).isEqualTo(2);
+        // Interrupted after recording the plan's file, before deleting the plan
+        store.put("trips/trip-1", Map.of("deleted", true));
+        store.put("plans/plan-1", Map.of("tripId", "trip-1", "photoUrl", shared));
+        store.put("trip_purges/trip-1", Map.of(
+                "status", TripPurgeService.STATUS_RUNNING, "startedAt", 1L, "pendingFiles", List.of(shared)));
+
+        purgeService.purge("trip-1");
+        purgeService.purge("trip-1");
+
+        assertThat(store.get("plans/plan-1")).isNull();
+        assertThat(storage.loadFile(shared)).exists();
+        assertThat(storage.getReferenceCount(shared)).isEqualTo(1);
+        assertThat(progress()).containsEntry("status", TripPurgeService.STATUS_COMPLETED);
+    }
+
+    @Test
+    void fileUsedByTwoPlansOfTheTripIsReleasedOnce() {
+        String shared = storage.storeFile(image("shared.jpg", "shared"));
+        storage.storeFile(image("copy.jpg", "shared"));
+        store.put("trips/trip-1", Map.of("deleted", true, "coverPhoto", shared));
+        store.put("plans/plan-1", Map.of("tripId", "trip-1", "photoUrl", shared));
+        store.put("plans/plan-2", Map.of("tripId", "trip-1", "photos", List.of(shared)));
+
+        purgeService.purge("trip-1");
+
+        assertThat(storage.getReferenceCount(shared)).isEqualTo(1);
+        assertThat(progress()).containsEntry("filesQueued", 1L).containsEntry("filesDeleted", 1L);
+    }
+
+    @Test
+    void sweepQueuesDeletedTripsAndUnfinishedPurges() {
+        when(tripRepository.findDeletedTripIds(50)).thenReturn(List.of("trip-1", "trip-2"));
+        store.put("trip_purges/trip-2", Map.of("status", TripPurgeService.STATUS_RUNNING));
+        store.put("trip_purges/trip-3", Map.of("status", TripPurgeService.STATUS_FAILED));
+        store.put("trip_purges/trip-4", Map.of("status", TripPurgeService.STATUS_COMPLETED));
+        TripPurgeService sweeping = spy(purgeService);
+        doNothing().when(sweeping).purge(anyString());
+
+        sweeping.sweep();
+
+        verify(sweeping, timeout(1000)).purge("trip-1");
+        verify(sweeping, timeout(1000)).purge("trip-2");
+        verify(sweeping, timeout(1000)).purge("trip-3");
+        verify(sweeping, never()).purge("trip-4");
+        sweeping.shutdown();
+    }
+
+    private Map<String, Object> progress() {
+        return store.get("trip_purges/trip-1");
+    }
+
+    private static MockMultipartFile image(String name, String content) {
+        return new MockMultipartFile("file", name, "image/jpeg", content.getBytes(StandardCharsets.UTF_8));
+    }
+}
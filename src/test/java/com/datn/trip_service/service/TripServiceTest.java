@@ -0,0 +1,204 @@
+package com.datn.trip_service.service;
+
+import com.datn.trip_service.config.FirestoreAsyncConfig;
+import com.datn.trip_service.model.Plan;
+import com.datn.trip_service.model.Trip;
+import com.datn.trip_service.repository.FakeFirestore;
+import com.datn.trip_service.repository.PlanEngagementRepository;
+import com.datn.trip_service.repository.PlanLikeCounter;
+import com.datn.trip_service.repository.PlanRepository;
+import com.datn.trip_service.repository.TripCache;
+import com.datn.trip_service.repository.TripRepository;
+import com.google.cloud.Timestamp;
+import com.google.firebase.cloud.FirestoreClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mockStatic;
+
+class TripServiceTest {
+
+    private static final int CONCURRENT_REQUESTS = 200;
+    private static final int CALLBACK_CORE_POOL_SIZE = 4;
+    private static final int CALLBACK_MAX_POOL_SIZE = 16;
+
+    private final FakeFirestore store = new FakeFirestore();
+    private MockedStatic<FirestoreClient> firestoreClient;
+    private TripService tripService;
+
+    @BeforeEach
+    void setUp() {
+        firestoreClient = mockStatic(FirestoreClient.class);
+        firestoreClient.when(FirestoreClient::getFirestore).thenReturn(store.firestore());
+        // Futures from the fake store are already complete; running callbacks inline keeps the static mock in scope
+        tripService = newTripService(Runnable::run);
+
+        store.put("trips/trip-1", Map.of("userId", "owner", "title", "Hanoi", "isPublic", "public",
+                "startDate", "2026-05-01", "endDate", "2026-05-03"));
+        store.put("plans/plan-1", Map.of("tripId", "trip-1", "title", "Old Quarter", "type", "ACTIVITY",
+                "likeCount", 2L, "likeShards", 2L, "commentCount", 2L));
+        store.put("plans/plan-1/like_shards/0", Map.of("count", 3L));
+        store.put("plans/plan-1/comments/100", comment(100L, "alice", 1));
+        store.put("plans/plan-1/comments/101", comment(101L, "bob", 2));
+        store.put("plans/plan-2", Map.of("tripId", "trip-1", "title", "Dinner", "type", "RESTAURANT",
+                "likeCount", 0L, "commentCount", 1L));
+        store.put("plans/plan-2/comments/200", comment(200L, "alice", 3));
+        store.put("plans/plan-3", Map.of("tripId", "trip-1", "title", "Museum", "type", "ACTIVITY"));
+        store.put("users/alice", Map.of("firstName", "Alice", "lastName", "Nguyen"));
+        store.put("users/bob", Map.of("firstName", "Bob", "lastName", "Tran"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        firestoreClient.close();
+    }
+
+    @Test
+    void fullTripIsReadInAFixedNumberOfRoundTrips() {
+        Trip trip = tripService.getTripWithFullPlansAsync("trip-1").join();
+
+        assertThat(trip.getPlans()).extracting(Plan::getId).containsExactlyInAnyOrder("plan-1", "plan-2", "plan-3");
+        Plan liked = plan(trip, "plan-1");
+        assertThat(liked.getLikeCount()).isEqualTo(5);
+        assertThat(liked.getComments()).extracting(comment -> comment.getUserName()).doesNotContainNull();
+
+        // Trip, plans query, one comment page per plan with comments, one getAll for shards, one for commenters
+        assertThat(store.documentGets.get()).isEqualTo(1);
+        assertThat(store.queries.get()).isEqualTo(3);
+        assertThat(store.getAlls.get()).isEqualTo(2);
+        assertThat(store.reads()).isEqualTo(6);
+    }
+
+    @Test
+    void warmCachesLeaveOnlyTheTripPlansAndCommentReads() {
+        tripService.getTripWithFullPlansAsync("trip-1").join();
+        store.resetCounts();
+
+        Trip trip = tripService.getTripWithFullPlansAsync("trip-1").join();
+
+        assertThat(plan(trip, "plan-1").getLikeCount()).isEqualTo(5);
+        assertThat(store.getAlls.get()).isZero();
+        assertThat(store.reads()).isEqualTo(4);
+    }
+
+    @Test
+    void concurrentRequestsUseTheCallbackPoolRatherThanAThreadEach() throws Exception {
+        FirestoreAsyncConfig config = new FirestoreAsyncConfig();
+        ReflectionTestUtils.setField(config, "corePoolSize", CALLBACK_CORE_POOL_SIZE);
+        ReflectionTestUtils.setField(config, "maxPoolSize", CALLBACK_MAX_POOL_SIZE);
+        ReflectionTestUtils.setField(config, "queueCapacity", 500);
+        ThreadPoolTaskExecutor callbackPool = config.firestoreCallbackExecutor();
+        AtomicInteger callbackThreads = new AtomicInteger();
+        callbackPool.getThreadPoolExecutor().setThreadFactory(withFakeFirestore("firestore-cb-", callbackThreads));
+        // Stands in for the transport: answers every read after 200 ms from a single thread
+        ScheduledExecutorService transport = Executors.newSingleThreadScheduledExecutor(
+                withFakeFirestore("rpc-", new AtomicInteger()));
+        store.setReadLatency(transport, 200);
+        TripService service = newTripService(callbackPool);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        int threadsBefore = threads.getThreadCount();
+        threads.resetPeakThreadCount();
+        try {
+            List<CompletableFuture<Trip>> requests = new ArrayList<>();
+            for (int i = 0; i < CONCURRENT_REQUESTS; i++) {
+                requests.add(service.getTripWithFullPlansAsync("trip-1"));
+            }
+            for (CompletableFuture<Trip> request : requests) {
+                assertThat(request.get(30, TimeUnit.SECONDS).getPlans()).hasSize(3);
+            }
+
+            // Many times more reads were in flight at once than there are threads, which stayed at the pool size
+            assertThat(store.peakReadsInFlight.get()).isGreaterThan(4 * CALLBACK_MAX_POOL_SIZE);
+            assertThat(callbackThreads.get()).isLessThanOrEqualTo(CALLBACK_MAX_POOL_SIZE);
+            assertThat(threads.getPeakThreadCount() - threadsBefore)
+                    .isLessThanOrEqualTo(CALLBACK_MAX_POOL_SIZE + 1 + 8)
+                    .isLessThan(CONCURRENT_REQUESTS / 4);
+        } finally {
+            transport.shutdownNow();
+            callbackPool.shutdown();
+        }
+    }
+
+    private TripService newTripService(Executor callbackExecutor) {
+        TripCache tripCache = new TripCache();
+        ReflectionTestUtils.setField(tripCache, "maximumSize", 100L);
+        ReflectionTestUtils.setField(tripCache, "ttlSeconds", 60L);
+        ReflectionTestUtils.setField(tripCache, "negativeTtlSeconds", 5L);
+        tripCache.init();
+
+        PlanLikeCounter likeCounter = new PlanLikeCounter();
+        ReflectionTestUtils.setField(likeCounter, "callbackExecutor", callbackExecutor);
+        ReflectionTestUtils.setField(likeCounter, "shardCount", 10);
+        ReflectionTestUtils.setField(likeCounter, "cacheTtlSeconds", 60L);
+        ReflectionTestUtils.setField(likeCounter, "cacheMaximumSize", 100L);
+        likeCounter.init();
+
+        PlanEngagementRepository engagementRepository = new PlanEngagementRepository();
+        ReflectionTestUtils.setField(engagementRepository, "tripCache", tripCache);
+        ReflectionTestUtils.setField(engagementRepository, "likeCounter", likeCounter);
+        ReflectionTestUtils.setField(engagementRepository, "callbackExecutor", callbackExecutor);
+
+        PlanRepository planRepository = new PlanRepository();
+        ReflectionTestUtils.setField(planRepository, "tripCache", tripCache);
+        ReflectionTestUtils.setField(planRepository, "engagementRepository", engagementRepository);
+        ReflectionTestUtils.setField(planRepository, "likeCounter", likeCounter);
+        ReflectionTestUtils.setField(planRepository, "callbackExecutor", callbackExecutor);
+
+        TripRepository tripRepository = new TripRepository();
+        ReflectionTestUtils.setField(tripRepository, "tripCache", tripCache);
+        ReflectionTestUtils.setField(tripRepository, "likeCounter", likeCounter);
+        ReflectionTestUtils.setField(tripRepository, "callbackExecutor", callbackExecutor);
+
+        UserService userService = new UserService();
+        ReflectionTestUtils.setField(userService, "firestore", store.firestore());
+        ReflectionTestUtils.setField(userService, "callbackExecutor", callbackExecutor);
+        ReflectionTestUtils.setField(userService, "profileCacheMaximumSize", 100L);
+        ReflectionTestUtils.setField(userService, "profileCacheTtlSeconds", 60L);
+        userService.initProfileCache();
+
+        TripService tripService = new TripService();
+        ReflectionTestUtils.setField(tripService, "tripRepository", tripRepository);
+        ReflectionTestUtils.setField(tripService, "planRepository", planRepository);
+        ReflectionTestUtils.setField(tripService, "userService", userService);
+
+        return tripService;
+    }
+
+    // Threads that see the fake store through FirestoreClient, whose static mock is per thread
+    private ThreadFactory withFakeFirestore(String prefix, AtomicInteger created) {
+        return runnable -> new Thread(() -> {
+            try (MockedStatic<FirestoreClient> client = mockStatic(FirestoreClient.class)) {
+                client.when(FirestoreClient::getFirestore).thenReturn(store.firestore());
+                runnable.run();
+            }
+        }, prefix + created.incrementAndGet());
+    }
+
+    private static Plan plan(Trip trip, String planId) {
+        return trip.getPlans().stream().filter(plan -> plan.getId().equals(planId)).findFirst().orElseThrow();
+    }
+
+    private static Map<String, Object> comment(long id, String userId, long seconds) {
+        return Map.of("id", id, "userId", userId, "content", "comment " + id,
+                "createdAt", Timestamp.ofTimeSecondsAndNanos(seconds, 0));
+    }
+}
@@ -0,0 +1,145 @@
+package com.datn.trip_service.service;
+
+import com.datn.trip_service.dto.UploadGcReport;
+import com.datn.trip_service.repository.FakeFirestore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+class UploadGarbageCollectorTest {
+
+    private static final Instant OLD = Instant.now().minus(Duration.ofHours(72));
+
+    @TempDir
+    Path uploadDir;
+
+    private final FakeFirestore store = new FakeFirestore();
+    private FileStorageService storage;
+    private UploadGarbageCollector collector;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        storage = new FileStorageService(uploadDir.toString());
+        collector = new UploadGarbageCollector();
+        ReflectionTestUtils.setField(collector, "firestore", store.firestore());
+        ReflectionTestUtils.setField(collector, "fileStorageService", storage);
+        ReflectionTestUtils.setField(collector, "gracePeriodHours", 48L);
+        ReflectionTestUtils.setField(collector, "maxDeletesPerSecond", 0);
+        // One document per page, so the mark phase pages through every collection
+        ReflectionTestUtils.setField(collector, "pageSize", 1);
+
+        store.put("trips/trip-1", Map.of("coverPhoto", "cover.jpg"));
+        store.put("trips/trip-2", Map.of("title", "No cover"));
+        store.put("plans/plan-1", Map.of("photoUrl", "/uploads/plan.jpg",
+                "photos", List.of("https://cdn.example.com/uploads/gallery.jpg?alt=media&token=abc", "  ")));
+        store.put("users/user-1", Map.of("profilePicture", "https://example.com/uploads/avatar.png#top"));
+
+        for (String fileName : List.of("cover.jpg", "plan.jpg", "gallery.jpg", "avatar.png",
+                "plan_thumb.jpg", "orphan.jpg", "orphan_thumb.jpg", "orphan_large.jpg", "lonely_medium.jpg",
+                "fresh_thumb.jpg")) {
+            write(fileName, OLD);
+        }
+        write("fresh.jpg", Instant.now());
+        Files.writeString(uploadDir.resolve(".upload-1.part"), "in flight");
+        Files.setLastModifiedTime(uploadDir.resolve(".upload-1.part"), FileTime.from(OLD));
+    }
+
+    @Test
+    void fileNameOfTakesTheLastPathSegmentWithoutQueryOrFragment() {
+        assertThat(UploadGarbageCollector.fileNameOf("a.jpg")).isEqualTo("a.jpg");
+        assertThat(UploadGarbageCollector.fileNameOf("/uploads/a.jpg")).isEqualTo("a.jpg");
+        assertThat(UploadGarbageCollector.fileNameOf(" /uploads/a.jpg ")).isEqualTo("a.jpg");
+        assertThat(UploadGarbageCollector.fileNameOf("https://cdn.example.com/uploads/a.jpg?alt=media&token=x/y"))
+                .isEqualTo("a.jpg");
+        assertThat(UploadGarbageCollector.fileNameOf("https://example.com/uploads/a.jpg#section")).isEqualTo("a.jpg");
+        assertThat(UploadGarbageCollector.fileNameOf("https://example.com/uploads/")).isEmpty();
+    }
+
+    @Test
+    void sweepDeletesOnlyOldUnreferencedFilesAndVariantsWithoutOriginal() {
+        UploadGcReport report = collector.run(false);
+
+        assertThat(report.getError()).isNull();
+        assertThat(report.getReferences()).isEqualTo(4);
+        // Referenced files, the variant of a referenced original and the variant of a stored original stay
+        for (String kept : List.of("cover.jpg", "plan.jpg", "gallery.jpg", "avatar.png", "plan_thumb.jpg",
+                "fresh_thumb.jpg")) {
+            assertThat(storage.loadFile(kept)).as(kept).exists();
+        }
+        // Unreferenced but within the grace period
+        assertThat(storage.loadFile("fresh.jpg")).exists();
+        assertThat(report.getSkippedRecent()).isEqualTo(1);
+        // The orphan goes with its variants, and a variant whose original is gone is an orphan itself
+        for (String deleted : List.of("orphan.jpg", "orphan_thumb.jpg", "orphan_large.jpg", "lonely_medium.jpg")) {
+            assertThat(storage.loadFile(deleted)).as(deleted).doesNotExist();
+        }
+        assertThat(report.getDeleted()).isEqualTo(report.getOrphans());
+        assertThat(report.getSampleOrphans()).contains("lonely_medium.jpg").doesNotContain("fresh.jpg");
+        assertThat(uploadDir.resolve(".upload-1.part")).exists();
+        assertThat(store.get("upload_gc_runs/" + report.getRunId())).containsEntry("deleted", report.getDeleted());
+    }
+
+    @Test
+    void dryRunOnlyReportsOrphans() {
+        UploadGcReport report = collector.run(true);
+
+        assertThat(report.isDryRun()).isTrue();
+        assertThat(report.getOrphans()).isPositive();
+        assertThat(report.getSampleOrphans()).contains("orphan.jpg", "lonely_medium.jpg");
+        assertThat(report.getDeleted()).isZero();
+        assertThat(storage.loadFile("orphan.jpg")).exists();
+        assertThat(storage.loadFile("lonely_medium.jpg")).exists();
+    }
+
+    @Test
+    void fileStoredAgainDuringTheRunIsNotDeleted() throws IOException {
+        // An upload deduplicated onto the orphan between mark and sweep refreshes its stored time
+        write("orphan.jpg", Instant.now());
+
+        UploadGcReport report = collector.run(false);
+
+        assertThat(storage.loadFile("orphan.jpg")).exists();
+        assertThat(storage.loadFile("orphan_thumb.jpg")).exists();
+        assertThat(report.getSkippedRecent()).isEqualTo(2);
+    }
+
+    @Test
+    void oldFileAttachedAgainDuringTheRunIsNotDeleted() {
+        // A plan saved with the orphan's URL after mark read the plans, e.g. copied from a removed plan
+        FileStorageService watched = spy(storage);
+        doAnswer(invocation -> {
+            store.put("plans/plan-2", Map.of("photos", List.of("https://cdn.example.com/uploads/orphan.jpg")));
+            return invocation.callRealMethod();
+        }).when(watched).lastStoredAt("orphan.jpg");
+        ReflectionTestUtils.setField(collector, "fileStorageService", watched);
+
+        UploadGcReport report = collector.run(false);
+
+        assertThat(storage.loadFile("orphan.jpg")).exists();
+        assertThat(storage.loadFile("orphan_thumb.jpg")).exists();
+        assertThat(storage.loadFile("lonely_medium.jpg")).doesNotExist();
+        assertThat(report.getReattached()).isEqualTo(1);
+        assertThat(report.getDeleted()).isEqualTo(report.getOrphans() - 1);
+    }
+
+    private void write(String fileName, Instant storedAt) throws IOException {
+        Path file = storage.loadFile(fileName);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, fileName);
+        Files.setLastModifiedTime(file, FileTime.from(storedAt));
+    }
+}
@@ -0,0 +1,85 @@
+package com.datn.trip_service.service;
+
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Multi-file upload ingest (FileStorageService.storeFile: copy, SHA-256, fsync) over the sample files in
+ * uploads/, one file after another and through UploadBatchService.runBounded. Files are held in memory
+ * as MultipartFiles so only storing is measured. Not a unit test; run it from the IDE or with
+ * mvn test-compile exec:java -Dexec.mainClass=com.datn.trip_service.service.UploadIngestBenchmark -Dexec.classpathScope=test
+ *
+ * Arguments: [upload dir, default "uploads"] [max files, default 100] [per-request concurrency, default 4]
+ */
+public class UploadIngestBenchmark {
+
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        Path uploadDir = Paths.get(args.length > 0 ? args[0] : "uploads");
+        int maxFiles = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+        List<MultipartFile> uploads = new ArrayList<>();
+        long totalBytes = 0;
+        try (Stream<Path> files = Files.list(uploadDir)) {
+            for (Path path : files.filter(Files::isRegularFile).sorted().limit(maxFiles).collect(Collectors.toList())) {
+                byte[] content = Files.readAllBytes(path);
+                uploads.add(new MockMultipartFile("files", path.getFileName().toString(), "image/jpeg", content));
+                totalBytes += content.length;
+            }
+        }
+        if (uploads.isEmpty()) {
+            System.out.println("No files in " + uploadDir.toAbsolutePath());
+            return;
+        }
+        System.out.printf("%d files, %.1f MB, %d core(s), concurrency %d%n",
+                uploads.size(), totalBytes / 1048576.0, Runtime.getRuntime().availableProcessors(), concurrency);
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try {
+            // Warm up
+            run(uploads, 1, executor);
+            for (int round = 1; round <= ROUNDS; round++) {
+                double sequential = run(uploads, 1, executor);
+                double parallel = run(uploads, concurrency, executor);
+                System.out.printf("round %d: sequential %6.2f s (%6.1f files/s), parallel %6.2f s (%6.1f files/s), %.2fx%n",
+                        round, sequential, uploads.size() / sequential,
+                        parallel, uploads.size() / parallel, sequential / parallel);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static double run(List<MultipartFile> uploads, int concurrency, ExecutorService executor) throws Exception {
+        Path storageDir = Files.createTempDirectory("ingest-bench");
+        try {
+            FileStorageService storage = new FileStorageService(storageDir.toString());
+            long start = System.nanoTime();
+            if (concurrency == 1) {
+                for (MultipartFile upload : uploads) {
+                    storage.storeFile(upload);
+                }
+            } else {
+                UploadBatchService.runBounded(uploads, concurrency, executor, storage::storeFile);
+            }
+            return (System.nanoTime() - start) / 1e9;
+        } finally {
+            try (Stream<Path> files = Files.walk(storageDir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+}
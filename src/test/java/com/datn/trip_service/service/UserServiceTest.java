@@ -0,0 +1,171 @@
+package com.datn.trip_service.service;
+
+import com.datn.trip_service.model.UserProfile;
+import com.google.api.core.SettableApiFuture;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class UserServiceTest {
+
+    private static final String CALLBACK_THREAD = "firestore-cb-test";
+
+    private final List<List<String>> getAllCalls = new ArrayList<>();
+    private final List<SettableApiFuture<List<DocumentSnapshot>>> pendingReads = new ArrayList<>();
+    private final Set<String> conversionThreads = ConcurrentHashMap.newKeySet();
+
+    private ExecutorService callbackExecutor;
+    private UserService userService;
+
+    @BeforeEach
+    void setUp() {
+        callbackExecutor = Executors.newFixedThreadPool(2, runnable -> new Thread(runnable, CALLBACK_THREAD));
+
+        Firestore firestore = mock(Firestore.class);
+        CollectionReference users = mock(CollectionReference.class);
+        when(firestore.collection("users")).thenReturn(users);
+        when(users.document(anyString())).thenAnswer(invocation -> {
+            DocumentReference reference = mock(DocumentReference.class);
+            when(reference.getId()).thenReturn(invocation.getArgument(0));
+            return reference;
+        });
+        // Reads stay in flight until the test completes them
+        when(firestore.getAll(any(DocumentReference[].class))).thenAnswer(invocation -> {
+            List<String> ids = new ArrayList<>();
+            for (Object reference : invocation.getArguments()) {
+                ids.add(((DocumentReference) reference).getId());
+            }
+            SettableApiFuture<List<DocumentSnapshot>> read = SettableApiFuture.create();
+            synchronized (this) {
+                getAllCalls.add(ids);
+                pendingReads.add(read);
+            }
+            return read;
+        });
+
+        userService = new UserService();
+        ReflectionTestUtils.setField(userService, "firestore", firestore);
+        ReflectionTestUtils.setField(userService, "callbackExecutor", callbackExecutor);
+        ReflectionTestUtils.setField(userService, "profileCacheMaximumSize", 100L);
+        ReflectionTestUtils.setField(userService, "profileCacheTtlSeconds", 60L);
+        userService.initProfileCache();
+    }
+
+    @AfterEach
+    void tearDown() {
+        callbackExecutor.shutdownNow();
+    }
+
+    @Test
+    void concurrentMissesShareOneRead() throws Exception {
+        CompletableFuture<Map<String, UserProfile>> first = userService.getUserProfilesAsync(List.of("alice", "bob"));
+        CompletableFuture<Map<String, UserProfile>> second = userService.getUserProfilesAsync(List.of("bob", "alice"));
+
+        assertThat(getAllCalls).hasSize(1);
+        assertThat(getAllCalls.get(0)).containsExactlyInAnyOrder("alice", "bob");
+
+        completeReads();
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).containsOnlyKeys("alice", "bob");
+        assertThat(second.get(5, TimeUnit.SECONDS)).containsOnlyKeys("alice", "bob");
+    }
+
+    @Test
+    void onlyMissingProfilesAreRead() throws Exception {
+        CompletableFuture<Map<String, UserProfile>> warm = userService.getUserProfilesAsync(List.of("alice"));
+        completeReads();
+        warm.get(5, TimeUnit.SECONDS);
+
+        CompletableFuture<Map<String, UserProfile>> profiles = userService.getUserProfilesAsync(List.of("alice", "carol", "ghost"));
+        assertThat(getAllCalls).hasSize(2);
+        assertThat(getAllCalls.get(1)).containsExactlyInAnyOrder("carol", "ghost");
+        completeReads();
+
+        // Users that don't exist are left out, and cached as missing
+        assertThat(profiles.get(5, TimeUnit.SECONDS)).containsOnlyKeys("alice", "carol");
+        assertThat(userService.getUserProfile("ghost")).isNull();
+        assertThat(getAllCalls).hasSize(2);
+    }
+
+    @Test
+    void asyncPathConvertsProfilesOnTheCallbackExecutor() throws Exception {
+        CompletableFuture<Map<String, UserProfile>> profiles = userService.getUserProfilesAsync(List.of("alice"));
+
+        completeReads();
+
+        assertThat(profiles.get(5, TimeUnit.SECONDS).get("alice").getFirstName()).isEqualTo("first-alice");
+        assertThat(conversionThreads).containsOnly(CALLBACK_THREAD);
+    }
+
+    @Test
+    void blockingLookupJoinsLoadsInFlightAndReadsOnlyTheRest() throws Exception {
+        CompletableFuture<Map<String, UserProfile>> inFlight = userService.getUserProfilesAsync(List.of("alice"));
+        CompletableFuture<Map<String, UserProfile>> blocking = CompletableFuture.supplyAsync(
+                () -> userService.getUserProfiles(List.of("alice", "bob", "alice")));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (readCount() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(getAllCalls).hasSize(2);
+        assertThat(getAllCalls.get(1)).containsExactly("bob");
+        completeReads();
+
+        assertThat(blocking.get(5, TimeUnit.SECONDS)).containsOnlyKeys("alice", "bob");
+        assertThat(inFlight.get(5, TimeUnit.SECONDS)).containsOnlyKeys("alice");
+    }
+
+    private synchronized int readCount() {
+        return getAllCalls.size();
+    }
+
+    // Completes every read issued so far from the test thread; "ghost" does not exist
+    private void completeReads() {
+        List<SettableApiFuture<List<DocumentSnapshot>>> reads;
+        List<List<String>> calls;
+        synchronized (this) {
+            reads = new ArrayList<>(pendingReads);
+            calls = new ArrayList<>(getAllCalls.subList(getAllCalls.size() - reads.size(), getAllCalls.size()));
+            pendingReads.clear();
+        }
+        for (int i = 0; i < reads.size(); i++) {
+            List<DocumentSnapshot> documents = new ArrayList<>();
+            for (String id : calls.get(i)) {
+                documents.add(userDocument(id, !"ghost".equals(id)));
+            }
+            reads.get(i).set(documents);
+        }
+    }
+
+    private DocumentSnapshot userDocument(String id, boolean exists) {
+        DocumentSnapshot document = mock(DocumentSnapshot.class);
+        when(document.getId()).thenReturn(id);
+        when(document.exists()).thenReturn(exists);
+        when(document.getString(anyString())).thenAnswer(invocation -> {
+            conversionThreads.add(Thread.currentThread().getName());
+            return invocation.getArgument(0).equals("firstName") ? "first-" + id : null;
+        });
+        return document;
+    }
+}